@@ -22,40 +22,46 @@
 
 package org.pentaho.di.trans.steps.filemetadata;
 
-import au.com.bytecode.opencsv.CSVReader;
 
-import com.google.common.base.Charsets;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.pentaho.di.core.Const;
 import org.pentaho.di.core.exception.KettleException;
-import org.pentaho.di.core.exception.KettleFileException;
 import org.pentaho.di.core.exception.KettleStepException;
 import org.pentaho.di.core.row.RowDataUtil;
 import org.pentaho.di.core.row.RowMeta;
-import org.pentaho.di.core.row.ValueMetaInterface;
-import org.pentaho.di.core.util.StringEvaluator;
 import org.pentaho.di.core.vfs.KettleVFS;
 import org.pentaho.di.trans.Trans;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.*;
-import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDetector;
-import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDetectorBuilder;
-import org.pentaho.di.trans.steps.filemetadata.util.encoding.EncodingDetector;
+import org.pentaho.di.trans.steps.filemetadata.util.cache.LruCache;
+import org.pentaho.di.trans.steps.filemetadata.util.files.DirectoryWalker;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.BufferPool;
 
-import java.io.*;
-import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 public class FileMetadata extends BaseStep implements StepInterface {
 
+  private static final int DEFAULT_FILE_WORKERS = 4;
+  // files of a directory whose metadata is kept to be written again for later input rows
+  private static final int MAX_REPLAYED_FILES = 10000;
+  // the head of each file read ahead, which is all most files need
+  private static final int PREFETCH_SIZE = 1024 * 1024;
+
   private FileMetadataMeta meta;
   private FileMetadataData data;
   private Object[] r;
-  private int idx;
-  private Object[] outputRow;
-  private DelimiterDetector.DetectionResult delimiters;
-  private String fileName;
-  private Charset detectedCharset;
-  private Charset defaultCharset = Charsets.ISO_8859_1;
-  private long limitRows;
 
   /**
    * The constructor should simply pass on its arguments to the parent class.
@@ -75,6 +81,12 @@ public class FileMetadata extends BaseStep implements StepInterface {
     FileMetadataMeta meta = (FileMetadataMeta) smi;
     FileMetadataData data = (FileMetadataData) sdi;
 
+    // all scans share one pool for parallel detection and type evaluation, so files scanned at once
+    // do not start a pool of all cores each
+    if (meta.isParallelDetection() || meta.isParallelTypeEvaluation()) {
+      data.analysisPool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+    }
+
     return super.init(meta, data);
   }
 
@@ -107,6 +119,17 @@ public class FileMetadata extends BaseStep implements StepInterface {
       // use meta.getFields() to change it, so it reflects the output row structure
       meta.getFields(data.outputRowMeta, getStepname(), null, null, this);
 
+      if (meta.isScanDirectory()) {
+        startFileWorkers();
+      }
+      else if (data.isReceivingInput && meta.isFileNameInField() && r != null) {
+        data.fileNameFieldIndex = getInputRowMeta().indexOfValue(environmentSubstitute(meta.getFileNameField()));
+        if (data.fileNameFieldIndex < 0) {
+          throw new KettleStepException("Could not find file name field "+meta.getFileNameField()+" in the input rows");
+        }
+        startFileWorkers();
+      }
+
     }
 
     //-------------------------------------------------------------------------------
@@ -116,11 +139,46 @@ public class FileMetadata extends BaseStep implements StepInterface {
 
       // if no more rows are expected, indicate step is finished and processRow() should not be called again
       if (r == null) {
+        // write out the files still being scanned
+        while (!data.pendingFiles.isEmpty()) {
+          putPendingFile();
+        }
         setOutputDone();
         return false;
       }
 
-      buildOutputRows();
+      if (meta.isScanDirectory()) {
+        // the directory is the same for all rows, so the files found for the first row are written again
+        // for the others, unless there are too many to keep, then it is walked again for each row
+        if (data.directoryFiles != null && data.directoryScanned) {
+          for (int i = 0; i < data.directoryFiles.size(); i++) {
+            putResult(r, data.directoryFiles.get(i), data.directoryResults.get(i));
+          }
+        }
+        else {
+          if (!data.directoryScanned) {
+            data.directoryFiles = new ArrayList<>();
+            data.directoryResults = new ArrayList<>();
+          }
+          scanDirectory(r);
+          data.directoryScanned = true;
+        }
+      }
+      else if (data.fileWorkers != null) {
+        // wait for the oldest file before taking on more than the files in flight allow
+        while (data.pendingFiles.size() >= data.maxFilesInFlight) {
+          putPendingFile();
+        }
+        String fileName = getInputRowMeta().getString(r, data.fileNameFieldIndex);
+        data.pendingFiles.add(new FileMetadataData.PendingFile(r, data.fileWorkers.submit(newScan(fileName))));
+      }
+      else {
+        // the step's own file is the same for all rows
+        if (data.result == null) {
+          data.result = new FileMetadataScan(meta, this, log, environmentSubstitute(meta.getFileName()), data.analysisPool).call();
+        }
+        putResult(r, null, data.result);
+      }
 
       // log progress if it is time to to so
       if (checkFeedback(getLinesRead())) {
@@ -136,7 +194,12 @@ public class FileMetadata extends BaseStep implements StepInterface {
     //-------------------------------------------------------------------------------
     else {
 
-      buildOutputRows();
+      if (meta.isScanDirectory()) {
+        scanDirectory(null);
+      }
+      else {
+        putResult(null, null, new FileMetadataScan(meta, this, log, environmentSubstitute(meta.getFileName()), data.analysisPool).call());
+      }
       // we're done
       setOutputDone();
       return false;
@@ -145,221 +208,194 @@ public class FileMetadata extends BaseStep implements StepInterface {
 
   }
 
-  private void buildOutputRows() throws KettleStepException {
-
-    // which index does the next field go to
-    idx = data.isReceivingInput ? getInputRowMeta().size() : 0;
-
-    // prepare an output row
-    outputRow = data.isReceivingInput ? RowDataUtil.createResizedCopy(r, data.outputRowMeta.size()) : RowDataUtil.allocateRowData(data.outputRowMeta.size());
-
-    // get the configuration from the dialog
-    fileName = environmentSubstitute(meta.getFileName());
+  private void startFileWorkers() {
 
-    // if the file does not exist, just send an empty row
-    try {
-      if (!KettleVFS.fileExists(fileName)){
-        putRow(data.outputRowMeta, outputRow);
-        return;
-      }
-    } catch (KettleFileException e) {
-      throw new KettleStepException(e.getMessage(), e);
-    }
+    int workers = Math.max(1, Const.toInt(environmentSubstitute(Const.NVL(meta.getFileWorkers(), "")), DEFAULT_FILE_WORKERS));
+    // at least one file per worker keeps them all busy, more let fast files pass slow ones
+    data.maxFilesInFlight = Math.max(workers, Const.toInt(environmentSubstitute(Const.NVL(meta.getMaxFilesInFlight(), "")), 4 * workers));
 
-    String strLimitRows = environmentSubstitute(meta.getLimitRows());
-    if (strLimitRows.trim().isEmpty()){
-      limitRows = 0;
-    }
-    else{
-      limitRows = Long.parseLong(strLimitRows);
+    int prefetchFiles = Math.max(0, Const.toInt(environmentSubstitute(Const.NVL(meta.getPrefetchFiles(), "")), 0));
+    if (prefetchFiles == 0) {
+      data.fileWorkers = new ForkJoinPool(workers);
+      return;
     }
 
-    defaultCharset = Charset.forName(environmentSubstitute(meta.getDefaultCharset()));
-
-    ArrayList<Character> delimiterCandidates = new ArrayList<>(4);
-    for (String candidate : meta.getDelimiterCandidates()) {
-      candidate = environmentSubstitute(candidate);
-      if (candidate.length() == 0){
-        logBasic("Warning: file metadata step ignores empty delimiter candidate");
-      }
-      else if (candidate.length() > 1){
-        logBasic("Warning: file metadata step ignores non-character delimiter candidate: "+candidate);
-      }
-      else{
-        delimiterCandidates.add(candidate.charAt(0));
-      }
-    }
+    // one thread reads ahead while the workers run detection on files read already; the workers
+    // take scans strictly in the order they were read, so none waits on a file not read yet
+    data.maxFilesInFlight = Math.max(data.maxFilesInFlight, workers + prefetchFiles);
+    data.fileWorkers = Executors.newFixedThreadPool(workers);
+    data.prefetcher = Executors.newSingleThreadExecutor();
+    data.prefetchPermits = new Semaphore(prefetchFiles);
+    data.buffers = new BufferPool(PREFETCH_SIZE, prefetchFiles + workers);
 
-    ArrayList<Character> enclosureCandidates = new ArrayList<>(4);
-    for (String candidate : meta.getEnclosureCandidates()) {
-      candidate = environmentSubstitute(candidate);
-      if (candidate.length() == 0){
-        logBasic("Warning: file metadata step ignores empty enclosure candidate");
-      }
-      else if (candidate.length() > 1){
-        logBasic("Warning: file metadata step ignores non-character enclosure candidate: "+candidate);
-      }
-      else{
-        enclosureCandidates.add(candidate.charAt(0));
-      }
-    }
-
-    // guess the charset
-    detectedCharset = detectCharset(fileName);
-    outputRow[idx++] = detectedCharset;
+  }
 
-    // guess the delimiters
-    delimiters = detectDelimiters(fileName, detectedCharset, delimiterCandidates, enclosureCandidates);
+  // the scan of a file, its I/O done ahead by the prefetcher if files are read ahead
+  private Callable<FileMetadataResult> newScan(String fileName) {
 
-    if (delimiters == null) {
-      throw new KettleStepException("Could not determine a consistent format for file "+fileName);
+    final FileMetadataScan scan = new FileMetadataScan(meta, this, log, fileName, data.analysisPool);
+    if (data.prefetcher == null) {
+      return scan;
     }
 
-    // delimiter
-    outputRow[idx++] = delimiters.getDelimiter();
-    // enclosure
-    outputRow[idx++] = delimiters.getEnclosure() == null ? "" : delimiters.getEnclosure().toString();
-    // field count = delimiter frequency on data lines +1
-    outputRow[idx++] = delimiters.getDataLineFrequency() +1L;
-    // bad headers
-    outputRow[idx++] = delimiters.getBadHeaders();
-    // bad footers
-    outputRow[idx++] = delimiters.getBadFooters();
-
-    char delimiter = delimiters.getDelimiter();
-    char enclosure = delimiters.getEnclosure() == null ? '\u0000' : delimiters.getEnclosure();
-    long skipLines = delimiters.getBadHeaders();
-    long dataLines = delimiters.getDataLines();
-
-    try(BufferedReader inputReader = new BufferedReader(new InputStreamReader(KettleVFS.getInputStream(fileName), detectedCharset))){
-      while(skipLines > 0){
-        skipLines--;
-        inputReader.readLine();
-      }
-
-      CSVReader csvReader = new CSVReader(inputReader, delimiter, enclosure);
-      String[] firstLine = csvReader.readNext();
-      dataLines--;
-
-      StringEvaluator[] evaluators = new StringEvaluator[firstLine.length];
-      for(int i=0;i<evaluators.length;i++){
-        evaluators[i] = new StringEvaluator(true);
-      }
-
-      while(dataLines > 0){
-        dataLines--;
-        String[] fields = csvReader.readNext();
-        if (fields == null) break;
-        for(int i=0;i<fields.length;i++){
-          if (i < evaluators.length)
-            evaluators[i].evaluateString(fields[i]);
+    final Semaphore permits = data.prefetchPermits;
+    final BufferPool buffers = data.buffers;
+    // a permit is held from reading a file until its detection starts, which bounds the files read ahead
+    final Future<Void> fetched = data.prefetcher.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        permits.acquire();
+        try {
+          scan.prefetch(buffers, PREFETCH_SIZE);
+        } catch (KettleStepException | RuntimeException e) {
+          permits.release();
+          throw e;
         }
+        return null;
       }
-
-      // find evaluation results, excluding and including the first line
-      ValueMetaInterface[] fields = new ValueMetaInterface[evaluators.length];
-      ValueMetaInterface[] firstLineFields = new ValueMetaInterface[evaluators.length];
-
-      for(int i=0;i<evaluators.length;i++) {
-        fields[i] = evaluators[i].getAdvicedResult().getConversionMeta();
-        evaluators[i].evaluateString(firstLine[i]);
-        firstLineFields[i] = evaluators[i].getAdvicedResult().getConversionMeta();
+    });
+
+    return new Callable<FileMetadataResult>() {
+      @Override
+      public FileMetadataResult call() throws Exception {
+        try {
+          fetched.get();
+        } catch (ExecutionException e) {
+          if (e.getCause() instanceof Exception) {
+            throw (Exception) e.getCause();
+          }
+          throw e;
+        }
+        permits.release();
+        return scan.call();
       }
+    };
 
-      // check whether to use the first line as a header, if there is a single type mismatch -> yes
-      // if all fields are strings -> yes
-      boolean hasHeader = false;
-      boolean allStrings = true;
-      for(int i=0;i<evaluators.length;i++) {
-
-        if (fields[i].getType() != ValueMetaInterface.TYPE_STRING){
-          allStrings = false;
-        }
+  }
 
-        if (fields[i].getType() != firstLineFields[i].getType()){
-          hasHeader = true;
-          break;
-        }
-      }
+  // scans the selected files of the directory, writing out the rows of each file as soon as it is done
+  private void scanDirectory(Object[] row) throws KettleException {
 
-      hasHeader = hasHeader || allStrings;
+    String directory = environmentSubstitute(meta.getDirectory());
+    DirectoryWalker walker = new DirectoryWalker(KettleVFS.getFileObject(directory),
+      compileFilePattern(meta.getIncludeFiles()), compileFilePattern(meta.getExcludeFiles()), meta.isIncludeSubfolders());
 
-      if (hasHeader){
-        for(int i=0;i<evaluators.length;i++) {
-          fields[i].setName(firstLine[i].trim());
-        }
-      }
-      else{
-        // use the meta from the entire column
-        fields = firstLineFields;
-        int colNum = 1;
-        for(int i=0;i<evaluators.length;i++) {
-          fields[i].setName("field_"+(colNum++));
+    // files are listed only as fast as the workers take them on
+    CompletionService<FileMetadataResult> scans = new ExecutorCompletionService<>(data.fileWorkers);
+    HashMap<Future<FileMetadataResult>, String> running = new HashMap<>();
+    try {
+      FileObject file;
+      while (!isStopped() && (file = walker.next()) != null) {
+        while (running.size() >= data.maxFilesInFlight) {
+          putDoneFile(row, scans, running);
         }
+        String fileName = KettleVFS.getFilename(file);
+        running.put(scans.submit(newScan(fileName)), fileName);
       }
+    } catch (FileSystemException e) {
+      throw new KettleStepException("Could not list the files of directory "+directory, e);
+    }
 
-      outputRow[idx++] = hasHeader;
-
-      int fieldIdx = idx;
-      for(int i=0;i<evaluators.length;i++) {
+    while (!running.isEmpty() && !isStopped()) {
+      putDoneFile(row, scans, running);
+    }
 
-        outputRow = RowDataUtil.createResizedCopy(outputRow, outputRow.length);
+  }
 
-        idx = fieldIdx;
-        outputRow[idx++] = fields[i].getName();
-        outputRow[idx++] = fields[i].getTypeDesc();
-        outputRow[idx++] = (fields[i].getLength() >= 0) ? (long) fields[i].getLength() : null;
-        outputRow[idx++] = (fields[i].getPrecision() >= 0) ? (long) fields[i].getPrecision() : null;
-        outputRow[idx++] = fields[i].getConversionMask();
-        outputRow[idx++] = fields[i].getDecimalSymbol();
-        outputRow[idx++] = fields[i].getGroupingSymbol();
+  private Pattern compileFilePattern(String regex) throws KettleStepException {
+    regex = environmentSubstitute(Const.NVL(regex, ""));
+    if (regex.trim().isEmpty()) {
+      return null;
+    }
+    try {
+      return Pattern.compile(regex);
+    } catch (PatternSyntaxException e) {
+      throw new KettleStepException("Invalid regular expression for file names: "+regex, e);
+    }
+  }
 
-        putRow(data.outputRowMeta, outputRow);
+  // writes out the rows of the next file whose scan is done
+  private void putDoneFile(Object[] row, CompletionService<FileMetadataResult> scans, HashMap<Future<FileMetadataResult>, String> running) throws KettleStepException {
 
+    Future<FileMetadataResult> scan;
+    try {
+      scan = scans.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KettleStepException("Interrupted while scanning files", e);
+    }
+    String fileName = running.remove(scan);
+    FileMetadataResult result = waitFor(scan);
+    if (data.directoryFiles != null) {
+      if (data.directoryFiles.size() < MAX_REPLAYED_FILES) {
+        data.directoryFiles.add(fileName);
+        data.directoryResults.add(result);
+      }
+      else {
+        logBasic("More than "+MAX_REPLAYED_FILES+" files in directory "+environmentSubstitute(meta.getDirectory())
+          +", it is walked again for each input row");
+        data.directoryFiles = null;
+        data.directoryResults = null;
       }
+    }
+    putResult(row, fileName, result);
 
-    } catch (IOException |KettleFileException e) {
-      log.logError("IO Error while reading file: "+fileName+". Invalid charset?");
-      throw new KettleStepException(e.getMessage(), e);
+  }
 
-    } catch (ArrayIndexOutOfBoundsException e){
-      log.logError("Error determining field types for: "+fileName+". Inconsistent delimiters?");
-      throw new KettleStepException(e.getMessage(), e);
-    }
+  // writes out the rows of the oldest file in flight once its scan is done
+  private void putPendingFile() throws KettleStepException {
+
+    FileMetadataData.PendingFile pending = data.pendingFiles.remove();
+    putResult(pending.row, null, waitFor(pending.result));
 
   }
 
-  private Charset detectCharset(String fileName) {
-    try (InputStream stream = KettleVFS.getInputStream(fileName)) {
-      return EncodingDetector.detectEncoding(stream, defaultCharset, limitRows*500); // estimate a row is ~500 chars
-    } catch (FileNotFoundException e) {
-      throw new RuntimeException("File not found: " + fileName, e);
-    } catch (IOException | KettleFileException e) {
-      throw new RuntimeException(e.getMessage(), e);
+  private FileMetadataResult waitFor(Future<FileMetadataResult> scan) throws KettleStepException {
+    try {
+      return scan.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new KettleStepException("Interrupted while scanning files", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof KettleStepException) {
+        throw (KettleStepException) e.getCause();
+      }
+      throw new KettleStepException(e.getCause().getMessage(), e.getCause());
     }
   }
 
-  private DelimiterDetector.DetectionResult detectDelimiters(String fileName, Charset charset, ArrayList<Character> delimiterCandidates, ArrayList<Character> enclosureCandidates){
+  // writes a row per field of the file, or a single row without metadata if the file does not exist,
+  // starting with the name of the file when scanning a directory
+  private void putResult(Object[] row, String fileName, FileMetadataResult result) throws KettleStepException {
 
-    // guess the delimiters
-
-    try(BufferedReader f = new BufferedReader(new InputStreamReader(KettleVFS.getInputStream(fileName), charset))){
+    // which index does the next field go to
+    int idx = data.isReceivingInput ? getInputRowMeta().size() : 0;
 
-      DelimiterDetector detector = new DelimiterDetectorBuilder()
-                                        .withDelimiterCandidates(delimiterCandidates)
-                                        .withEnclosureCandidates(enclosureCandidates)
-                                        .withInput(f)
-                                        .withLogger(log)
-                                        .withRowLimit(limitRows)
-                                        .build();
+    if (meta.isScanDirectory()) {
+      idx++;
+    }
 
-      return detector.detectDelimiters();
+    if (!result.isFound()) {
+      putRow(data.outputRowMeta, newOutputRow(row, fileName));
+      return;
+    }
 
-    } catch (IOException | KettleFileException e) {
-      throw new RuntimeException(e.getMessage(), e);
+    Object[] fileValues = result.getFileValues();
+    for (Object[] fieldValues : result.getFieldValues()) {
+      Object[] outputRow = newOutputRow(row, fileName);
+      System.arraycopy(fileValues, 0, outputRow, idx, fileValues.length);
+      System.arraycopy(fieldValues, 0, outputRow, idx + fileValues.length, fieldValues.length);
+      putRow(data.outputRowMeta, outputRow);
     }
 
+  }
 
+  private Object[] newOutputRow(Object[] row, String fileName) {
+    Object[] outputRow = data.isReceivingInput ? RowDataUtil.createResizedCopy(row, data.outputRowMeta.size()) : RowDataUtil.allocateRowData(data.outputRowMeta.size());
+    if (meta.isScanDirectory()) {
+      outputRow[data.isReceivingInput ? getInputRowMeta().size() : 0] = fileName;
+    }
+    return outputRow;
   }
 
   public void dispose(StepMetaInterface smi, StepDataInterface sdi) {
@@ -368,6 +404,28 @@ public class FileMetadata extends BaseStep implements StepInterface {
     FileMetadataMeta meta = (FileMetadataMeta) smi;
     FileMetadataData data = (FileMetadataData) sdi;
 
+    // scans still running after an error or a stop are not needed anymore
+    if (data.fileWorkers != null) {
+      data.fileWorkers.shutdownNow();
+      data.fileWorkers = null;
+    }
+    if (data.prefetcher != null) {
+      data.prefetcher.shutdownNow();
+      data.prefetcher = null;
+    }
+    if (data.analysisPool != null) {
+      data.analysisPool.shutdownNow();
+      data.analysisPool = null;
+    }
+    data.pendingFiles.clear();
+    data.directoryFiles = null;
+    data.directoryResults = null;
+
+    if (meta.isCacheResults()) {
+      LruCache<String, FileMetadataResult> cache = FileMetadataScan.getResultCache();
+      logDetailed("Metadata cache: "+cache.getHits()+" hits, "+cache.getMisses()+" misses, "+cache.size()+" of "+cache.getCapacity()+" files cached");
+    }
+
     super.dispose(meta, data);
   }
 
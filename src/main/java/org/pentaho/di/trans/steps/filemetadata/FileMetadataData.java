@@ -26,6 +26,15 @@ import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.trans.step.BaseStepData;
 import org.pentaho.di.trans.step.StepDataInterface;
 
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.BufferPool;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
 /**
  * This class is part of the demo step plug-in implementation.
  * It demonstrates the basics of developing a plug-in step for PDI. 
@@ -51,6 +60,44 @@ public class FileMetadataData extends BaseStepData implements StepDataInterface
 	public RowMetaInterface outputRowMeta;
     public boolean isReceivingInput;
 
+    // the metadata of the step's own file, scanned once for all input rows
+    public FileMetadataResult result;
+
+    // with file names from a field or a directory: the index of that field, the workers scanning
+    // the files, and the input rows whose files are being scanned, in input order
+    public int fileNameFieldIndex;
+    public int maxFilesInFlight;
+    public ExecutorService fileWorkers;
+    public ArrayDeque<PendingFile> pendingFiles = new ArrayDeque<>();
+
+    // with input rows and a directory: whether it was walked, and the files of the directory and their
+    // metadata, found for the first row and written again for the others, null if there are too many to keep
+    public boolean directoryScanned;
+    public ArrayList<String> directoryFiles;
+    public ArrayList<FileMetadataResult> directoryResults;
+
+    // with files read ahead: the thread reading them, the permits bounding the files read but not
+    // yet examined, and the buffers they are read into
+    public ExecutorService prefetcher;
+    public Semaphore prefetchPermits;
+    public BufferPool buffers;
+
+    // the threads detecting delimiters and evaluating types in parallel, shared by all scans of the step
+    public ForkJoinPool analysisPool;
+
+    /**
+     * An input row, and the scan of the file named in it.
+     */
+    public static class PendingFile {
+      public final Object[] row;
+      public final Future<FileMetadataResult> result;
+
+      public PendingFile(Object[] row, Future<FileMetadataResult> result) {
+        this.row = row;
+        this.result = result;
+      }
+    }
+
     public FileMetadataData()
 	{
 		super();
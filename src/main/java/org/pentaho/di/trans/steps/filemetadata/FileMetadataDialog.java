@@ -30,6 +30,8 @@ import org.eclipse.swt.layout.FormData;
 import org.eclipse.swt.layout.FormLayout;
 import org.eclipse.swt.widgets.*;
 import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleException;
+import org.pentaho.di.core.row.RowMetaInterface;
 import org.pentaho.di.i18n.BaseMessages;
 import org.pentaho.di.trans.TransMeta;
 import org.pentaho.di.trans.step.BaseStepMeta;
@@ -60,11 +62,39 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
   private FileMetadataMeta meta;
 
   private TextVar wFilename;
+  private Button wFilenameInField;
+  private ComboVar wFilenameField;
+  private Button wScanDirectory;
+  private TextVar wDirectory;
+  private TextVar wIncludeFiles;
+  private TextVar wExcludeFiles;
+  private Button wIncludeSubfolders;
+  private TextVar wFileWorkers;
+  private TextVar wMaxFilesInFlight;
+  private TextVar wPrefetchFiles;
 
   private TableView wDelimiterCandidates;
   private TableView wEnclosureCandidates;
   private TextVar wLimit;
   private ComboVar wDefaultCharset;
+  private TextVar wConfidenceThreshold;
+  private TextVar wMinSampleRows;
+  private Button wStratifiedSampling;
+  private TextVar wSampleWindowSize;
+  private TextVar wSampleWindows;
+  private Button wDiscoverDelimiters;
+  private Button wParallelDetection;
+  private TextVar wValueCacheSize;
+  private Button wParallelTypeEvaluation;
+  private Button wColumnStatistics;
+  private Button wDistinctCount;
+  private TextVar wDistinctCountPrecision;
+  private Button wTopValues;
+  private TextVar wTopValuesCount;
+  private Button wQuantiles;
+  private Button wCacheResults;
+  private TextVar wResultIndex;
+  private TextVar wResultIndexSize;
 
   private boolean gotEncodings = false;
 
@@ -83,18 +113,26 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
     meta = (FileMetadataMeta) in;
   }
 
-//  private final String[] emptyFieldList = new String[0];
-//
-//  private String[] getFieldListForCombo() {
-//    String[] items;
-//    try {
-//      RowMetaInterface r = transMeta.getPrevStepFields(stepname);
-//      items = r.getFieldNames();
-//    } catch (KettleException exception) {
-//      items = emptyFieldList;
-//    }
-//    return items;
-//  }
+  private final String[] emptyFieldList = new String[0];
+
+  private String[] getFieldListForCombo() {
+    String[] items;
+    try {
+      RowMetaInterface r = transMeta.getPrevStepFields(stepname);
+      items = r.getFieldNames();
+    } catch (KettleException exception) {
+      items = emptyFieldList;
+    }
+    return items;
+  }
+
+  private void setFilenameFields() {
+    String field = wFilenameField.getText();
+    wFilenameField.setItems(getFieldListForCombo());
+    if (field != null) {
+      wFilenameField.setText(field);
+    }
+  }
 
 
   private void setEncodings() {
@@ -225,6 +263,235 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
 
     lastControl = wFilename;
 
+    // Filename from field ...
+    Label wlFilenameInField = new Label(shell, SWT.RIGHT);
+    wlFilenameInField.setText( BaseMessages.getString( PKG, "FileMetadata.FilenameInField" ) );
+    props.setLook( wlFilenameInField );
+    FormData fdlFilenameInField = new FormData();
+    fdlFilenameInField.left = new FormAttachment( 0, 0 );
+    fdlFilenameInField.right = new FormAttachment( middle, -margin );
+    fdlFilenameInField.top = new FormAttachment( lastControl, margin );
+    wlFilenameInField.setLayoutData( fdlFilenameInField );
+    wFilenameInField = new Button( shell, SWT.CHECK );
+    wFilenameInField.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.FilenameInField.tooltip" ) );
+    props.setLook( wFilenameInField );
+    FormData fdFilenameInField = new FormData();
+    fdFilenameInField.top = new FormAttachment( lastControl, margin );
+    fdFilenameInField.left = new FormAttachment( middle, 0 );
+    fdFilenameInField.right = new FormAttachment( 100, 0 );
+    wFilenameInField.setLayoutData( fdFilenameInField );
+    wFilenameInField.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setFilenameFlags();
+      }
+    } );
+    lastControl = wFilenameInField;
+
+    // Filename field ...
+    Label wlFilenameField = new Label(shell, SWT.RIGHT);
+    wlFilenameField.setText( BaseMessages.getString( PKG, "FileMetadata.FilenameField" ) );
+    props.setLook( wlFilenameField );
+    FormData fdlFilenameField = new FormData();
+    fdlFilenameField.left = new FormAttachment( 0, 0 );
+    fdlFilenameField.right = new FormAttachment( middle, -margin );
+    fdlFilenameField.top = new FormAttachment( lastControl, margin );
+    wlFilenameField.setLayoutData( fdlFilenameField );
+    wFilenameField = new ComboVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wFilenameField.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.FilenameField.tooltip" ) );
+    props.setLook( wFilenameField );
+    wFilenameField.addModifyListener( lsMod );
+    FormData fdFilenameField = new FormData();
+    fdFilenameField.top = new FormAttachment( lastControl, margin );
+    fdFilenameField.left = new FormAttachment( middle, 0 );
+    fdFilenameField.right = new FormAttachment( 100, 0 );
+    wFilenameField.setLayoutData( fdFilenameField );
+    wFilenameField.addFocusListener(new FocusListener() {
+      public void focusLost(org.eclipse.swt.events.FocusEvent e) {
+      }
+
+      public void focusGained(org.eclipse.swt.events.FocusEvent e) {
+        Cursor busy = new Cursor(shell.getDisplay(), SWT.CURSOR_WAIT);
+        shell.setCursor(busy);
+        setFilenameFields();
+        shell.setCursor(null);
+        busy.dispose();
+      }
+    });
+    lastControl = wFilenameField;
+
+    // Scan directory ...
+    Label wlScanDirectory = new Label(shell, SWT.RIGHT);
+    wlScanDirectory.setText( BaseMessages.getString( PKG, "FileMetadata.ScanDirectory" ) );
+    props.setLook( wlScanDirectory );
+    FormData fdlScanDirectory = new FormData();
+    fdlScanDirectory.left = new FormAttachment( 0, 0 );
+    fdlScanDirectory.right = new FormAttachment( middle, -margin );
+    fdlScanDirectory.top = new FormAttachment( lastControl, margin );
+    wlScanDirectory.setLayoutData( fdlScanDirectory );
+    wScanDirectory = new Button( shell, SWT.CHECK );
+    wScanDirectory.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.ScanDirectory.tooltip" ) );
+    props.setLook( wScanDirectory );
+    FormData fdScanDirectory = new FormData();
+    fdScanDirectory.top = new FormAttachment( lastControl, margin );
+    fdScanDirectory.left = new FormAttachment( middle, 0 );
+    fdScanDirectory.right = new FormAttachment( 100, 0 );
+    wScanDirectory.setLayoutData( fdScanDirectory );
+    wScanDirectory.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setFilenameFlags();
+      }
+    } );
+    lastControl = wScanDirectory;
+
+    // Directory ...
+    Label wlDirectory = new Label(shell, SWT.RIGHT);
+    wlDirectory.setText( BaseMessages.getString( PKG, "FileMetadata.Directory" ) );
+    props.setLook( wlDirectory );
+    FormData fdlDirectory = new FormData();
+    fdlDirectory.left = new FormAttachment( 0, 0 );
+    fdlDirectory.right = new FormAttachment( middle, -margin );
+    fdlDirectory.top = new FormAttachment( lastControl, margin );
+    wlDirectory.setLayoutData( fdlDirectory );
+    wDirectory = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wDirectory.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.Directory.tooltip" ) );
+    props.setLook( wDirectory );
+    wDirectory.addModifyListener( lsMod );
+    FormData fdDirectory = new FormData();
+    fdDirectory.top = new FormAttachment( lastControl, margin );
+    fdDirectory.left = new FormAttachment( middle, 0 );
+    fdDirectory.right = new FormAttachment( 100, 0 );
+    wDirectory.setLayoutData( fdDirectory );
+    lastControl = wDirectory;
+
+    // Include files ...
+    Label wlIncludeFiles = new Label(shell, SWT.RIGHT);
+    wlIncludeFiles.setText( BaseMessages.getString( PKG, "FileMetadata.IncludeFiles" ) );
+    props.setLook( wlIncludeFiles );
+    FormData fdlIncludeFiles = new FormData();
+    fdlIncludeFiles.left = new FormAttachment( 0, 0 );
+    fdlIncludeFiles.right = new FormAttachment( middle, -margin );
+    fdlIncludeFiles.top = new FormAttachment( lastControl, margin );
+    wlIncludeFiles.setLayoutData( fdlIncludeFiles );
+    wIncludeFiles = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wIncludeFiles.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.IncludeFiles.tooltip" ) );
+    props.setLook( wIncludeFiles );
+    wIncludeFiles.addModifyListener( lsMod );
+    FormData fdIncludeFiles = new FormData();
+    fdIncludeFiles.top = new FormAttachment( lastControl, margin );
+    fdIncludeFiles.left = new FormAttachment( middle, 0 );
+    fdIncludeFiles.right = new FormAttachment( 100, 0 );
+    wIncludeFiles.setLayoutData( fdIncludeFiles );
+    lastControl = wIncludeFiles;
+
+    // Exclude files ...
+    Label wlExcludeFiles = new Label(shell, SWT.RIGHT);
+    wlExcludeFiles.setText( BaseMessages.getString( PKG, "FileMetadata.ExcludeFiles" ) );
+    props.setLook( wlExcludeFiles );
+    FormData fdlExcludeFiles = new FormData();
+    fdlExcludeFiles.left = new FormAttachment( 0, 0 );
+    fdlExcludeFiles.right = new FormAttachment( middle, -margin );
+    fdlExcludeFiles.top = new FormAttachment( lastControl, margin );
+    wlExcludeFiles.setLayoutData( fdlExcludeFiles );
+    wExcludeFiles = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wExcludeFiles.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.ExcludeFiles.tooltip" ) );
+    props.setLook( wExcludeFiles );
+    wExcludeFiles.addModifyListener( lsMod );
+    FormData fdExcludeFiles = new FormData();
+    fdExcludeFiles.top = new FormAttachment( lastControl, margin );
+    fdExcludeFiles.left = new FormAttachment( middle, 0 );
+    fdExcludeFiles.right = new FormAttachment( 100, 0 );
+    wExcludeFiles.setLayoutData( fdExcludeFiles );
+    lastControl = wExcludeFiles;
+
+    // Include subfolders ...
+    Label wlIncludeSubfolders = new Label(shell, SWT.RIGHT);
+    wlIncludeSubfolders.setText( BaseMessages.getString( PKG, "FileMetadata.IncludeSubfolders" ) );
+    props.setLook( wlIncludeSubfolders );
+    FormData fdlIncludeSubfolders = new FormData();
+    fdlIncludeSubfolders.left = new FormAttachment( 0, 0 );
+    fdlIncludeSubfolders.right = new FormAttachment( middle, -margin );
+    fdlIncludeSubfolders.top = new FormAttachment( lastControl, margin );
+    wlIncludeSubfolders.setLayoutData( fdlIncludeSubfolders );
+    wIncludeSubfolders = new Button( shell, SWT.CHECK );
+    wIncludeSubfolders.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.IncludeSubfolders.tooltip" ) );
+    props.setLook( wIncludeSubfolders );
+    FormData fdIncludeSubfolders = new FormData();
+    fdIncludeSubfolders.top = new FormAttachment( lastControl, margin );
+    fdIncludeSubfolders.left = new FormAttachment( middle, 0 );
+    fdIncludeSubfolders.right = new FormAttachment( 100, 0 );
+    wIncludeSubfolders.setLayoutData( fdIncludeSubfolders );
+    wIncludeSubfolders.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wIncludeSubfolders;
+
+    // Files scanned in parallel ...
+    Label wlFileWorkers = new Label(shell, SWT.RIGHT);
+    wlFileWorkers.setText( BaseMessages.getString( PKG, "FileMetadata.FileWorkers" ) );
+    props.setLook( wlFileWorkers );
+    FormData fdlFileWorkers = new FormData();
+    fdlFileWorkers.left = new FormAttachment( 0, 0 );
+    fdlFileWorkers.right = new FormAttachment( middle, -margin );
+    fdlFileWorkers.top = new FormAttachment( lastControl, margin );
+    wlFileWorkers.setLayoutData( fdlFileWorkers );
+    wFileWorkers = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wFileWorkers.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.FileWorkers.tooltip" ) );
+    props.setLook( wFileWorkers );
+    wFileWorkers.addModifyListener( lsMod );
+    FormData fdFileWorkers = new FormData();
+    fdFileWorkers.top = new FormAttachment( lastControl, margin );
+    fdFileWorkers.left = new FormAttachment( middle, 0 );
+    fdFileWorkers.right = new FormAttachment( 100, 0 );
+    wFileWorkers.setLayoutData( fdFileWorkers );
+    lastControl = wFileWorkers;
+
+    // Files in flight ...
+    Label wlMaxFilesInFlight = new Label(shell, SWT.RIGHT);
+    wlMaxFilesInFlight.setText( BaseMessages.getString( PKG, "FileMetadata.MaxFilesInFlight" ) );
+    props.setLook( wlMaxFilesInFlight );
+    FormData fdlMaxFilesInFlight = new FormData();
+    fdlMaxFilesInFlight.left = new FormAttachment( 0, 0 );
+    fdlMaxFilesInFlight.right = new FormAttachment( middle, -margin );
+    fdlMaxFilesInFlight.top = new FormAttachment( lastControl, margin );
+    wlMaxFilesInFlight.setLayoutData( fdlMaxFilesInFlight );
+    wMaxFilesInFlight = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMaxFilesInFlight.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.MaxFilesInFlight.tooltip" ) );
+    props.setLook( wMaxFilesInFlight );
+    wMaxFilesInFlight.addModifyListener( lsMod );
+    FormData fdMaxFilesInFlight = new FormData();
+    fdMaxFilesInFlight.top = new FormAttachment( lastControl, margin );
+    fdMaxFilesInFlight.left = new FormAttachment( middle, 0 );
+    fdMaxFilesInFlight.right = new FormAttachment( 100, 0 );
+    wMaxFilesInFlight.setLayoutData( fdMaxFilesInFlight );
+    lastControl = wMaxFilesInFlight;
+
+    // Files read ahead ...
+    Label wlPrefetchFiles = new Label(shell, SWT.RIGHT);
+    wlPrefetchFiles.setText( BaseMessages.getString( PKG, "FileMetadata.PrefetchFiles" ) );
+    props.setLook( wlPrefetchFiles );
+    FormData fdlPrefetchFiles = new FormData();
+    fdlPrefetchFiles.left = new FormAttachment( 0, 0 );
+    fdlPrefetchFiles.right = new FormAttachment( middle, -margin );
+    fdlPrefetchFiles.top = new FormAttachment( lastControl, margin );
+    wlPrefetchFiles.setLayoutData( fdlPrefetchFiles );
+    wPrefetchFiles = new TextVar( transMeta, shell, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wPrefetchFiles.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.PrefetchFiles.tooltip" ) );
+    props.setLook( wPrefetchFiles );
+    wPrefetchFiles.addModifyListener( lsMod );
+    FormData fdPrefetchFiles = new FormData();
+    fdPrefetchFiles.top = new FormAttachment( lastControl, margin );
+    fdPrefetchFiles.left = new FormAttachment( middle, 0 );
+    fdPrefetchFiles.right = new FormAttachment( 100, 0 );
+    wPrefetchFiles.setLayoutData( fdPrefetchFiles );
+    lastControl = wPrefetchFiles;
+
     // options panel for DELIMITED_LAYOUT
     Group gDelimitedLayout = new Group(shell, SWT.SHADOW_ETCHED_IN);
     gDelimitedLayout.setText("Delimited Layout");
@@ -287,6 +554,412 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
       }
     });
 
+    // Confidence threshold ...
+    Label wlConfidenceThreshold = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlConfidenceThreshold.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.confidence" ) );
+    props.setLook( wlConfidenceThreshold );
+    FormData fdlConfidenceThreshold = new FormData();
+    fdlConfidenceThreshold.left = new FormAttachment( 0, 0 );
+    fdlConfidenceThreshold.right = new FormAttachment( middle, -margin );
+    fdlConfidenceThreshold.top = new FormAttachment( lastControl, margin );
+    wlConfidenceThreshold.setLayoutData( fdlConfidenceThreshold );
+    wConfidenceThreshold = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wConfidenceThreshold.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.confidence.tooltip" ) );
+    props.setLook( wConfidenceThreshold );
+    wConfidenceThreshold.addModifyListener( lsMod );
+    FormData fdConfidenceThreshold = new FormData();
+    fdConfidenceThreshold.top = new FormAttachment( lastControl, margin );
+    fdConfidenceThreshold.left = new FormAttachment( middle, 0 );
+    fdConfidenceThreshold.right = new FormAttachment( 100, 0 );
+    wConfidenceThreshold.setLayoutData( fdConfidenceThreshold );
+    lastControl = wConfidenceThreshold;
+
+    // Minimum sample ...
+    Label wlMinSampleRows = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlMinSampleRows.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.min_sample" ) );
+    props.setLook( wlMinSampleRows );
+    FormData fdlMinSampleRows = new FormData();
+    fdlMinSampleRows.left = new FormAttachment( 0, 0 );
+    fdlMinSampleRows.right = new FormAttachment( middle, -margin );
+    fdlMinSampleRows.top = new FormAttachment( lastControl, margin );
+    wlMinSampleRows.setLayoutData( fdlMinSampleRows );
+    wMinSampleRows = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wMinSampleRows.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.min_sample.tooltip" ) );
+    props.setLook( wMinSampleRows );
+    wMinSampleRows.addModifyListener( lsMod );
+    FormData fdMinSampleRows = new FormData();
+    fdMinSampleRows.top = new FormAttachment( lastControl, margin );
+    fdMinSampleRows.left = new FormAttachment( middle, 0 );
+    fdMinSampleRows.right = new FormAttachment( 100, 0 );
+    wMinSampleRows.setLayoutData( fdMinSampleRows );
+    lastControl = wMinSampleRows;
+
+    // Stratified sampling ...
+    Label wlStratifiedSampling = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlStratifiedSampling.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.stratified" ) );
+    props.setLook( wlStratifiedSampling );
+    FormData fdlStratifiedSampling = new FormData();
+    fdlStratifiedSampling.left = new FormAttachment( 0, 0 );
+    fdlStratifiedSampling.right = new FormAttachment( middle, -margin );
+    fdlStratifiedSampling.top = new FormAttachment( lastControl, margin );
+    wlStratifiedSampling.setLayoutData( fdlStratifiedSampling );
+    wStratifiedSampling = new Button( gDelimitedLayout, SWT.CHECK );
+    wStratifiedSampling.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.stratified.tooltip" ) );
+    props.setLook( wStratifiedSampling );
+    FormData fdStratifiedSampling = new FormData();
+    fdStratifiedSampling.top = new FormAttachment( lastControl, margin );
+    fdStratifiedSampling.left = new FormAttachment( middle, 0 );
+    fdStratifiedSampling.right = new FormAttachment( 100, 0 );
+    wStratifiedSampling.setLayoutData( fdStratifiedSampling );
+    wStratifiedSampling.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+        setSamplingFlags();
+      }
+    } );
+    lastControl = wStratifiedSampling;
+
+    // Sample window size ...
+    Label wlSampleWindowSize = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlSampleWindowSize.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.window_size" ) );
+    props.setLook( wlSampleWindowSize );
+    FormData fdlSampleWindowSize = new FormData();
+    fdlSampleWindowSize.left = new FormAttachment( 0, 0 );
+    fdlSampleWindowSize.right = new FormAttachment( middle, -margin );
+    fdlSampleWindowSize.top = new FormAttachment( lastControl, margin );
+    wlSampleWindowSize.setLayoutData( fdlSampleWindowSize );
+    wSampleWindowSize = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSampleWindowSize.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.window_size.tooltip" ) );
+    props.setLook( wSampleWindowSize );
+    wSampleWindowSize.addModifyListener( lsMod );
+    FormData fdSampleWindowSize = new FormData();
+    fdSampleWindowSize.top = new FormAttachment( lastControl, margin );
+    fdSampleWindowSize.left = new FormAttachment( middle, 0 );
+    fdSampleWindowSize.right = new FormAttachment( 100, 0 );
+    wSampleWindowSize.setLayoutData( fdSampleWindowSize );
+    lastControl = wSampleWindowSize;
+
+    // Sample windows ...
+    Label wlSampleWindows = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlSampleWindows.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.windows" ) );
+    props.setLook( wlSampleWindows );
+    FormData fdlSampleWindows = new FormData();
+    fdlSampleWindows.left = new FormAttachment( 0, 0 );
+    fdlSampleWindows.right = new FormAttachment( middle, -margin );
+    fdlSampleWindows.top = new FormAttachment( lastControl, margin );
+    wlSampleWindows.setLayoutData( fdlSampleWindows );
+    wSampleWindows = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wSampleWindows.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.windows.tooltip" ) );
+    props.setLook( wSampleWindows );
+    wSampleWindows.addModifyListener( lsMod );
+    FormData fdSampleWindows = new FormData();
+    fdSampleWindows.top = new FormAttachment( lastControl, margin );
+    fdSampleWindows.left = new FormAttachment( middle, 0 );
+    fdSampleWindows.right = new FormAttachment( 100, 0 );
+    wSampleWindows.setLayoutData( fdSampleWindows );
+    lastControl = wSampleWindows;
+
+    // Discover delimiters ...
+    Label wlDiscoverDelimiters = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlDiscoverDelimiters.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.discover" ) );
+    props.setLook( wlDiscoverDelimiters );
+    FormData fdlDiscoverDelimiters = new FormData();
+    fdlDiscoverDelimiters.left = new FormAttachment( 0, 0 );
+    fdlDiscoverDelimiters.right = new FormAttachment( middle, -margin );
+    fdlDiscoverDelimiters.top = new FormAttachment( lastControl, margin );
+    wlDiscoverDelimiters.setLayoutData( fdlDiscoverDelimiters );
+    wDiscoverDelimiters = new Button( gDelimitedLayout, SWT.CHECK );
+    wDiscoverDelimiters.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.discover.tooltip" ) );
+    props.setLook( wDiscoverDelimiters );
+    FormData fdDiscoverDelimiters = new FormData();
+    fdDiscoverDelimiters.top = new FormAttachment( lastControl, margin );
+    fdDiscoverDelimiters.left = new FormAttachment( middle, 0 );
+    fdDiscoverDelimiters.right = new FormAttachment( 100, 0 );
+    wDiscoverDelimiters.setLayoutData( fdDiscoverDelimiters );
+    wDiscoverDelimiters.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wDiscoverDelimiters;
+
+    // Parallel detection ...
+    Label wlParallelDetection = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlParallelDetection.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.parallel" ) );
+    props.setLook( wlParallelDetection );
+    FormData fdlParallelDetection = new FormData();
+    fdlParallelDetection.left = new FormAttachment( 0, 0 );
+    fdlParallelDetection.right = new FormAttachment( middle, -margin );
+    fdlParallelDetection.top = new FormAttachment( lastControl, margin );
+    wlParallelDetection.setLayoutData( fdlParallelDetection );
+    wParallelDetection = new Button( gDelimitedLayout, SWT.CHECK );
+    wParallelDetection.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.parallel.tooltip" ) );
+    props.setLook( wParallelDetection );
+    FormData fdParallelDetection = new FormData();
+    fdParallelDetection.top = new FormAttachment( lastControl, margin );
+    fdParallelDetection.left = new FormAttachment( middle, 0 );
+    fdParallelDetection.right = new FormAttachment( 100, 0 );
+    wParallelDetection.setLayoutData( fdParallelDetection );
+    wParallelDetection.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wParallelDetection;
+
+    // Value cache size ...
+    Label wlValueCacheSize = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlValueCacheSize.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.value_cache" ) );
+    props.setLook( wlValueCacheSize );
+    FormData fdlValueCacheSize = new FormData();
+    fdlValueCacheSize.left = new FormAttachment( 0, 0 );
+    fdlValueCacheSize.right = new FormAttachment( middle, -margin );
+    fdlValueCacheSize.top = new FormAttachment( lastControl, margin );
+    wlValueCacheSize.setLayoutData( fdlValueCacheSize );
+    wValueCacheSize = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wValueCacheSize.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.value_cache.tooltip" ) );
+    props.setLook( wValueCacheSize );
+    wValueCacheSize.addModifyListener( lsMod );
+    FormData fdValueCacheSize = new FormData();
+    fdValueCacheSize.top = new FormAttachment( lastControl, margin );
+    fdValueCacheSize.left = new FormAttachment( middle, 0 );
+    fdValueCacheSize.right = new FormAttachment( 100, 0 );
+    wValueCacheSize.setLayoutData( fdValueCacheSize );
+    lastControl = wValueCacheSize;
+
+    // Parallel type evaluation ...
+    Label wlParallelTypeEvaluation = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlParallelTypeEvaluation.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.parallel_types" ) );
+    props.setLook( wlParallelTypeEvaluation );
+    FormData fdlParallelTypeEvaluation = new FormData();
+    fdlParallelTypeEvaluation.left = new FormAttachment( 0, 0 );
+    fdlParallelTypeEvaluation.right = new FormAttachment( middle, -margin );
+    fdlParallelTypeEvaluation.top = new FormAttachment( lastControl, margin );
+    wlParallelTypeEvaluation.setLayoutData( fdlParallelTypeEvaluation );
+    wParallelTypeEvaluation = new Button( gDelimitedLayout, SWT.CHECK );
+    wParallelTypeEvaluation.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.parallel_types.tooltip" ) );
+    props.setLook( wParallelTypeEvaluation );
+    FormData fdParallelTypeEvaluation = new FormData();
+    fdParallelTypeEvaluation.top = new FormAttachment( lastControl, margin );
+    fdParallelTypeEvaluation.left = new FormAttachment( middle, 0 );
+    fdParallelTypeEvaluation.right = new FormAttachment( 100, 0 );
+    wParallelTypeEvaluation.setLayoutData( fdParallelTypeEvaluation );
+    wParallelTypeEvaluation.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wParallelTypeEvaluation;
+
+    // Column statistics ...
+    Label wlColumnStatistics = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlColumnStatistics.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.column_statistics" ) );
+    props.setLook( wlColumnStatistics );
+    FormData fdlColumnStatistics = new FormData();
+    fdlColumnStatistics.left = new FormAttachment( 0, 0 );
+    fdlColumnStatistics.right = new FormAttachment( middle, -margin );
+    fdlColumnStatistics.top = new FormAttachment( lastControl, margin );
+    wlColumnStatistics.setLayoutData( fdlColumnStatistics );
+    wColumnStatistics = new Button( gDelimitedLayout, SWT.CHECK );
+    wColumnStatistics.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.column_statistics.tooltip" ) );
+    props.setLook( wColumnStatistics );
+    FormData fdColumnStatistics = new FormData();
+    fdColumnStatistics.top = new FormAttachment( lastControl, margin );
+    fdColumnStatistics.left = new FormAttachment( middle, 0 );
+    fdColumnStatistics.right = new FormAttachment( 100, 0 );
+    wColumnStatistics.setLayoutData( fdColumnStatistics );
+    wColumnStatistics.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wColumnStatistics;
+
+    // Distinct count ...
+    Label wlDistinctCount = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlDistinctCount.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.distinct_count" ) );
+    props.setLook( wlDistinctCount );
+    FormData fdlDistinctCount = new FormData();
+    fdlDistinctCount.left = new FormAttachment( 0, 0 );
+    fdlDistinctCount.right = new FormAttachment( middle, -margin );
+    fdlDistinctCount.top = new FormAttachment( lastControl, margin );
+    wlDistinctCount.setLayoutData( fdlDistinctCount );
+    wDistinctCount = new Button( gDelimitedLayout, SWT.CHECK );
+    wDistinctCount.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.distinct_count.tooltip" ) );
+    props.setLook( wDistinctCount );
+    FormData fdDistinctCount = new FormData();
+    fdDistinctCount.top = new FormAttachment( lastControl, margin );
+    fdDistinctCount.left = new FormAttachment( middle, 0 );
+    fdDistinctCount.right = new FormAttachment( 100, 0 );
+    wDistinctCount.setLayoutData( fdDistinctCount );
+    wDistinctCount.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wDistinctCount;
+
+    // Distinct count precision ...
+    Label wlDistinctCountPrecision = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlDistinctCountPrecision.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.distinct_count_precision" ) );
+    props.setLook( wlDistinctCountPrecision );
+    FormData fdlDistinctCountPrecision = new FormData();
+    fdlDistinctCountPrecision.left = new FormAttachment( 0, 0 );
+    fdlDistinctCountPrecision.right = new FormAttachment( middle, -margin );
+    fdlDistinctCountPrecision.top = new FormAttachment( lastControl, margin );
+    wlDistinctCountPrecision.setLayoutData( fdlDistinctCountPrecision );
+    wDistinctCountPrecision = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wDistinctCountPrecision.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.distinct_count_precision.tooltip" ) );
+    props.setLook( wDistinctCountPrecision );
+    wDistinctCountPrecision.addModifyListener( lsMod );
+    FormData fdDistinctCountPrecision = new FormData();
+    fdDistinctCountPrecision.top = new FormAttachment( lastControl, margin );
+    fdDistinctCountPrecision.left = new FormAttachment( middle, 0 );
+    fdDistinctCountPrecision.right = new FormAttachment( 100, 0 );
+    wDistinctCountPrecision.setLayoutData( fdDistinctCountPrecision );
+    lastControl = wDistinctCountPrecision;
+
+    // Top values ...
+    Label wlTopValues = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlTopValues.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.top_values" ) );
+    props.setLook( wlTopValues );
+    FormData fdlTopValues = new FormData();
+    fdlTopValues.left = new FormAttachment( 0, 0 );
+    fdlTopValues.right = new FormAttachment( middle, -margin );
+    fdlTopValues.top = new FormAttachment( lastControl, margin );
+    wlTopValues.setLayoutData( fdlTopValues );
+    wTopValues = new Button( gDelimitedLayout, SWT.CHECK );
+    wTopValues.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.top_values.tooltip" ) );
+    props.setLook( wTopValues );
+    FormData fdTopValues = new FormData();
+    fdTopValues.top = new FormAttachment( lastControl, margin );
+    fdTopValues.left = new FormAttachment( middle, 0 );
+    fdTopValues.right = new FormAttachment( 100, 0 );
+    wTopValues.setLayoutData( fdTopValues );
+    wTopValues.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wTopValues;
+
+    // Top values count ...
+    Label wlTopValuesCount = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlTopValuesCount.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.top_values_count" ) );
+    props.setLook( wlTopValuesCount );
+    FormData fdlTopValuesCount = new FormData();
+    fdlTopValuesCount.left = new FormAttachment( 0, 0 );
+    fdlTopValuesCount.right = new FormAttachment( middle, -margin );
+    fdlTopValuesCount.top = new FormAttachment( lastControl, margin );
+    wlTopValuesCount.setLayoutData( fdlTopValuesCount );
+    wTopValuesCount = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wTopValuesCount.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.top_values_count.tooltip" ) );
+    props.setLook( wTopValuesCount );
+    wTopValuesCount.addModifyListener( lsMod );
+    FormData fdTopValuesCount = new FormData();
+    fdTopValuesCount.top = new FormAttachment( lastControl, margin );
+    fdTopValuesCount.left = new FormAttachment( middle, 0 );
+    fdTopValuesCount.right = new FormAttachment( 100, 0 );
+    wTopValuesCount.setLayoutData( fdTopValuesCount );
+    lastControl = wTopValuesCount;
+
+    // Quantiles ...
+    Label wlQuantiles = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlQuantiles.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.quantiles" ) );
+    props.setLook( wlQuantiles );
+    FormData fdlQuantiles = new FormData();
+    fdlQuantiles.left = new FormAttachment( 0, 0 );
+    fdlQuantiles.right = new FormAttachment( middle, -margin );
+    fdlQuantiles.top = new FormAttachment( lastControl, margin );
+    wlQuantiles.setLayoutData( fdlQuantiles );
+    wQuantiles = new Button( gDelimitedLayout, SWT.CHECK );
+    wQuantiles.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.quantiles.tooltip" ) );
+    props.setLook( wQuantiles );
+    FormData fdQuantiles = new FormData();
+    fdQuantiles.top = new FormAttachment( lastControl, margin );
+    fdQuantiles.left = new FormAttachment( middle, 0 );
+    fdQuantiles.right = new FormAttachment( 100, 0 );
+    wQuantiles.setLayoutData( fdQuantiles );
+    wQuantiles.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wQuantiles;
+
+    // Cache results ...
+    Label wlCacheResults = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlCacheResults.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.cache_results" ) );
+    props.setLook( wlCacheResults );
+    FormData fdlCacheResults = new FormData();
+    fdlCacheResults.left = new FormAttachment( 0, 0 );
+    fdlCacheResults.right = new FormAttachment( middle, -margin );
+    fdlCacheResults.top = new FormAttachment( lastControl, margin );
+    wlCacheResults.setLayoutData( fdlCacheResults );
+    wCacheResults = new Button( gDelimitedLayout, SWT.CHECK );
+    wCacheResults.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.cache_results.tooltip" ) );
+    props.setLook( wCacheResults );
+    FormData fdCacheResults = new FormData();
+    fdCacheResults.top = new FormAttachment( lastControl, margin );
+    fdCacheResults.left = new FormAttachment( middle, 0 );
+    fdCacheResults.right = new FormAttachment( 100, 0 );
+    wCacheResults.setLayoutData( fdCacheResults );
+    wCacheResults.addSelectionListener( new SelectionAdapter() {
+      @Override
+      public void widgetSelected( SelectionEvent e ) {
+        meta.setChanged();
+      }
+    } );
+    lastControl = wCacheResults;
+
+    // Result index ...
+    Label wlResultIndex = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlResultIndex.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.result_index" ) );
+    props.setLook( wlResultIndex );
+    FormData fdlResultIndex = new FormData();
+    fdlResultIndex.left = new FormAttachment( 0, 0 );
+    fdlResultIndex.right = new FormAttachment( middle, -margin );
+    fdlResultIndex.top = new FormAttachment( lastControl, margin );
+    wlResultIndex.setLayoutData( fdlResultIndex );
+    wResultIndex = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wResultIndex.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.result_index.tooltip" ) );
+    props.setLook( wResultIndex );
+    wResultIndex.addModifyListener( lsMod );
+    FormData fdResultIndex = new FormData();
+    fdResultIndex.top = new FormAttachment( lastControl, margin );
+    fdResultIndex.left = new FormAttachment( middle, 0 );
+    fdResultIndex.right = new FormAttachment( 100, 0 );
+    wResultIndex.setLayoutData( fdResultIndex );
+    lastControl = wResultIndex;
+
+    // Result index size ...
+    Label wlResultIndexSize = new Label(gDelimitedLayout, SWT.RIGHT);
+    wlResultIndexSize.setText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.result_index_size" ) );
+    props.setLook( wlResultIndexSize );
+    FormData fdlResultIndexSize = new FormData();
+    fdlResultIndexSize.left = new FormAttachment( 0, 0 );
+    fdlResultIndexSize.right = new FormAttachment( middle, -margin );
+    fdlResultIndexSize.top = new FormAttachment( lastControl, margin );
+    wlResultIndexSize.setLayoutData( fdlResultIndexSize );
+    wResultIndexSize = new TextVar( transMeta, gDelimitedLayout, SWT.SINGLE | SWT.LEFT | SWT.BORDER );
+    wResultIndexSize.setToolTipText( BaseMessages.getString( PKG, "FileMetadata.methods.DELIMITED_FIELDS.result_index_size.tooltip" ) );
+    props.setLook( wResultIndexSize );
+    wResultIndexSize.addModifyListener( lsMod );
+    FormData fdResultIndexSize = new FormData();
+    fdResultIndexSize.top = new FormAttachment( lastControl, margin );
+    fdResultIndexSize.left = new FormAttachment( middle, 0 );
+    fdResultIndexSize.right = new FormAttachment( 100, 0 );
+    wResultIndexSize.setLayoutData( fdResultIndexSize );
+    lastControl = wResultIndexSize;
+
     int candidateCount = meta.getDelimiterCandidates().size();
 
     ColumnInfo[] colinf = new ColumnInfo[]{
@@ -299,7 +972,7 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
     FormData fdDelimiterCandidates = new FormData();
     fdDelimiterCandidates.left = new FormAttachment(0, 0);
     fdDelimiterCandidates.right = new FormAttachment(100, 0);
-    fdDelimiterCandidates.top = new FormAttachment(wDefaultCharset, margin);
+    fdDelimiterCandidates.top = new FormAttachment(lastControl, margin);
     fdDelimiterCandidates.bottom = new FormAttachment(50, 0);
     wDelimiterCandidates.setLayoutData(fdDelimiterCandidates);
 
@@ -322,7 +995,7 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
     FormData fdQueryGroup = new FormData();
     fdQueryGroup.left = new FormAttachment(0, 0);
     fdQueryGroup.right = new FormAttachment(100, 0);
-    fdQueryGroup.top = new FormAttachment(wFilename, margin);
+    fdQueryGroup.top = new FormAttachment(wPrefetchFiles, margin);
     fdQueryGroup.bottom = new FormAttachment(100, -50);
     gDelimitedLayout.setLayoutData(fdQueryGroup);
 
@@ -416,6 +1089,42 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
       wFilename.setText(meta.getFileName());
     }
 
+    wFilenameInField.setSelection(meta.isFileNameInField());
+
+    if (meta.getFileNameField() != null) {
+      wFilenameField.setText(meta.getFileNameField());
+    }
+
+    wScanDirectory.setSelection(meta.isScanDirectory());
+
+    if (meta.getDirectory() != null) {
+      wDirectory.setText(meta.getDirectory());
+    }
+
+    if (meta.getIncludeFiles() != null) {
+      wIncludeFiles.setText(meta.getIncludeFiles());
+    }
+
+    if (meta.getExcludeFiles() != null) {
+      wExcludeFiles.setText(meta.getExcludeFiles());
+    }
+
+    wIncludeSubfolders.setSelection(meta.isIncludeSubfolders());
+
+    if (meta.getFileWorkers() != null) {
+      wFileWorkers.setText(meta.getFileWorkers());
+    }
+
+    if (meta.getMaxFilesInFlight() != null) {
+      wMaxFilesInFlight.setText(meta.getMaxFilesInFlight());
+    }
+
+    if (meta.getPrefetchFiles() != null) {
+      wPrefetchFiles.setText(meta.getPrefetchFiles());
+    }
+
+    setFilenameFlags();
+
     if (meta.getLimitRows() != null) {
       wLimit.setText(meta.getLimitRows());
     }
@@ -424,6 +1133,57 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
       wDefaultCharset.setText(meta.getDefaultCharset());
     }
 
+    if (meta.getConfidenceThreshold() != null) {
+      wConfidenceThreshold.setText(meta.getConfidenceThreshold());
+    }
+
+    if (meta.getMinSampleRows() != null) {
+      wMinSampleRows.setText(meta.getMinSampleRows());
+    }
+
+    wStratifiedSampling.setSelection(meta.isStratifiedSampling());
+
+    if (meta.getSampleWindowSize() != null) {
+      wSampleWindowSize.setText(meta.getSampleWindowSize());
+    }
+
+    if (meta.getSampleWindows() != null) {
+      wSampleWindows.setText(meta.getSampleWindows());
+    }
+
+    setSamplingFlags();
+
+    wDiscoverDelimiters.setSelection(meta.isDiscoverDelimiters());
+    wParallelDetection.setSelection(meta.isParallelDetection());
+
+    if (meta.getValueCacheSize() != null) {
+      wValueCacheSize.setText(meta.getValueCacheSize());
+    }
+
+    wParallelTypeEvaluation.setSelection(meta.isParallelTypeEvaluation());
+    wColumnStatistics.setSelection(meta.isColumnStatistics());
+    wDistinctCount.setSelection(meta.isDistinctCount());
+
+    if (meta.getDistinctCountPrecision() != null) {
+      wDistinctCountPrecision.setText(meta.getDistinctCountPrecision());
+    }
+
+    wTopValues.setSelection(meta.isTopValues());
+    wQuantiles.setSelection(meta.isQuantiles());
+    wCacheResults.setSelection(meta.isCacheResults());
+
+    if (meta.getResultIndex() != null) {
+      wResultIndex.setText(meta.getResultIndex());
+    }
+
+    if (meta.getResultIndexSize() != null) {
+      wResultIndexSize.setText(meta.getResultIndexSize());
+    }
+
+    if (meta.getTopValuesCount() != null) {
+      wTopValuesCount.setText(meta.getTopValuesCount());
+    }
+
     if (meta.getDelimiterCandidates() != null) {
       for (int i = 0; i < meta.getDelimiterCandidates().size(); i++) {
         String candidate = meta.getDelimiterCandidates().get(i);
@@ -442,6 +1202,27 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
 
   }
 
+  private void setFilenameFlags() {
+    boolean inDirectory = wScanDirectory.getSelection();
+    boolean inField = wFilenameInField.getSelection() && !inDirectory;
+    wFilename.setEnabled(!inField && !inDirectory);
+    wFilenameInField.setEnabled(!inDirectory);
+    wFilenameField.setEnabled(inField);
+    wDirectory.setEnabled(inDirectory);
+    wIncludeFiles.setEnabled(inDirectory);
+    wExcludeFiles.setEnabled(inDirectory);
+    wIncludeSubfolders.setEnabled(inDirectory);
+    wFileWorkers.setEnabled(inField || inDirectory);
+    wMaxFilesInFlight.setEnabled(inField || inDirectory);
+    wPrefetchFiles.setEnabled(inField || inDirectory);
+  }
+
+  private void setSamplingFlags() {
+    boolean stratified = wStratifiedSampling.getSelection();
+    wSampleWindowSize.setEnabled(stratified);
+    wSampleWindows.setEnabled(stratified);
+  }
+
   /**
    * Called when the user cancels the dialog.
    */
@@ -464,8 +1245,36 @@ public class FileMetadataDialog extends BaseStepDialog implements StepDialogInte
     stepname = wStepname.getText();
 
     meta.setFileName(wFilename.getText());
+    meta.setFileNameInField(wFilenameInField.getSelection());
+    meta.setFileNameField(wFilenameField.getText());
+    meta.setScanDirectory(wScanDirectory.getSelection());
+    meta.setDirectory(wDirectory.getText());
+    meta.setIncludeFiles(wIncludeFiles.getText());
+    meta.setExcludeFiles(wExcludeFiles.getText());
+    meta.setIncludeSubfolders(wIncludeSubfolders.getSelection());
+    meta.setFileWorkers(wFileWorkers.getText());
+    meta.setMaxFilesInFlight(wMaxFilesInFlight.getText());
+    meta.setPrefetchFiles(wPrefetchFiles.getText());
     meta.setLimitRows(wLimit.getText());
     meta.setDefaultCharset(wDefaultCharset.getText());
+    meta.setConfidenceThreshold(wConfidenceThreshold.getText());
+    meta.setMinSampleRows(wMinSampleRows.getText());
+    meta.setStratifiedSampling(wStratifiedSampling.getSelection());
+    meta.setSampleWindowSize(wSampleWindowSize.getText());
+    meta.setSampleWindows(wSampleWindows.getText());
+    meta.setDiscoverDelimiters(wDiscoverDelimiters.getSelection());
+    meta.setParallelDetection(wParallelDetection.getSelection());
+    meta.setValueCacheSize(wValueCacheSize.getText());
+    meta.setParallelTypeEvaluation(wParallelTypeEvaluation.getSelection());
+    meta.setColumnStatistics(wColumnStatistics.getSelection());
+    meta.setDistinctCount(wDistinctCount.getSelection());
+    meta.setDistinctCountPrecision(wDistinctCountPrecision.getText());
+    meta.setTopValues(wTopValues.getSelection());
+    meta.setTopValuesCount(wTopValuesCount.getText());
+    meta.setQuantiles(wQuantiles.getSelection());
+    meta.setCacheResults(wCacheResults.getSelection());
+    meta.setResultIndex(wResultIndex.getText());
+    meta.setResultIndexSize(wResultIndexSize.getText());
 
     // delimiter candidates
     ArrayList<String> candidates = meta.getDelimiterCandidates();
@@ -85,9 +85,66 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
    * Stores the name of the file to examine
    */
   private String fileName = "";
+
+  // take the name of the file to examine from a field of each input row
+  private boolean fileNameInField = false;
+  private String fileNameField = "";
+  // examine the files of a directory whose names match the include and not the exclude expression
+  private boolean scanDirectory = false;
+  private String directory = "";
+  private String includeFiles = "";
+  private String excludeFiles = "";
+  private boolean includeSubfolders = false;
+  // files scanned at once, and files scanned or waiting to be written out at most
+  private String fileWorkers = "";
+  private String maxFilesInFlight = "";
+  // files read ahead of the scans, none if empty or 0
+  private String prefetchFiles = "";
   private String limitRows = "0";
   private String defaultCharset = "ISO-8859-1";
 
+  // stop scanning once a delimiter leads with this confidence, after scanning at least minSampleRows
+  private String confidenceThreshold = "";
+  private String minSampleRows = "";
+
+  // sample windows from head, interior and tail of the file instead of reading from the head only
+  private boolean stratifiedSampling = false;
+  private String sampleWindowSize = "";
+  private String sampleWindows = "";
+
+  // discover further delimiter candidates from the symbols in the file
+  private boolean discoverDelimiters = false;
+
+  // scan entire files in line aligned chunks on all cores
+  private boolean parallelDetection = false;
+
+  // recent distinct values per column that skip type evaluation
+  private String valueCacheSize = "";
+
+  // evaluate slices of the columns of wide files on all cores
+  private boolean parallelTypeEvaluation = false;
+
+  // output null and empty counts, value ranges and byte lengths per field
+  private boolean columnStatistics = false;
+
+  // output the estimated number of distinct values per field, and the precision of its sketch
+  private boolean distinctCount = false;
+  private String distinctCountPrecision = "";
+
+  // output the most frequent values per field, and how many
+  private boolean topValues = false;
+  private String topValuesCount = "";
+
+  // output quantiles of numeric and date fields
+  private boolean quantiles = false;
+
+  // reuse the results of unchanged files scanned before with the same settings
+  private boolean cacheResults = false;
+
+  // keep results in a local index file that outlives the JVM, and how many
+  private String resultIndex = "";
+  private String resultIndexSize = "";
+
   // candidates for delimiters in delimited files
   private ArrayList<String> delimiterCandidates = new ArrayList<>(5);
 
@@ -144,8 +201,36 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
    */
   public void setDefault() {
     fileName = "";
+    fileNameInField = false;
+    fileNameField = "";
+    scanDirectory = false;
+    directory = "";
+    includeFiles = "";
+    excludeFiles = "";
+    includeSubfolders = false;
+    fileWorkers = "4";
+    maxFilesInFlight = "16";
+    prefetchFiles = "0";
     limitRows = "10000";
     defaultCharset = "ISO-8859-1";
+    confidenceThreshold = "0.99";
+    minSampleRows = "1000";
+    stratifiedSampling = false;
+    sampleWindowSize = "64";
+    sampleWindows = "8";
+    discoverDelimiters = false;
+    parallelDetection = false;
+    valueCacheSize = "256";
+    parallelTypeEvaluation = false;
+    columnStatistics = false;
+    distinctCount = false;
+    distinctCountPrecision = "12";
+    topValues = false;
+    topValuesCount = "10";
+    quantiles = false;
+    cacheResults = false;
+    resultIndex = "";
+    resultIndexSize = "100000";
 
     delimiterCandidates.clear();
     delimiterCandidates.add("\t");
@@ -188,8 +273,36 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
     StringBuilder buffer = new StringBuilder(800);
 
     buffer.append("    ").append(XMLHandler.addTagValue("fileName", fileName));
+    buffer.append("    ").append(XMLHandler.addTagValue("fileNameInField", fileNameInField));
+    buffer.append("    ").append(XMLHandler.addTagValue("fileNameField", fileNameField));
+    buffer.append("    ").append(XMLHandler.addTagValue("scanDirectory", scanDirectory));
+    buffer.append("    ").append(XMLHandler.addTagValue("directory", directory));
+    buffer.append("    ").append(XMLHandler.addTagValue("includeFiles", includeFiles));
+    buffer.append("    ").append(XMLHandler.addTagValue("excludeFiles", excludeFiles));
+    buffer.append("    ").append(XMLHandler.addTagValue("includeSubfolders", includeSubfolders));
+    buffer.append("    ").append(XMLHandler.addTagValue("fileWorkers", fileWorkers));
+    buffer.append("    ").append(XMLHandler.addTagValue("maxFilesInFlight", maxFilesInFlight));
+    buffer.append("    ").append(XMLHandler.addTagValue("prefetchFiles", prefetchFiles));
     buffer.append("    ").append(XMLHandler.addTagValue("limitRows", limitRows));
     buffer.append("    ").append(XMLHandler.addTagValue("defaultCharset", defaultCharset));
+    buffer.append("    ").append(XMLHandler.addTagValue("confidenceThreshold", confidenceThreshold));
+    buffer.append("    ").append(XMLHandler.addTagValue("minSampleRows", minSampleRows));
+    buffer.append("    ").append(XMLHandler.addTagValue("stratifiedSampling", stratifiedSampling));
+    buffer.append("    ").append(XMLHandler.addTagValue("sampleWindowSize", sampleWindowSize));
+    buffer.append("    ").append(XMLHandler.addTagValue("sampleWindows", sampleWindows));
+    buffer.append("    ").append(XMLHandler.addTagValue("discoverDelimiters", discoverDelimiters));
+    buffer.append("    ").append(XMLHandler.addTagValue("parallelDetection", parallelDetection));
+    buffer.append("    ").append(XMLHandler.addTagValue("valueCacheSize", valueCacheSize));
+    buffer.append("    ").append(XMLHandler.addTagValue("parallelTypeEvaluation", parallelTypeEvaluation));
+    buffer.append("    ").append(XMLHandler.addTagValue("columnStatistics", columnStatistics));
+    buffer.append("    ").append(XMLHandler.addTagValue("distinctCount", distinctCount));
+    buffer.append("    ").append(XMLHandler.addTagValue("distinctCountPrecision", distinctCountPrecision));
+    buffer.append("    ").append(XMLHandler.addTagValue("topValues", topValues));
+    buffer.append("    ").append(XMLHandler.addTagValue("topValuesCount", topValuesCount));
+    buffer.append("    ").append(XMLHandler.addTagValue("quantiles", quantiles));
+    buffer.append("    ").append(XMLHandler.addTagValue("cacheResults", cacheResults));
+    buffer.append("    ").append(XMLHandler.addTagValue("resultIndex", resultIndex));
+    buffer.append("    ").append(XMLHandler.addTagValue("resultIndexSize", resultIndexSize));
 
     for (String delimiterCandidate : delimiterCandidates) {
       buffer.append("      <delimiterCandidate>").append(Const.CR);
@@ -220,8 +333,36 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
 
     try {
       setFileName(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "fileName")));
+      setFileNameInField("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "fileNameInField")));
+      setFileNameField(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "fileNameField")));
+      setScanDirectory("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "scanDirectory")));
+      setDirectory(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "directory")));
+      setIncludeFiles(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "includeFiles")));
+      setExcludeFiles(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "excludeFiles")));
+      setIncludeSubfolders("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "includeSubfolders")));
+      setFileWorkers(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "fileWorkers")));
+      setMaxFilesInFlight(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "maxFilesInFlight")));
+      setPrefetchFiles(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "prefetchFiles")));
       setLimitRows(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "limitRows")));
       setDefaultCharset(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "defaultCharset")));
+      setConfidenceThreshold(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "confidenceThreshold")));
+      setMinSampleRows(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "minSampleRows")));
+      setStratifiedSampling("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "stratifiedSampling")));
+      setSampleWindowSize(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "sampleWindowSize")));
+      setSampleWindows(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "sampleWindows")));
+      setDiscoverDelimiters("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "discoverDelimiters")));
+      setParallelDetection("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "parallelDetection")));
+      setValueCacheSize(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "valueCacheSize")));
+      setParallelTypeEvaluation("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "parallelTypeEvaluation")));
+      setColumnStatistics("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "columnStatistics")));
+      setDistinctCount("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "distinctCount")));
+      setDistinctCountPrecision(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "distinctCountPrecision")));
+      setTopValues("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "topValues")));
+      setTopValuesCount(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "topValuesCount")));
+      setQuantiles("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "quantiles")));
+      setCacheResults("Y".equalsIgnoreCase(XMLHandler.getTagValue(stepnode, "cacheResults")));
+      setResultIndex(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "resultIndex")));
+      setResultIndexSize(XMLHandler.getNodeValue(XMLHandler.getSubNode(stepnode, "resultIndexSize")));
 
       int nrDelimiters = XMLHandler.countNodes(stepnode, "delimiterCandidate");
       delimiterCandidates.clear();
@@ -257,8 +398,36 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
   public void saveRep(Repository rep, ObjectId id_transformation, ObjectId id_step) throws KettleException {
     try {
       rep.saveStepAttribute(id_transformation, id_step, "fileName", fileName); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "fileNameInField", fileNameInField); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "fileNameField", fileNameField); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "scanDirectory", scanDirectory); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "directory", directory); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "includeFiles", includeFiles); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "excludeFiles", excludeFiles); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "includeSubfolders", includeSubfolders); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "fileWorkers", fileWorkers); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "maxFilesInFlight", maxFilesInFlight); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "prefetchFiles", prefetchFiles); //$NON-NLS-1$
       rep.saveStepAttribute(id_transformation, id_step, "limitRows", limitRows); //$NON-NLS-1$
       rep.saveStepAttribute(id_transformation, id_step, "defaultCharset", defaultCharset); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "confidenceThreshold", confidenceThreshold); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "minSampleRows", minSampleRows); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "stratifiedSampling", stratifiedSampling); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "sampleWindowSize", sampleWindowSize); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "sampleWindows", sampleWindows); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "discoverDelimiters", discoverDelimiters); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "parallelDetection", parallelDetection); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "valueCacheSize", valueCacheSize); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "parallelTypeEvaluation", parallelTypeEvaluation); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "columnStatistics", columnStatistics); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "distinctCount", distinctCount); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "distinctCountPrecision", distinctCountPrecision); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "topValues", topValues); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "topValuesCount", topValuesCount); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "quantiles", quantiles); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "cacheResults", cacheResults); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "resultIndex", resultIndex); //$NON-NLS-1$
+      rep.saveStepAttribute(id_transformation, id_step, "resultIndexSize", resultIndexSize); //$NON-NLS-1$
 
       for (int i = 0; i < delimiterCandidates.size(); i++) {
         rep.saveStepAttribute(id_transformation, id_step, i, "delimiter_candidate", delimiterCandidates.get(i));
@@ -285,8 +454,36 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
   public void readRep(Repository rep, ObjectId id_step, List<DatabaseMeta> databases, Map<String, Counter> counters) throws KettleException {
     try {
       fileName = rep.getStepAttributeString(id_step, "fileName"); //$NON-NLS-1$
+      fileNameInField = rep.getStepAttributeBoolean(id_step, "fileNameInField"); //$NON-NLS-1$
+      fileNameField = rep.getStepAttributeString(id_step, "fileNameField"); //$NON-NLS-1$
+      scanDirectory = rep.getStepAttributeBoolean(id_step, "scanDirectory"); //$NON-NLS-1$
+      directory = rep.getStepAttributeString(id_step, "directory"); //$NON-NLS-1$
+      includeFiles = rep.getStepAttributeString(id_step, "includeFiles"); //$NON-NLS-1$
+      excludeFiles = rep.getStepAttributeString(id_step, "excludeFiles"); //$NON-NLS-1$
+      includeSubfolders = rep.getStepAttributeBoolean(id_step, "includeSubfolders"); //$NON-NLS-1$
+      fileWorkers = rep.getStepAttributeString(id_step, "fileWorkers"); //$NON-NLS-1$
+      maxFilesInFlight = rep.getStepAttributeString(id_step, "maxFilesInFlight"); //$NON-NLS-1$
+      prefetchFiles = rep.getStepAttributeString(id_step, "prefetchFiles"); //$NON-NLS-1$
       limitRows = rep.getStepAttributeString(id_step, "limitRows"); //$NON-NLS-1$
       defaultCharset = rep.getStepAttributeString(id_step, "defaultCharset"); //$NON-NLS-1$
+      confidenceThreshold = rep.getStepAttributeString(id_step, "confidenceThreshold"); //$NON-NLS-1$
+      minSampleRows = rep.getStepAttributeString(id_step, "minSampleRows"); //$NON-NLS-1$
+      stratifiedSampling = rep.getStepAttributeBoolean(id_step, "stratifiedSampling"); //$NON-NLS-1$
+      sampleWindowSize = rep.getStepAttributeString(id_step, "sampleWindowSize"); //$NON-NLS-1$
+      sampleWindows = rep.getStepAttributeString(id_step, "sampleWindows"); //$NON-NLS-1$
+      discoverDelimiters = rep.getStepAttributeBoolean(id_step, "discoverDelimiters"); //$NON-NLS-1$
+      parallelDetection = rep.getStepAttributeBoolean(id_step, "parallelDetection"); //$NON-NLS-1$
+      valueCacheSize = rep.getStepAttributeString(id_step, "valueCacheSize"); //$NON-NLS-1$
+      parallelTypeEvaluation = rep.getStepAttributeBoolean(id_step, "parallelTypeEvaluation"); //$NON-NLS-1$
+      columnStatistics = rep.getStepAttributeBoolean(id_step, "columnStatistics"); //$NON-NLS-1$
+      distinctCount = rep.getStepAttributeBoolean(id_step, "distinctCount"); //$NON-NLS-1$
+      distinctCountPrecision = rep.getStepAttributeString(id_step, "distinctCountPrecision"); //$NON-NLS-1$
+      topValues = rep.getStepAttributeBoolean(id_step, "topValues"); //$NON-NLS-1$
+      topValuesCount = rep.getStepAttributeString(id_step, "topValuesCount"); //$NON-NLS-1$
+      quantiles = rep.getStepAttributeBoolean(id_step, "quantiles"); //$NON-NLS-1$
+      cacheResults = rep.getStepAttributeBoolean(id_step, "cacheResults"); //$NON-NLS-1$
+      resultIndex = rep.getStepAttributeString(id_step, "resultIndex"); //$NON-NLS-1$
+      resultIndexSize = rep.getStepAttributeString(id_step, "resultIndexSize"); //$NON-NLS-1$
 
       int nrDelimiterCandidates = rep.countNrStepAttributes(id_step, "delimiter_candidate");
       delimiterCandidates.clear();
@@ -319,6 +516,10 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
    */
   public void getFields(RowMetaInterface r, String origin, RowMetaInterface[] info, StepMeta nextStep, VariableSpace space) {
 
+    if (scanDirectory){
+      r.addValueMeta(new ValueMeta("file_name", ValueMetaInterface.TYPE_STRING));
+    }
+
     r.addValueMeta(new ValueMeta("charset", ValueMetaInterface.TYPE_STRING));
     r.addValueMeta(new ValueMeta("delimiter", ValueMetaInterface.TYPE_STRING));
     r.addValueMeta(new ValueMeta("enclosure", ValueMetaInterface.TYPE_STRING));
@@ -334,6 +535,29 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
     r.addValueMeta(new ValueMeta("decimal_symbol", ValueMetaInterface.TYPE_STRING));
     r.addValueMeta(new ValueMeta("grouping_symbol", ValueMetaInterface.TYPE_STRING));
 
+    if (columnStatistics){
+      r.addValueMeta(new ValueMeta("null_count", ValueMetaInterface.TYPE_INTEGER));
+      r.addValueMeta(new ValueMeta("empty_count", ValueMetaInterface.TYPE_INTEGER));
+      r.addValueMeta(new ValueMeta("min_value", ValueMetaInterface.TYPE_STRING));
+      r.addValueMeta(new ValueMeta("max_value", ValueMetaInterface.TYPE_STRING));
+      r.addValueMeta(new ValueMeta("avg_byte_length", ValueMetaInterface.TYPE_NUMBER));
+      r.addValueMeta(new ValueMeta("max_byte_length", ValueMetaInterface.TYPE_INTEGER));
+    }
+
+    if (distinctCount){
+      r.addValueMeta(new ValueMeta("distinct_count", ValueMetaInterface.TYPE_INTEGER));
+    }
+
+    if (topValues){
+      r.addValueMeta(new ValueMeta("top_values", ValueMetaInterface.TYPE_STRING));
+    }
+
+    if (quantiles){
+      r.addValueMeta(new ValueMeta("p1", ValueMetaInterface.TYPE_STRING));
+      r.addValueMeta(new ValueMeta("p50", ValueMetaInterface.TYPE_STRING));
+      r.addValueMeta(new ValueMeta("p99", ValueMetaInterface.TYPE_STRING));
+    }
+
   }
 
   public ArrayList<String> getDelimiterCandidates() {
@@ -368,6 +592,150 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
     this.defaultCharset = defaultCharset;
   }
 
+  public String getConfidenceThreshold() {
+    return confidenceThreshold;
+  }
+
+  public void setConfidenceThreshold(String confidenceThreshold) {
+    this.confidenceThreshold = confidenceThreshold;
+  }
+
+  public String getMinSampleRows() {
+    return minSampleRows;
+  }
+
+  public void setMinSampleRows(String minSampleRows) {
+    this.minSampleRows = minSampleRows;
+  }
+
+  public boolean isStratifiedSampling() {
+    return stratifiedSampling;
+  }
+
+  public void setStratifiedSampling(boolean stratifiedSampling) {
+    this.stratifiedSampling = stratifiedSampling;
+  }
+
+  public String getSampleWindowSize() {
+    return sampleWindowSize;
+  }
+
+  public void setSampleWindowSize(String sampleWindowSize) {
+    this.sampleWindowSize = sampleWindowSize;
+  }
+
+  public String getSampleWindows() {
+    return sampleWindows;
+  }
+
+  public void setSampleWindows(String sampleWindows) {
+    this.sampleWindows = sampleWindows;
+  }
+
+  public boolean isDiscoverDelimiters() {
+    return discoverDelimiters;
+  }
+
+  public void setDiscoverDelimiters(boolean discoverDelimiters) {
+    this.discoverDelimiters = discoverDelimiters;
+  }
+
+  public boolean isParallelDetection() {
+    return parallelDetection;
+  }
+
+  public void setParallelDetection(boolean parallelDetection) {
+    this.parallelDetection = parallelDetection;
+  }
+
+  public String getValueCacheSize() {
+    return valueCacheSize;
+  }
+
+  public void setValueCacheSize(String valueCacheSize) {
+    this.valueCacheSize = valueCacheSize;
+  }
+
+  public boolean isParallelTypeEvaluation() {
+    return parallelTypeEvaluation;
+  }
+
+  public void setParallelTypeEvaluation(boolean parallelTypeEvaluation) {
+    this.parallelTypeEvaluation = parallelTypeEvaluation;
+  }
+
+  public boolean isColumnStatistics() {
+    return columnStatistics;
+  }
+
+  public void setColumnStatistics(boolean columnStatistics) {
+    this.columnStatistics = columnStatistics;
+  }
+
+  public boolean isDistinctCount() {
+    return distinctCount;
+  }
+
+  public void setDistinctCount(boolean distinctCount) {
+    this.distinctCount = distinctCount;
+  }
+
+  public String getDistinctCountPrecision() {
+    return distinctCountPrecision;
+  }
+
+  public void setDistinctCountPrecision(String distinctCountPrecision) {
+    this.distinctCountPrecision = distinctCountPrecision;
+  }
+
+  public boolean isTopValues() {
+    return topValues;
+  }
+
+  public void setTopValues(boolean topValues) {
+    this.topValues = topValues;
+  }
+
+  public String getTopValuesCount() {
+    return topValuesCount;
+  }
+
+  public void setTopValuesCount(String topValuesCount) {
+    this.topValuesCount = topValuesCount;
+  }
+
+  public boolean isQuantiles() {
+    return quantiles;
+  }
+
+  public void setQuantiles(boolean quantiles) {
+    this.quantiles = quantiles;
+  }
+
+  public boolean isCacheResults() {
+    return cacheResults;
+  }
+
+  public void setCacheResults(boolean cacheResults) {
+    this.cacheResults = cacheResults;
+  }
+
+  public String getResultIndex() {
+    return resultIndex;
+  }
+
+  public void setResultIndex(String resultIndex) {
+    this.resultIndex = resultIndex;
+  }
+
+  public String getResultIndexSize() {
+    return resultIndexSize;
+  }
+
+  public void setResultIndexSize(String resultIndexSize) {
+    this.resultIndexSize = resultIndexSize;
+  }
+
   public String getFileName() {
     return fileName;
   }
@@ -376,4 +744,84 @@ public class FileMetadataMeta extends BaseStepMeta implements StepMetaInterface
     this.fileName = fileName;
   }
 
+  public boolean isFileNameInField() {
+    return fileNameInField;
+  }
+
+  public void setFileNameInField(boolean fileNameInField) {
+    this.fileNameInField = fileNameInField;
+  }
+
+  public String getFileNameField() {
+    return fileNameField;
+  }
+
+  public void setFileNameField(String fileNameField) {
+    this.fileNameField = fileNameField;
+  }
+
+  public boolean isScanDirectory() {
+    return scanDirectory;
+  }
+
+  public void setScanDirectory(boolean scanDirectory) {
+    this.scanDirectory = scanDirectory;
+  }
+
+  public String getDirectory() {
+    return directory;
+  }
+
+  public void setDirectory(String directory) {
+    this.directory = directory;
+  }
+
+  public String getIncludeFiles() {
+    return includeFiles;
+  }
+
+  public void setIncludeFiles(String includeFiles) {
+    this.includeFiles = includeFiles;
+  }
+
+  public String getExcludeFiles() {
+    return excludeFiles;
+  }
+
+  public void setExcludeFiles(String excludeFiles) {
+    this.excludeFiles = excludeFiles;
+  }
+
+  public boolean isIncludeSubfolders() {
+    return includeSubfolders;
+  }
+
+  public void setIncludeSubfolders(boolean includeSubfolders) {
+    this.includeSubfolders = includeSubfolders;
+  }
+
+  public String getFileWorkers() {
+    return fileWorkers;
+  }
+
+  public void setFileWorkers(String fileWorkers) {
+    this.fileWorkers = fileWorkers;
+  }
+
+  public String getMaxFilesInFlight() {
+    return maxFilesInFlight;
+  }
+
+  public void setMaxFilesInFlight(String maxFilesInFlight) {
+    this.maxFilesInFlight = maxFilesInFlight;
+  }
+
+  public String getPrefetchFiles() {
+    return prefetchFiles;
+  }
+
+  public void setPrefetchFiles(String prefetchFiles) {
+    this.prefetchFiles = prefetchFiles;
+  }
+
 }
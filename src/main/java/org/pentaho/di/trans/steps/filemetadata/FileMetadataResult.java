@@ -0,0 +1,209 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.filemetadata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The metadata of a file, as the values of the output fields: the file level values, followed by
+ * the values of each field of the file. A file that does not exist has neither.
+ *
+ * Results convert to bytes and back, for indexes that keep them beyond the JVM.
+ */
+public class FileMetadataResult {
+
+  // charset, delimiter, enclosure, field count, bad headers, bad footers, header line
+  static final int FILE_VALUES = 7;
+
+  // the types of values in the bytes of a result
+  private static final byte NULL = 0;
+  private static final byte STRING = 1;
+  private static final byte LONG = 2;
+  private static final byte DOUBLE = 3;
+  private static final byte BOOLEAN = 4;
+  private static final byte CHARSET = 5;
+
+  private final Object[] fileValues;
+  private final List<Object[]> fieldValues;
+
+  /**
+   * @param fileValues  the file level values, null if the file does not exist
+   * @param fieldValues the values of each field of the file
+   */
+  public FileMetadataResult(Object[] fileValues, List<Object[]> fieldValues) {
+    this.fileValues = fileValues;
+    this.fieldValues = fieldValues;
+  }
+
+  /**
+   * @return true if the file was found
+   */
+  public boolean isFound() {
+    return fileValues != null;
+  }
+
+  public Object[] getFileValues() {
+    return fileValues;
+  }
+
+  public List<Object[]> getFieldValues() {
+    return fieldValues;
+  }
+
+  /**
+   * @return the result as bytes, read back by fromBytes()
+   */
+  public byte[] toBytes() throws IOException {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+    DataOutputStream out = new DataOutputStream(bytes);
+
+    out.writeBoolean(isFound());
+    if (isFound()) {
+      writeValues(out, fileValues);
+    }
+    out.writeInt(fieldValues.size());
+    for (Object[] values : fieldValues) {
+      writeValues(out, values);
+    }
+
+    out.flush();
+    return bytes.toByteArray();
+
+  }
+
+  /**
+   * @return the result written by toBytes()
+   * @throws IOException if the bytes are not a result, or name a charset this JVM does not support
+   */
+  public static FileMetadataResult fromBytes(byte[] bytes) throws IOException {
+
+    DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+    try {
+      Object[] fileValues = in.readBoolean() ? readValues(in) : null;
+      int fields = readLength(in);
+      List<Object[]> fieldValues = new ArrayList<>(fields);
+      for (int i = 0; i < fields; i++) {
+        fieldValues.add(readValues(in));
+      }
+      return new FileMetadataResult(fileValues, fieldValues);
+    } catch (IllegalArgumentException e) {
+      // unknown or illegal charset names
+      throw new IOException("Invalid file metadata: " + e.getMessage(), e);
+    }
+
+  }
+
+  private static void writeValues(DataOutputStream out, Object[] values) throws IOException {
+
+    out.writeInt(values.length);
+    for (Object value : values) {
+      if (value == null) {
+        out.writeByte(NULL);
+      }
+      else if (value instanceof Long) {
+        out.writeByte(LONG);
+        out.writeLong((Long) value);
+      }
+      else if (value instanceof Double) {
+        out.writeByte(DOUBLE);
+        out.writeDouble((Double) value);
+      }
+      else if (value instanceof Boolean) {
+        out.writeByte(BOOLEAN);
+        out.writeBoolean((Boolean) value);
+      }
+      else if (value instanceof Charset) {
+        out.writeByte(CHARSET);
+        writeString(out, ((Charset) value).name());
+      }
+      else {
+        out.writeByte(STRING);
+        writeString(out, value.toString());
+      }
+    }
+
+  }
+
+  private static Object[] readValues(DataInputStream in) throws IOException {
+
+    Object[] values = new Object[readLength(in)];
+    for (int i = 0; i < values.length; i++) {
+      byte type = in.readByte();
+      switch (type) {
+        case NULL:
+          break;
+        case LONG:
+          values[i] = in.readLong();
+          break;
+        case DOUBLE:
+          values[i] = in.readDouble();
+          break;
+        case BOOLEAN:
+          values[i] = in.readBoolean();
+          break;
+        case CHARSET:
+          values[i] = Charset.forName(readString(in));
+          break;
+        case STRING:
+          values[i] = readString(in);
+          break;
+        default:
+          throw new IOException("Unknown value type in file metadata: " + type);
+      }
+    }
+    return values;
+
+  }
+
+  // strings may exceed the 64k of writeUTF, top values in particular
+  private static void writeString(DataOutputStream out, String value) throws IOException {
+    byte[] bytes = value.getBytes("UTF-8");
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static String readString(DataInputStream in) throws IOException {
+    byte[] bytes = new byte[readLength(in)];
+    in.readFully(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  // a count or length, which cannot be larger than the bytes left, as each item takes at least one
+  private static int readLength(DataInputStream in) throws IOException {
+    int length = in.readInt();
+    if (length < 0 || length > in.available()) {
+      throw new IOException("Invalid length in file metadata: " + length);
+    }
+    return length;
+  }
+
+}
@@ -0,0 +1,890 @@
+/*******************************************************************************
+ *
+ * Pentaho Data Integration
+ *
+ * Copyright (C) 2002-2012 by Pentaho : http://www.pentaho.com
+ *
+ *******************************************************************************
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ ******************************************************************************/
+
+package org.pentaho.di.trans.steps.filemetadata;
+
+import org.apache.commons.vfs2.FileContent;
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.util.RandomAccessMode;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.exception.KettleFileException;
+import org.pentaho.di.core.exception.KettleStepException;
+import org.pentaho.di.core.exception.KettleValueException;
+import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.VariableSpace;
+import org.pentaho.di.core.vfs.KettleVFS;
+import org.pentaho.di.trans.steps.filemetadata.util.cache.LruCache;
+import org.pentaho.di.trans.steps.filemetadata.util.cache.PersistentIndex;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDetector;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDetectorBuilder;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDiscovery;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.FooterProbe;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.RecordTokenizer;
+import org.pentaho.di.trans.steps.filemetadata.util.encoding.EncodingDetector;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.BufferPool;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.ContentFingerprint;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.FileChannelSource;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.RandomAccessSource;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.SampleBuffer;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.StratifiedSampler;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.VfsRandomAccessSource;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.HyperLogLog;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.QuantileSketch;
+import org.pentaho.di.trans.steps.filemetadata.util.types.ColumnStatistics;
+import org.pentaho.di.trans.steps.filemetadata.util.types.TypeCandidates;
+import org.pentaho.di.trans.steps.filemetadata.util.types.TypeEvaluation;
+import org.pentaho.di.trans.steps.filemetadata.util.types.TypeEvaluator;
+
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Finds the metadata of a single file: its charset, delimiters, header and footer lines, and the
+ * types of its fields. The configuration is resolved against the step's variables when the scan is
+ * created, so the scan itself may run on any thread.
+ *
+ * A scan may be split in two stages on different threads: prefetch() does the I/O up front, looking
+ * up earlier results and reading the sample, and call() then runs detection on the bytes in memory.
+ */
+public class FileMetadataScan implements Callable<FileMetadataResult> {
+
+  // upper bound for the bytes kept in memory while scanning a file
+  private static final int MAX_SAMPLE_SIZE = 64 * 1024 * 1024;
+
+  // bytes read from the end of a file to find footer lines the scan did not reach
+  private static final int FOOTER_PROBE_SIZE = 64 * 1024;
+  private static final long MAX_FOOTER_LINES = 10;
+  // lines the type pass reads at least, before it stops on columns that can only be strings
+  private static final long MIN_TYPE_SAMPLE_LINES = 1000;
+  // distinct value shapes remembered per column in the type pass
+  private static final int MAX_VALUE_SHAPES = 512;
+  // records handed to the workers at once, and the least columns worth a worker of their own
+  private static final int TYPE_BATCH_SIZE = 1024;
+  private static final int MIN_COLUMNS_PER_TYPE_WORKER = 4;
+  private static final int DEFAULT_DISTINCT_COUNT_PRECISION = 12;
+  private static final int DEFAULT_TOP_VALUES = 10;
+  private static final int TOP_VALUE_COUNTERS_PER_VALUE = 10;
+  private static final int MIN_TOP_VALUE_COUNTERS = 64;
+  private static final double[] QUANTILES = {0.01, 0.5, 0.99};
+
+  // the results of files scanned before, shared by all steps in the JVM
+  public static final String RESULT_CACHE_SIZE_PROPERTY = "KETTLE_FILE_METADATA_CACHE_SIZE";
+  private static final int DEFAULT_RESULT_CACHE_SIZE = 10000;
+  private static final LruCache<String, FileMetadataResult> RESULT_CACHE =
+      new LruCache<>(Math.max(1, Const.toInt(System.getProperty(RESULT_CACHE_SIZE_PROPERTY), DEFAULT_RESULT_CACHE_SIZE)));
+
+  // files kept in a result index, and the bytes at head and tail telling changed files apart
+  private static final int DEFAULT_RESULT_INDEX_SIZE = 100000;
+  private static final int FINGERPRINT_EDGE_SIZE = 16 * 1024;
+
+  private final FileMetadataMeta meta;
+  private final LogChannelInterface log;
+  private final String fileName;
+  // the threads detecting delimiters and evaluating types in parallel, shared by the step's scans
+  private final ForkJoinPool pool;
+
+  private long limitRows;
+  private double confidenceThreshold;
+  private final long minSampleRows;
+  private final Charset defaultCharset;
+  private final ArrayList<String> delimiterCandidates;
+  private final ArrayList<String> enclosureCandidates;
+  private final int sampleWindowSize;
+  private final int sampleWindows;
+  private final int valueCacheSize;
+  private final int distinctCountPrecision;
+  private final int topValuesCount;
+  // the resolved settings that change the result
+  private final String settings;
+  private final String resultIndex;
+  private final int resultIndexSize;
+
+  private DelimiterDetector.DetectionResult delimiters;
+
+  // the state prefetch() hands on to call()
+  private boolean prefetched = false;
+  private FileMetadataResult known;
+  private String cacheKey;
+  private String indexKey;
+  private PersistentIndex index;
+  private SampleBuffer sample;
+  private Charset charset;
+  // a stratified sample, and where its tail window starts, -1 if it has none
+  private boolean stratified = false;
+  private byte[] stratifiedBytes;
+  private int tailOffset = -1;
+  private BufferPool buffers;
+  private byte[] buffer;
+
+  /**
+   * @param meta     the step settings
+   * @param space    the variables the settings are resolved against
+   * @param log      the channel to log to
+   * @param fileName the resolved name of the file to scan
+   */
+  public FileMetadataScan(FileMetadataMeta meta, VariableSpace space, LogChannelInterface log, String fileName) {
+    this(meta, space, log, fileName, null);
+  }
+
+  /**
+   * @param pool the pool to detect and evaluate in parallel on, null for pools of the scan's own
+   */
+  public FileMetadataScan(FileMetadataMeta meta, VariableSpace space, LogChannelInterface log, String fileName, ForkJoinPool pool) {
+
+    this.meta = meta;
+    this.log = log;
+    this.fileName = fileName;
+    this.pool = pool;
+
+    String strLimitRows = space.environmentSubstitute(meta.getLimitRows());
+    if (strLimitRows.trim().isEmpty()){
+      limitRows = 0;
+    }
+    else{
+      limitRows = Long.parseLong(strLimitRows);
+    }
+
+    String strConfidenceThreshold = space.environmentSubstitute(Const.NVL(meta.getConfidenceThreshold(), ""));
+    if (strConfidenceThreshold.trim().isEmpty()){
+      confidenceThreshold = 0;
+    }
+    else{
+      confidenceThreshold = Double.parseDouble(strConfidenceThreshold);
+    }
+
+    String strMinSampleRows = space.environmentSubstitute(Const.NVL(meta.getMinSampleRows(), ""));
+    if (strMinSampleRows.trim().isEmpty()){
+      minSampleRows = 0;
+    }
+    else{
+      minSampleRows = Long.parseLong(strMinSampleRows.trim());
+    }
+
+    defaultCharset = Charset.forName(space.environmentSubstitute(meta.getDefaultCharset()));
+
+    delimiterCandidates = new ArrayList<>(4);
+    for (String candidate : meta.getDelimiterCandidates()) {
+      candidate = space.environmentSubstitute(candidate);
+      if (candidate.length() == 0){
+        log.logBasic("Warning: file metadata step ignores empty delimiter candidate");
+      }
+      else{
+        delimiterCandidates.add(candidate);
+      }
+    }
+
+    enclosureCandidates = new ArrayList<>(4);
+    for (String candidate : meta.getEnclosureCandidates()) {
+      candidate = space.environmentSubstitute(candidate);
+      if (candidate.length() == 0){
+        log.logBasic("Warning: file metadata step ignores empty enclosure candidate");
+      }
+      else{
+        enclosureCandidates.add(candidate);
+      }
+    }
+
+    sampleWindowSize = Const.toInt(space.environmentSubstitute(meta.getSampleWindowSize()), 64) * 1024;
+    sampleWindows = Const.toInt(space.environmentSubstitute(meta.getSampleWindows()), 8);
+    valueCacheSize = Const.toInt(space.environmentSubstitute(Const.NVL(meta.getValueCacheSize(), "")), 0);
+
+    if (meta.isDistinctCount()){
+      int precision = Const.toInt(space.environmentSubstitute(Const.NVL(meta.getDistinctCountPrecision(), "")), DEFAULT_DISTINCT_COUNT_PRECISION);
+      distinctCountPrecision = Math.max(HyperLogLog.MIN_PRECISION, Math.min(HyperLogLog.MAX_PRECISION, precision));
+    }
+    else{
+      distinctCountPrecision = 0;
+    }
+
+    topValuesCount = Math.max(1, Const.toInt(space.environmentSubstitute(Const.NVL(meta.getTopValuesCount(), "")), DEFAULT_TOP_VALUES));
+
+    resultIndex = space.environmentSubstitute(Const.NVL(meta.getResultIndex(), "")).trim();
+    resultIndexSize = Math.max(1, Const.toInt(space.environmentSubstitute(Const.NVL(meta.getResultIndexSize(), "")), DEFAULT_RESULT_INDEX_SIZE));
+
+    settings = new StringBuilder()
+        .append(delimiterCandidates).append(enclosureCandidates)
+        .append('|').append(limitRows).append('|').append(confidenceThreshold).append('|').append(minSampleRows)
+        .append('|').append(defaultCharset.name()).append('|').append(Locale.getDefault())
+        .append('|').append(meta.isStratifiedSampling()).append('|').append(sampleWindowSize).append('|').append(sampleWindows)
+        .append('|').append(meta.isDiscoverDelimiters()).append('|').append(meta.isParallelDetection())
+        .append('|').append(meta.isColumnStatistics()).append('|').append(distinctCountPrecision)
+        .append('|').append(meta.isTopValues()).append('|').append(topValuesCount).append('|').append(meta.isQuantiles())
+        .toString();
+
+  }
+
+  /**
+   * @return the results of files scanned before, shared by all steps in the JVM
+   */
+  public static LruCache<String, FileMetadataResult> getResultCache() {
+    return RESULT_CACHE;
+  }
+
+  /**
+   * @return the name of the file scanned
+   */
+  public String getFileName() {
+    return fileName;
+  }
+
+  /**
+   * Does the I/O of the scan: looks up results of earlier scans and, if there are none, reads the
+   * sample up to length bytes. Detection is left to call().
+   *
+   * @param pool   the pool of the buffer to read the head of the file into, null for none
+   * @param length the bytes to read right away
+   */
+  public void prefetch(BufferPool pool, int length) throws KettleStepException {
+
+    prefetched = true;
+
+    // if the file does not exist, there is nothing to find
+    try {
+      if (fileName == null || !KettleVFS.fileExists(fileName)){
+        known = new FileMetadataResult(null, new ArrayList<Object[]>(0));
+        return;
+      }
+    } catch (KettleFileException e) {
+      throw new KettleStepException(e.getMessage(), e);
+    }
+
+    // files that did not change since they were scanned with the same settings are not scanned again
+    cacheKey = meta.isCacheResults() ? getCacheKey() : null;
+    if (cacheKey != null){
+      FileMetadataResult cached = RESULT_CACHE.get(cacheKey);
+      if (cached != null){
+        log.logDetailed("Using cached metadata of "+fileName);
+        known = cached;
+        return;
+      }
+    }
+
+    // files profiled by earlier runs are found in the result index
+    index = openResultIndex();
+    indexKey = (index != null) ? getIndexKey() : null;
+    if (indexKey != null){
+      FileMetadataResult indexed = readResultIndex(index, indexKey);
+      if (indexed != null){
+        log.logDetailed("Using indexed metadata of "+fileName);
+        if (cacheKey != null){
+          RESULT_CACHE.put(cacheKey, indexed);
+        }
+        known = indexed;
+        return;
+      }
+    }
+
+    readSample(pool, length);
+
+  }
+
+  /**
+   * Scans the file, doing the I/O first unless prefetch() did.
+   *
+   * @return the metadata found, an empty result if the file does not exist
+   */
+  @Override
+  public FileMetadataResult call() throws KettleStepException {
+
+    if (!prefetched){
+      prefetch(null, 0);
+    }
+    if (known != null){
+      return known;
+    }
+
+    FileMetadataResult result;
+    try {
+      if (charset == null){
+        charset = detectCharset(sample);
+      }
+      result = scanSample(sample, charset);
+    } finally {
+      closeSample();
+    }
+
+    if (cacheKey != null){
+      RESULT_CACHE.put(cacheKey, result);
+    }
+    if (indexKey != null){
+      writeResultIndex(index, indexKey, result);
+    }
+    return result;
+
+  }
+
+  private PersistentIndex openResultIndex() {
+    if (resultIndex.isEmpty()){
+      return null;
+    }
+    try {
+      return PersistentIndex.open(new File(resultIndex), resultIndexSize);
+    } catch (IOException e) {
+      log.logError("Could not open result index "+resultIndex, e);
+      return null;
+    }
+  }
+
+  private FileMetadataResult readResultIndex(PersistentIndex index, String indexKey) {
+    try {
+      byte[] bytes = index.get(indexKey);
+      return (bytes != null) ? FileMetadataResult.fromBytes(bytes) : null;
+    } catch (IOException e) {
+      log.logError("Could not read result index "+resultIndex, e);
+      return null;
+    }
+  }
+
+  private void writeResultIndex(PersistentIndex index, String indexKey, FileMetadataResult result) {
+    try {
+      index.put(indexKey, result.toBytes());
+    } catch (IOException e) {
+      log.logError("Could not write result index "+resultIndex, e);
+    }
+  }
+
+  // the identity, length and content fingerprint of the file and the settings, null if they cannot be read
+  private String getIndexKey() {
+
+    try {
+      FileObject file = KettleVFS.getFileObject(fileName);
+      long length = file.getContent().getSize();
+      String fingerprint;
+      try (RandomAccessSource source = openRandomAccess()){
+        if (source != null){
+          fingerprint = ContentFingerprint.of(source, FINGERPRINT_EDGE_SIZE);
+        }
+        else{
+          try (InputStream in = KettleVFS.getInputStream(fileName)){
+            fingerprint = ContentFingerprint.of(in, length, FINGERPRINT_EDGE_SIZE);
+          }
+        }
+      }
+      return file.getName().getURI()+"\n"+length+"\n"+fingerprint+"\n"+settings;
+    } catch (KettleFileException | IOException e) {
+      log.logDetailed("Could not fingerprint "+fileName+", not indexing its metadata");
+      return null;
+    }
+
+  }
+
+  // the identity of the file and the settings, null if the file's size or modification time are unknown
+  private String getCacheKey() {
+
+    try {
+      FileObject file = KettleVFS.getFileObject(fileName);
+      FileContent content = file.getContent();
+      return file.getName().getURI()+"\n"+content.getSize()+"\n"+content.getLastModifiedTime()+"\n"+settings;
+    } catch (KettleFileException | FileSystemException e) {
+      log.logDetailed("Could not determine size and modification time of "+fileName+", not caching its metadata");
+      return null;
+    }
+
+  }
+
+  private void readSample(BufferPool pool, int length) throws KettleStepException {
+
+    // all detection stages replay the same sample, so the file is read only once
+
+    if (meta.isStratifiedSampling()){
+      sample = stratifiedSample();
+      if (sample != null){
+        charset = detectCharset(sample);
+        if (EncodingDetector.isAsciiCompatible(charset)){
+          // the sample is spread across the file already, so it is scanned in full
+          stratified = true;
+          limitRows = 0;
+          confidenceThreshold = 0;
+          return;
+        }
+        // windows cannot be aligned to line breaks reliably, read from the head instead
+        log.logDetailed("Stratified sampling is not supported for charset "+charset+", reading from the head of "+fileName);
+        sample = null;
+        charset = null;
+        stratifiedBytes = null;
+        tailOffset = -1;
+      }
+    }
+
+    SampleBuffer.Source source = new SampleBuffer.Source() {
+      @Override
+      public InputStream open() throws IOException {
+        try {
+          return KettleVFS.getInputStream(fileName);
+        } catch (KettleFileException e) {
+          throw new IOException(e.getMessage(), e);
+        }
+      }
+    };
+    if (pool != null){
+      buffers = pool;
+      buffer = pool.acquire();
+      sample = new SampleBuffer(source, MAX_SAMPLE_SIZE, buffer);
+    }
+    else{
+      sample = new SampleBuffer(source, MAX_SAMPLE_SIZE);
+    }
+
+    try {
+      sample.prefetch(length);
+    } catch (IOException e) {
+      closeSample();
+      log.logError("IO Error while reading file: "+fileName);
+      throw new KettleStepException(e.getMessage(), e);
+    }
+
+  }
+
+  // the buffer goes back to the pool only once nothing reads the sample anymore
+  private void closeSample() {
+    try {
+      sample.close();
+    } catch (IOException e) {
+      log.logError("Error closing file: " + fileName, e);
+    }
+    sample = null;
+    if (buffers != null){
+      buffers.release(buffer);
+      buffer = null;
+    }
+  }
+
+  private SampleBuffer stratifiedSample() throws KettleStepException {
+
+    try (RandomAccessSource source = openRandomAccess()){
+      if (source == null){
+        return null;
+      }
+      StratifiedSampler sampler = new StratifiedSampler(source, sampleWindowSize, sampleWindows);
+      stratifiedBytes = sampler.sample();
+      tailOffset = sampler.getTailOffset();
+      return new SampleBuffer(stratifiedBytes);
+    } catch (IOException e) {
+      log.logError("IO Error while sampling file: "+fileName);
+      throw new KettleStepException(e.getMessage(), e);
+    }
+
+  }
+
+  private RandomAccessSource openRandomAccess() throws IOException {
+
+    FileObject file;
+    try {
+      file = KettleVFS.getFileObject(fileName);
+    } catch (KettleFileException e) {
+      throw new IOException(e.getMessage(), e);
+    }
+
+    // local files are read through a positional channel
+    if ("file".equals(file.getName().getScheme())){
+      try {
+        return new FileChannelSource(Paths.get(file.getURL().toURI()));
+      } catch (URISyntaxException | IllegalArgumentException e) {
+        log.logDetailed("Could not map "+fileName+" to a local path, using VFS random access instead");
+      }
+    }
+
+    try {
+      return new VfsRandomAccessSource(file.getContent().getRandomAccessContent(RandomAccessMode.READ));
+    } catch (FileSystemException e) {
+      log.logDetailed("Random access is not supported for "+fileName+", reading from the head instead");
+      return null;
+    }
+
+  }
+
+  private FileMetadataResult scanSample(SampleBuffer sample, Charset detectedCharset) throws KettleStepException {
+
+    Object[] fileValues = new Object[FileMetadataResult.FILE_VALUES];
+    int idx = 0;
+
+    // guess the charset
+    fileValues[idx++] = detectedCharset;
+
+    // look for further candidates in the file
+    ArrayList<String> delimiterCandidates = this.delimiterCandidates;
+    if (meta.isDiscoverDelimiters()){
+      delimiterCandidates = discoverDelimiters(sample, detectedCharset, delimiterCandidates);
+    }
+
+    // guess the delimiters
+    delimiters = detectDelimiters(sample, detectedCharset, delimiterCandidates);
+
+    if (delimiters == null) {
+      throw new KettleStepException("Could not determine a consistent format for file "+fileName);
+    }
+
+    // delimiter
+    fileValues[idx++] = delimiters.getDelimiterString();
+    // enclosure
+    fileValues[idx++] = delimiters.hasEnclosure() ? delimiters.getEnclosureString() : "";
+    // field count = delimiter frequency on data lines +1
+    fileValues[idx++] = delimiters.getDataLineFrequency() +1L;
+    // bad headers
+    fileValues[idx++] = delimiters.getBadHeaderLines();
+    // bad footers, probed at the end of the file if the scan did not get there
+    long badFooters = delimiters.getBadFooterLines();
+    if (tailOffset >= 0){
+      // the tail window of a stratified sample is the end of the file
+      long tailFooters = probeTailWindow(detectedCharset);
+      if (tailFooters >= 0){
+        badFooters = tailFooters;
+      }
+    }
+    else if (!delimiters.isEndOfInput()){
+      long probedFooters = probeFooters(detectedCharset);
+      if (probedFooters >= 0){
+        badFooters = probedFooters;
+      }
+    }
+    fileValues[idx++] = badFooters;
+
+    long dataLines = delimiters.getDataLines();
+    // footer lines that could be read as data, held back until the type pass knows it did not reach them
+    int footerLines = 0;
+    if (delimiters.isStoppedEarly()){
+      // the format was clear early, but the types still get all rows up to the limit
+      dataLines = (limitRows > 0) ? Math.max(dataLines, limitRows - delimiters.getBadHeaderLines()) : Long.MAX_VALUE;
+      footerLines = (int) Math.min(badFooters, MAX_FOOTER_LINES);
+    }
+
+    try(Reader inputReader = new InputStreamReader(sample.newInputStream(), detectedCharset)){
+
+      // fields are handed to the type evaluation as ranges of the tokenizer's buffer
+      RecordTokenizer tokenizer = new RecordTokenizer(inputReader, delimiters.getDelimiterString(), delimiters.getEnclosureString(),
+        delimiters.getBadHeaderLines());
+
+      String[] firstLine = tokenizer.next() ? tokenizer.getFields() : new String[0];
+      dataLines--;
+
+      TypeCandidates candidates = new TypeCandidates(Locale.getDefault(), Const.getDateFormats());
+
+      // wide files may evaluate slices of their columns on all cores
+      int typeWorkers = 1;
+      if (meta.isParallelTypeEvaluation()){
+        typeWorkers = Math.min(getParallelism(), firstLine.length / MIN_COLUMNS_PER_TYPE_WORKER);
+      }
+
+      TypeEvaluator[] evaluators;
+      ColumnStatistics[] statistics;
+      try(TypeEvaluation evaluation = new TypeEvaluation(candidates, firstLine.length, typeWorkers, MAX_VALUE_SHAPES, valueCacheSize, TYPE_BATCH_SIZE, pool)){
+
+        if (meta.isColumnStatistics() || meta.isDistinctCount() || meta.isTopValues() || meta.isQuantiles()){
+          int quantileK = meta.isQuantiles() ? QuantileSketch.DEFAULT_K : 0;
+          evaluation.collectStatistics(detectedCharset, distinctCountPrecision, getTopValueCapacity(), quantileK);
+        }
+
+        long typeSampleLines = 0;
+        ArrayDeque<String[]> heldBack = new ArrayDeque<>(footerLines + 1);
+        boolean endOfInput = false;
+        while(dataLines > 0){
+          // once every column is a string, more lines would only change lengths, unless statistics are wanted
+          if (typeSampleLines >= MIN_TYPE_SAMPLE_LINES && evaluation.getStatistics() == null && evaluation.isSaturated()){
+            break;
+          }
+          dataLines--;
+          typeSampleLines++;
+          if (!tokenizer.next()){
+            endOfInput = true;
+            break;
+          }
+          if (footerLines > 0){
+            heldBack.add(tokenizer.getFields());
+            if (heldBack.size() > footerLines){
+              evaluation.evaluate(heldBack.poll());
+            }
+          }
+          else{
+            evaluation.evaluate(tokenizer.getChars(), tokenizer.getStarts(), tokenizer.getEnds(), tokenizer.getFieldCount());
+          }
+        }
+        // the lines held back are the footers only if the pass reached the end of the file
+        if (!endOfInput){
+          for (String[] record : heldBack){
+            evaluation.evaluate(record);
+          }
+        }
+
+        evaluation.flush();
+        evaluators = evaluation.getEvaluators();
+        statistics = evaluation.getStatistics();
+      }
+
+      logCacheHits(evaluators);
+
+      // find evaluation results, excluding and including the first line
+      ValueMetaInterface[] fields = new ValueMetaInterface[evaluators.length];
+      ValueMetaInterface[] firstLineFields = new ValueMetaInterface[evaluators.length];
+
+      for(int i=0;i<evaluators.length;i++) {
+        fields[i] = evaluators[i].getAdvice();
+        evaluators[i].evaluate(firstLine[i]);
+        firstLineFields[i] = evaluators[i].getAdvice();
+      }
+
+      // check whether to use the first line as a header, if there is a single type mismatch -> yes
+      // if all fields are strings -> yes
+      boolean hasHeader = false;
+      boolean allStrings = true;
+      for(int i=0;i<evaluators.length;i++) {
+
+        if (fields[i].getType() != ValueMetaInterface.TYPE_STRING){
+          allStrings = false;
+        }
+
+        if (fields[i].getType() != firstLineFields[i].getType()){
+          hasHeader = true;
+          break;
+        }
+      }
+
+      hasHeader = hasHeader || allStrings;
+
+      if (hasHeader){
+        for(int i=0;i<evaluators.length;i++) {
+          fields[i].setName(firstLine[i].trim());
+        }
+      }
+      else{
+        // use the meta from the entire column
+        fields = firstLineFields;
+        int colNum = 1;
+        for(int i=0;i<evaluators.length;i++) {
+          fields[i].setName("field_"+(colNum++));
+        }
+      }
+
+      fileValues[idx++] = hasHeader;
+
+      // a first line that is no header counts as data
+      if (statistics != null && !hasHeader){
+        for(int i=0;i<statistics.length;i++){
+          statistics[i].add(firstLine[i]);
+        }
+      }
+
+      ArrayList<Object[]> fieldValues = new ArrayList<>(evaluators.length);
+      for(int i=0;i<evaluators.length;i++) {
+
+        ArrayList<Object> values = new ArrayList<>();
+        values.add(fields[i].getName());
+        values.add(fields[i].getTypeDesc());
+        values.add((fields[i].getLength() >= 0) ? (long) fields[i].getLength() : null);
+        values.add((fields[i].getPrecision() >= 0) ? (long) fields[i].getPrecision() : null);
+        values.add(fields[i].getConversionMask());
+        values.add(fields[i].getDecimalSymbol());
+        values.add(fields[i].getGroupingSymbol());
+
+        if (meta.isColumnStatistics()){
+          values.add(statistics[i].getNullCount());
+          values.add(statistics[i].getEmptyCount());
+          values.add(statistics[i].getMin(fields[i]));
+          values.add(statistics[i].getMax(fields[i]));
+          values.add((statistics[i].getCount() > 0) ? statistics[i].getAverageByteLength() : null);
+          values.add((statistics[i].getCount() > 0) ? (long) statistics[i].getMaxByteLength() : null);
+        }
+
+        if (meta.isDistinctCount()){
+          values.add(statistics[i].getDistinctCount());
+        }
+
+        if (meta.isTopValues()){
+          values.add(statistics[i].getTopValues(topValuesCount));
+        }
+
+        if (meta.isQuantiles()){
+          for (double fraction : QUANTILES){
+            values.add(formatQuantile(fields[i], statistics[i].getQuantile(fields[i], fraction)));
+          }
+        }
+
+        fieldValues.add(values.toArray());
+
+      }
+
+      return new FileMetadataResult(fileValues, fieldValues);
+
+    } catch (IOException e) {
+      log.logError("IO Error while reading file: "+fileName+". Invalid charset?");
+      throw new KettleStepException(e.getMessage(), e);
+
+    } catch (ArrayIndexOutOfBoundsException e){
+      log.logError("Error determining field types for: "+fileName+". Inconsistent delimiters?");
+      throw new KettleStepException(e.getMessage(), e);
+    }
+
+  }
+
+  // more counters than values reported keep the counts of the reported ones close
+  private int getParallelism() {
+    return (pool != null) ? pool.getParallelism() : Runtime.getRuntime().availableProcessors();
+  }
+
+  private int getTopValueCapacity() {
+    if (!meta.isTopValues()){
+      return 0;
+    }
+    return Math.max(MIN_TOP_VALUE_COUNTERS, topValuesCount * TOP_VALUE_COUNTERS_PER_VALUE);
+  }
+
+  // quantiles are written the way the field is read
+  private String formatQuantile(ValueMetaInterface field, Object value) {
+    if (value == null){
+      return null;
+    }
+    try {
+      return field.getString(value);
+    } catch (KettleValueException e) {
+      log.logDetailed("Could not format quantile of field "+field.getName()+": "+e.getMessage());
+      return value.toString();
+    }
+  }
+
+  private void logCacheHits(TypeEvaluator[] evaluators) {
+    long lookups = 0;
+    long hits = 0;
+    for(int i=0;i<evaluators.length;i++){
+      lookups += evaluators[i].getCacheLookups();
+      hits += evaluators[i].getCacheHits();
+      if (log.isDebug() && evaluators[i].getCacheLookups() > 0){
+        log.logDebug("Value cache of column "+(i+1)+": "+evaluators[i].getCacheHits()+" of "+evaluators[i].getCacheLookups()+" values cached");
+      }
+    }
+    if (lookups > 0){
+      log.logDetailed("Value cache hit rate for "+fileName+": "+(100 * hits / lookups)+"% of "+lookups+" values");
+    }
+  }
+
+  private long probeTailWindow(Charset charset) {
+
+    try {
+      long footers = new FooterProbe(delimiters, charset, MAX_FOOTER_LINES).probe(stratifiedBytes, tailOffset, stratifiedBytes.length - tailOffset);
+      if (footers < 0){
+        log.logDetailed("Could not determine footer lines from the tail window of "+fileName);
+      }
+      return footers;
+    } catch (IOException e) {
+      log.logError("Error probing footer lines of file: "+fileName, e);
+      return -1;
+    }
+
+  }
+
+  private long probeFooters(Charset charset) {
+
+    try (RandomAccessSource source = openRandomAccess()){
+      if (source == null){
+        return -1;
+      }
+      long footers = new FooterProbe(delimiters, charset, MAX_FOOTER_LINES).probe(source, FOOTER_PROBE_SIZE);
+      if (footers < 0){
+        log.logDetailed("Could not determine footer lines from the end of "+fileName);
+      }
+      return footers;
+    } catch (IOException e) {
+      log.logError("Error probing footer lines of file: "+fileName, e);
+      return -1;
+    }
+
+  }
+
+  private Charset detectCharset(SampleBuffer sample) {
+    try (InputStream stream = sample.newInputStream()) {
+      return EncodingDetector.detectEncoding(stream, defaultCharset, limitRows*500); // estimate a row is ~500 chars
+    } catch (FileNotFoundException e) {
+      throw new RuntimeException("File not found: " + fileName, e);
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+  }
+
+  private ArrayList<String> discoverDelimiters(SampleBuffer sample, Charset charset, ArrayList<String> delimiterCandidates){
+
+    try(InputStream f = sample.newInputStream()){
+      ArrayList<String> candidates = new DelimiterDiscovery(charset, limitRows).discover(f, delimiterCandidates, enclosureCandidates);
+      log.logDetailed("Delimiter candidates for "+fileName+": "+candidates);
+      return candidates;
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+
+  }
+
+  private DelimiterDetector.DetectionResult detectDelimiters(SampleBuffer sample, Charset charset, ArrayList<String> delimiterCandidates){
+
+    // full scans can be split up among all cores, which needs random access and rules out stopping early;
+    // smaller files would be scanned sequentially from the file again, so they are detected from the sample,
+    // as are stratified samples, which cover the file already
+    if (meta.isParallelDetection() && limitRows <= 0 && !stratified){
+      try (RandomAccessSource source = openRandomAccess()){
+        if (source != null && source.length() >= 2 * DelimiterDetector.DEFAULT_CHUNK_SIZE){
+          return detectDelimiters(newDetector(delimiterCandidates)
+                                      .withInput(source, charset)
+                                      .withConfidenceThreshold(0, 0)
+                                      .withParallelism(getParallelism())
+                                      .withPool(pool)
+                                      .build());
+        }
+      } catch (IOException e) {
+        throw new RuntimeException(e.getMessage(), e);
+      }
+    }
+
+    // guess the delimiters
+
+    try(InputStream f = sample.newInputStream()){
+      return detectDelimiters(newDetector(delimiterCandidates)
+                                  .withInput(f, charset)
+                                  .build());
+    } catch (IOException e) {
+      throw new RuntimeException(e.getMessage(), e);
+    }
+
+  }
+
+  private DelimiterDetectorBuilder newDetector(ArrayList<String> delimiterCandidates){
+    return new DelimiterDetectorBuilder()
+               .withDelimiterStrings(delimiterCandidates)
+               .withEnclosureStrings(enclosureCandidates)
+               .withLogger(log)
+               .withRowLimit(limitRows)
+               .withConfidenceThreshold(confidenceThreshold, minSampleRows);
+  }
+
+  private DelimiterDetector.DetectionResult detectDelimiters(DelimiterDetector detector) throws IOException {
+    DelimiterDetector.DetectionResult result = detector.detectDelimiters();
+    if (result != null && result.isStoppedEarly()){
+      log.logDetailed("Delimiter detection stopped after "+result.getScannedLines()+" lines with confidence "+result.getConfidence());
+    }
+    return result;
+  }
+
+}
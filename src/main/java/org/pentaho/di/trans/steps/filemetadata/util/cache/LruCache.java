@@ -0,0 +1,83 @@
+package org.pentaho.di.trans.steps.filemetadata.util.cache;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A size bounded map that evicts its least recently used entry once it is full. All methods are
+ * synchronized, so one cache may be shared by any number of threads. Lookups are counted as hits
+ * and misses.
+ */
+public final class LruCache<K, V> {
+
+  private final int capacity;
+  private final LinkedHashMap<K, V> entries;
+
+  private long hits = 0;
+  private long misses = 0;
+
+  public LruCache(final int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("LRU cache capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+        return size() > capacity;
+      }
+    };
+  }
+
+  /**
+   * @return the value cached for the key, or null if there is none
+   */
+  public synchronized V get(K key) {
+    V value = entries.get(key);
+    if (value == null) {
+      misses++;
+    }
+    else {
+      hits++;
+    }
+    return value;
+  }
+
+  /**
+   * Caches the value for the key, evicting the least recently used entry if the cache is full.
+   */
+  public synchronized void put(K key, V value) {
+    entries.put(key, value);
+  }
+
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+
+  public synchronized void clear() {
+    entries.clear();
+  }
+
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of lookups that found a value
+   */
+  public synchronized long getHits() {
+    return hits;
+  }
+
+  /**
+   * @return the number of lookups that found none
+   */
+  public synchronized long getMisses() {
+    return misses;
+  }
+
+}
@@ -0,0 +1,315 @@
+package org.pentaho.di.trans.steps.filemetadata.util.cache;
+
+import java.io.*;
+import java.nio.channels.FileLock;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+/**
+ * An index of byte values by string key in an append-only local file, for results that should outlive
+ * the JVM. Each put appends a record, and the last record of a key wins. Once the file holds twice
+ * as many records as entries are kept, it is compacted to the most recently written entries. Entries
+ * read when they are close to eviction are written again, so the entries kept are about the most
+ * recently used ones.
+ *
+ * Several processes may share the file. Every access holds a lock on a companion ".lock" file and
+ * first reads the records others appended since. A compaction writes a new file under a new
+ * generation, which makes the others read it from the start. A record torn by a crashed writer fails
+ * its checksum and is cut off by the next put.
+ *
+ * Only a missing or empty file is made an index. Any other file that does not start like an index
+ * is left alone, and accessing it fails.
+ */
+public final class PersistentIndex {
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final int MAGIC = 0x464d4931; // FMI1
+  // magic and generation
+  private static final int HEADER_SIZE = 12;
+  // length and checksum of the payload
+  private static final int RECORD_HEADER_SIZE = 8;
+
+  private static final Map<String, PersistentIndex> INDEXES = new HashMap<>();
+
+  private final File file;
+  private final File lockFile;
+  private final int maxEntries;
+
+  private final HashMap<String, Entry> entries = new HashMap<>();
+  private long generation = 0;
+  // the bytes of the file read into the entries
+  private long readOffset = 0;
+  private int records = 0;
+  private long sequence = 0;
+
+  private static final class Entry {
+    final byte[] value;
+    final long sequence;
+
+    Entry(byte[] value, long sequence) {
+      this.value = value;
+      this.sequence = sequence;
+    }
+  }
+
+  /**
+   * @return the index in the file, shared with all others opening the same file with the same size in this JVM
+   */
+  public static PersistentIndex open(File file, int maxEntries) throws IOException {
+    String path = file.getCanonicalPath();
+    String key = path + "|" + maxEntries;
+    synchronized (INDEXES) {
+      PersistentIndex index = INDEXES.get(key);
+      if (index == null) {
+        index = new PersistentIndex(new File(path), maxEntries);
+        INDEXES.put(key, index);
+      }
+      return index;
+    }
+  }
+
+  /**
+   * @param file       the file holding the index, created on the first put
+   * @param maxEntries the number of entries kept by compactions
+   */
+  public PersistentIndex(File file, int maxEntries) {
+    if (maxEntries < 1) {
+      throw new IllegalArgumentException("Persistent index must keep at least one entry: " + maxEntries);
+    }
+    this.file = file;
+    this.lockFile = new File(file.getPath() + ".lock");
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * @return the value of the key, or null if there is none
+   */
+  public synchronized byte[] get(String key) throws IOException {
+
+    Entry entry;
+    try (RandomAccessFile lock = openLock(); FileLock ignored = lock.getChannel().lock(0, Long.MAX_VALUE, true)) {
+      refresh();
+      entry = entries.get(key);
+    }
+
+    if (entry == null) {
+      return null;
+    }
+    // entries in use are kept from falling out of the next compaction
+    if (entry.sequence < sequence - maxEntries / 2) {
+      put(key, entry.value);
+    }
+    return entry.value;
+
+  }
+
+  /**
+   * Writes the value of the key.
+   */
+  public synchronized void put(String key, byte[] value) throws IOException {
+
+    File parent = file.getAbsoluteFile().getParentFile();
+    if (parent != null && !parent.isDirectory() && !parent.mkdirs() && !parent.isDirectory()) {
+      throw new IOException("Could not create directory " + parent);
+    }
+
+    try (RandomAccessFile lock = openLock(); FileLock ignored = lock.getChannel().lock()) {
+
+      refresh();
+
+      try (RandomAccessFile out = new RandomAccessFile(file, "rw")) {
+        if (readOffset == 0) {
+          out.setLength(0);
+          writeHeader(out, newGeneration());
+        }
+        // anything past the records read is a torn record
+        out.setLength(readOffset);
+        out.seek(readOffset);
+        byte[] record = record(key, value);
+        out.write(record);
+        readOffset += record.length;
+      }
+
+      entries.put(key, new Entry(value, sequence++));
+      records++;
+
+      if (records >= 2 * maxEntries) {
+        compact();
+      }
+
+    }
+
+  }
+
+  /**
+   * @return the number of distinct keys in the index as of the last access
+   */
+  public synchronized int size() {
+    return entries.size();
+  }
+
+  private RandomAccessFile openLock() throws IOException {
+    return new RandomAccessFile(lockFile, "rw");
+  }
+
+  // reads the records appended since the last access, or the whole file if it is new or was compacted
+  private void refresh() throws IOException {
+
+    if (!file.exists()) {
+      reset();
+      return;
+    }
+
+    try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+
+      long length = in.length();
+      if (!startsWithMagic(in, length)) {
+        throw new IOException("Not a file metadata index: " + file);
+      }
+      // an empty file, or a header torn by a crashed writer, makes a new index
+      if (length < HEADER_SIZE) {
+        reset();
+        return;
+      }
+      in.seek(4);
+      long fileGeneration = in.readLong();
+      if (fileGeneration != generation || length < readOffset) {
+        reset();
+        generation = fileGeneration;
+        readOffset = HEADER_SIZE;
+      }
+      if (length == readOffset) {
+        return;
+      }
+
+      in.seek(readOffset);
+      DataInputStream records = new DataInputStream(new BufferedInputStream(new FileInputStream(in.getFD())));
+      long offset = readOffset;
+      CRC32 crc = new CRC32();
+      while (offset + RECORD_HEADER_SIZE <= length) {
+        int size = records.readInt();
+        int checksum = records.readInt();
+        if (size < 4 || offset + RECORD_HEADER_SIZE + size > length) break;
+        byte[] payload = new byte[size];
+        records.readFully(payload);
+        crc.reset();
+        crc.update(payload, 0, size);
+        if ((int) crc.getValue() != checksum) break;
+        addRecord(payload);
+        offset += RECORD_HEADER_SIZE + size;
+      }
+      readOffset = offset;
+
+    }
+
+  }
+
+  // true if the file is empty, or its first bytes are those of the magic number
+  private static boolean startsWithMagic(RandomAccessFile in, long length) throws IOException {
+    int bytes = (int) Math.min(length, 4);
+    for (int i = 0; i < bytes; i++) {
+      if (in.read() != ((MAGIC >>> (24 - 8 * i)) & 0xFF)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private void reset() {
+    entries.clear();
+    generation = 0;
+    readOffset = 0;
+    records = 0;
+  }
+
+  private void addRecord(byte[] payload) {
+    int keyLength = ((payload[0] & 0xFF) << 24) | ((payload[1] & 0xFF) << 16) | ((payload[2] & 0xFF) << 8) | (payload[3] & 0xFF);
+    String key = new String(payload, 4, keyLength, UTF_8);
+    byte[] value = new byte[payload.length - 4 - keyLength];
+    System.arraycopy(payload, 4 + keyLength, value, 0, value.length);
+    entries.put(key, new Entry(value, sequence++));
+    records++;
+  }
+
+  private static byte[] record(String key, byte[] value) throws IOException {
+    byte[] keyBytes = key.getBytes(UTF_8);
+    ByteArrayOutputStream payload = new ByteArrayOutputStream(4 + keyBytes.length + value.length);
+    DataOutputStream data = new DataOutputStream(payload);
+    data.writeInt(keyBytes.length);
+    data.write(keyBytes);
+    data.write(value);
+    byte[] bytes = payload.toByteArray();
+
+    CRC32 crc = new CRC32();
+    crc.update(bytes, 0, bytes.length);
+    ByteArrayOutputStream record = new ByteArrayOutputStream(RECORD_HEADER_SIZE + bytes.length);
+    DataOutputStream out = new DataOutputStream(record);
+    out.writeInt(bytes.length);
+    out.writeInt((int) crc.getValue());
+    out.write(bytes);
+    return record.toByteArray();
+  }
+
+  private void writeHeader(RandomAccessFile out, long newGeneration) throws IOException {
+    out.writeInt(MAGIC);
+    out.writeLong(newGeneration);
+    generation = newGeneration;
+    readOffset = HEADER_SIZE;
+  }
+
+  private long newGeneration() {
+    long next;
+    do {
+      next = new Random().nextLong();
+    } while (next == 0 || next == generation);
+    return next;
+  }
+
+  // rewrites the file with the most recently written entries, called holding the lock
+  private void compact() throws IOException {
+
+    ArrayList<Map.Entry<String, Entry>> kept = new ArrayList<>(entries.entrySet());
+    Collections.sort(kept, new Comparator<Map.Entry<String, Entry>>() {
+      @Override
+      public int compare(Map.Entry<String, Entry> a, Map.Entry<String, Entry> b) {
+        return Long.compare(a.getValue().sequence, b.getValue().sequence);
+      }
+    });
+    if (kept.size() > maxEntries) {
+      kept = new ArrayList<>(kept.subList(kept.size() - maxEntries, kept.size()));
+    }
+
+    File compacted = new File(file.getPath() + ".tmp");
+    long newGeneration = newGeneration();
+    try (RandomAccessFile out = new RandomAccessFile(compacted, "rw")) {
+      out.setLength(0);
+      out.writeInt(MAGIC);
+      out.writeLong(newGeneration);
+      BufferedOutputStream records = new BufferedOutputStream(new FileOutputStream(out.getFD()));
+      for (Map.Entry<String, Entry> entry : kept) {
+        records.write(record(entry.getKey(), entry.getValue().value));
+      }
+      records.flush();
+    }
+
+    try {
+      Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (AtomicMoveNotSupportedException e) {
+      Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    reset();
+    refresh();
+
+  }
+
+}
@@ -0,0 +1,101 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Splits raw bytes into lines without decoding them. Lines end at \n, \r or \r\n,
+ * just like BufferedReader.readLine(), which makes it usable for all charsets
+ * that encode line breaks as single ASCII bytes.
+ *
+ * After next() returned true, the current line is found in buffer[start, end).
+ * The buffer is reused, so line contents are only valid until the next call.
+ */
+class ByteLineReader {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final InputStream input;
+
+  byte[] buffer = new byte[BLOCK_SIZE];
+  int start = 0;
+  int end = 0;
+
+  private int pos = 0;
+  private int limit = 0;
+  private boolean eof = false;
+  private boolean skipLineFeed = false;
+
+  ByteLineReader(InputStream input) {
+    this.input = input;
+  }
+
+  boolean next() throws IOException {
+
+    int lineStart = pos;
+
+    while (true) {
+
+      while (pos < limit) {
+        byte b = buffer[pos];
+
+        // \r\n counts as a single line break
+        if (skipLineFeed) {
+          skipLineFeed = false;
+          if (b == '\n') {
+            lineStart = ++pos;
+            continue;
+          }
+        }
+
+        if (b == '\n' || b == '\r') {
+          start = lineStart;
+          end = pos;
+          skipLineFeed = (b == '\r');
+          pos++;
+          return true;
+        }
+
+        pos++;
+      }
+
+      if (eof) {
+        // last line without line break
+        if (pos > lineStart) {
+          start = lineStart;
+          end = pos;
+          return true;
+        }
+        return false;
+      }
+
+      // make room for more data, keeping the partial line
+      if (lineStart > 0) {
+        System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+        limit -= lineStart;
+        pos -= lineStart;
+        lineStart = 0;
+      }
+
+      if (limit == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+
+      int bytesRead = input.read(buffer, limit, buffer.length - limit);
+      if (bytesRead < 0) {
+        eof = true;
+      } else {
+        limit += bytesRead;
+      }
+
+    }
+
+  }
+
+  String line(Charset charset) {
+    return new String(buffer, start, end - start, charset);
+  }
+
+}
@@ -0,0 +1,99 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits decoded input into lines. Lines end at \n, \r or \r\n,
+ * just like BufferedReader.readLine(), but the line is not copied into a String.
+ *
+ * After next() returned true, the current line is found in buffer[start, end).
+ * The buffer is reused, so line contents are only valid until the next call.
+ */
+class CharLineReader {
+
+  private static final int BLOCK_SIZE = 64 * 1024;
+
+  private final Reader input;
+
+  char[] buffer = new char[BLOCK_SIZE];
+  int start = 0;
+  int end = 0;
+
+  private int pos = 0;
+  private int limit = 0;
+  private boolean eof = false;
+  private boolean skipLineFeed = false;
+
+  CharLineReader(Reader input) {
+    this.input = input;
+  }
+
+  boolean next() throws IOException {
+
+    int lineStart = pos;
+
+    while (true) {
+
+      while (pos < limit) {
+        char c = buffer[pos];
+
+        // \r\n counts as a single line break
+        if (skipLineFeed) {
+          skipLineFeed = false;
+          if (c == '\n') {
+            lineStart = ++pos;
+            continue;
+          }
+        }
+
+        if (c == '\n' || c == '\r') {
+          start = lineStart;
+          end = pos;
+          skipLineFeed = (c == '\r');
+          pos++;
+          return true;
+        }
+
+        pos++;
+      }
+
+      if (eof) {
+        // last line without line break
+        if (pos > lineStart) {
+          start = lineStart;
+          end = pos;
+          return true;
+        }
+        return false;
+      }
+
+      // make room for more data, keeping the partial line
+      if (lineStart > 0) {
+        System.arraycopy(buffer, lineStart, buffer, 0, limit - lineStart);
+        limit -= lineStart;
+        pos -= lineStart;
+        lineStart = 0;
+      }
+
+      if (limit == buffer.length) {
+        buffer = Arrays.copyOf(buffer, buffer.length * 2);
+      }
+
+      int charsRead = input.read(buffer, limit, buffer.length - limit);
+      if (charsRead < 0) {
+        eof = true;
+      } else {
+        limit += charsRead;
+      }
+
+    }
+
+  }
+
+  String line() {
+    return new String(buffer, start, end - start);
+  }
+
+}
@@ -1,18 +1,30 @@
 package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
 
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.trans.steps.filemetadata.util.encoding.EncodingDetector;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.RandomAccessSource;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.RangeInputStream;
 
 import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.Reader;
-import java.util.ArrayDeque;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 public class DelimiterDetector {
 
-  private ArrayList<Character> delimiterCandidates;
-  private ArrayList<Character> enclosureCandidates;
+  private ArrayList<String> delimiterCandidates;
+  private ArrayList<String> enclosureCandidates;
   private BufferedReader input;
+  private InputStream byteInput;
+  private RandomAccessSource source;
+  private Charset charset;
 
   private long maxBadHeaderLines = 30;
   private long maxBadFooterLines = 30;
@@ -21,6 +33,68 @@ public class DelimiterDetector {
   private LogChannelInterface log;
   private long rowLimit;
 
+  // early termination, disabled if the threshold is 0
+  private double confidenceThreshold = 0;
+  private long minSampleLines = 0;
+
+  // a record continues on the next line while an enclosure is open, up to this many bytes or chars,
+  // 0 ends every record at the line break
+  private long maxRecordLength = 0;
+
+  // inputs shorter than two chunks are scanned sequentially
+  public static final long DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+  // full scans of random access input are split into line aligned chunks of at least this size,
+  // and scanned by this many threads
+  private int parallelism = 1;
+  // the pool scanning the chunks, null for one of its own
+  private ForkJoinPool pool = null;
+  private long chunkSize = DEFAULT_CHUNK_SIZE;
+
+  // lines scanned in a chunk, and whether a record went on beyond it
+  private long chunkLines = 0;
+  private boolean chunkBroken = false;
+
+  // candidate tables, index j refers to results[j]
+  private DetectionResult[] results;
+  private int[] delimiterPatterns;
+  private int[] enclosurePatterns;
+  private boolean[] hasEnclosure;
+
+  // distinct delimiter and enclosure strings, as bytes or chars depending on the scan
+  private String[] patterns;
+  private byte[][] patternBytes;
+  private char[][] patternChars;
+  private int[] patternLengths;
+
+  // bit j of the user words of a pattern is set if it is the delimiter or enclosure of result j
+  private int words;
+  private long[] delimiterUsers;
+  private long[] enclosureUsers;
+
+  // all patterns are matched by a single automaton over symbol classes
+  private PatternMatcher matcher;
+  private int[] lowClasses;
+  private char[] highChars;
+  private int[] highClasses;
+
+  // results that are still plausible
+  private long[] active;
+
+  // per line scan state
+  private long[] frequencies;
+  private boolean[] enclosureOpen;
+  private boolean[] enclosureSeen;
+  private boolean[] enclosureConsistent;
+  private int[] delimiterEnd;
+  private int[] enclosureEnd;
+
+  // records spanning lines, per result
+  private boolean[] recordContinued;
+  private long[] recordLength;
+  private long[] recordLines;
+  private int continuedRecords;
+
   public void setRowLimit(long rowLimit) {
     this.rowLimit = rowLimit;
   }
@@ -29,105 +103,224 @@ public class DelimiterDetector {
     return rowLimit;
   }
 
+  public double getConfidenceThreshold() {
+    return confidenceThreshold;
+  }
+
+  void setConfidenceThreshold(double confidenceThreshold) {
+    this.confidenceThreshold = confidenceThreshold;
+  }
+
+  public long getMinSampleLines() {
+    return minSampleLines;
+  }
+
+  void setMinSampleLines(long minSampleLines) {
+    this.minSampleLines = minSampleLines;
+  }
+
+  public long getMaxRecordLength() {
+    return maxRecordLength;
+  }
+
+  void setMaxRecordLength(long maxRecordLength) {
+    this.maxRecordLength = maxRecordLength;
+  }
+
+  public int getParallelism() {
+    return parallelism;
+  }
+
+  void setParallelism(int parallelism) {
+    this.parallelism = parallelism;
+  }
+
+  void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  long getChunkSize() {
+    return chunkSize;
+  }
 
-  class LineResult {
-    long streak;
-    long frequency;
-    boolean consistentEnclosure;
-    boolean enclosureSeen;
+  void setChunkSize(long chunkSize) {
+    this.chunkSize = chunkSize;
   }
 
+
   public class DetectionResult {
 
-    private ArrayDeque<LineResult> lineResults = new ArrayDeque<>(8);
+    // streaks of consecutive records with the same frequency, as parallel run-length arrays,
+    // streakLines counts the physical lines of each streak
+    private long[] streakLengths = new long[8];
+    private long[] streakLines = new long[8];
+    private long[] streakFrequencies = new long[8];
+    private boolean[] streakConsistentEnclosure = new boolean[8];
+    private boolean[] streakEnclosureSeen = new boolean[8];
+    private int streaks = 0;
 
-    private Character delimiter = null;
-    private Character enclosure = null;
+    private String delimiter = null;
+    private String enclosure = null;
 
     private long badHeaders = 0;
     private long badFooters = 0;
     private long dataLines = 0;
+    private long badHeaderLines = 0;
+    private long badFooterLines = 0;
     private long dataLineFrequency = 0;
     private boolean consistentEnclosure = true;
     private boolean enclosureSeen = false;
 
-    void addLineResult(LineResult lineResult){
-      // first line result?
-      if (lineResults.isEmpty()){
-        lineResults.add(lineResult);
-        return;
+    private long scannedLines = 0;
+    private double confidence = 0;
+    private boolean stoppedEarly = false;
+    private boolean endOfInput = false;
+
+    void addLine(long frequency, boolean lineConsistentEnclosure, boolean lineEnclosureSeen, long lines){
+
+      // following up, may merge with previous streak
+      if (streaks > 0){
+        int prev = streaks - 1;
+        if (streakFrequencies[prev] == frequency && (enclosure == null || (streakConsistentEnclosure[prev] && lineConsistentEnclosure))){
+          streakLengths[prev] += 1;
+          streakLines[prev] += lines;
+          if (!streakEnclosureSeen[prev]){
+            streakEnclosureSeen[prev] = lineEnclosureSeen;
+          }
+          return;
+        }
       }
 
-      // following up, may merge with previous one
-      LineResult prev = lineResults.peekLast();
-      if (prev.frequency == lineResult.frequency && (enclosure == null || (prev.consistentEnclosure && lineResult.consistentEnclosure))){
-        prev.streak += 1;
-        if (!prev.enclosureSeen){
-          prev.enclosureSeen = lineResult.enclosureSeen;
-        }
+      addStreak(1, lines, frequency, lineConsistentEnclosure, lineEnclosureSeen);
+    }
+
+    // continues the streaks with those of the scan that picked up where this one ended
+    void append(DetectionResult next){
 
+      // the enclosure seen flag sticks once set
+      boolean seenBefore = false;
+      for (int i = 0; i < streaks && !seenBefore; i++){
+        seenBefore = streakEnclosureSeen[i];
       }
-      else{
-        lineResults.add(lineResult);
+
+      for (int i = 0; i < next.streaks; i++){
+        boolean seen = seenBefore || next.streakEnclosureSeen[i];
+        if (i == 0 && streaks > 0){
+          int prev = streaks - 1;
+          if (streakFrequencies[prev] == next.streakFrequencies[0] && (enclosure == null || (streakConsistentEnclosure[prev] && next.streakConsistentEnclosure[0]))){
+            streakLengths[prev] += next.streakLengths[0];
+            streakLines[prev] += next.streakLines[0];
+            streakEnclosureSeen[prev] = streakEnclosureSeen[prev] || seen;
+            continue;
+          }
+        }
+        addStreak(next.streakLengths[i], next.streakLines[i], next.streakFrequencies[i], next.streakConsistentEnclosure[i], seen);
       }
     }
 
+    private void addStreak(long length, long lines, long frequency, boolean streakConsistent, boolean streakSeen){
 
-    public void setDelimiter(Character delimiter) {
+      if (streaks == streakLengths.length){
+        int newLength = streaks * 2;
+        streakLengths = Arrays.copyOf(streakLengths, newLength);
+        streakLines = Arrays.copyOf(streakLines, newLength);
+        streakFrequencies = Arrays.copyOf(streakFrequencies, newLength);
+        streakConsistentEnclosure = Arrays.copyOf(streakConsistentEnclosure, newLength);
+        streakEnclosureSeen = Arrays.copyOf(streakEnclosureSeen, newLength);
+      }
+
+      streakLengths[streaks] = length;
+      streakLines[streaks] = lines;
+      streakFrequencies[streaks] = frequency;
+      streakConsistentEnclosure[streaks] = streakConsistent;
+      streakEnclosureSeen[streaks] = streakSeen;
+      streaks++;
+    }
+
+
+    public void setDelimiter(String delimiter) {
       this.delimiter = delimiter;
     }
 
-    public void setEnclosure(Character enclosure) {
+    public void setEnclosure(String enclosure) {
       this.enclosure = enclosure;
     }
 
     int getStreaks(){
-      return lineResults.size();
+      return streaks;
+    }
+
+    // length of the streak the last line belongs to, if it can count as data
+    long getCurrentStreak(){
+      if (streaks == 0){
+        return 0;
+      }
+      int last = streaks - 1;
+      if (streakFrequencies[last] == 0 || (enclosure != null && !streakConsistentEnclosure[last])){
+        return 0;
+      }
+      return streakLengths[last];
     }
 
     void evaluate(){
 
-      if (lineResults.isEmpty()){
+      if (streaks == 0){
         return;
       }
 
-      LineResult[] streaks = new LineResult[lineResults.size()];
-      lineResults.toArray(streaks);
-
-      long currentMaxStreak = streaks[0].streak;
+      long currentMaxStreak = streakLengths[0];
       badHeaders = 0;
-      dataLines = streaks[0].streak;
-      dataLineFrequency = streaks[0].frequency;
+      dataLines = streakLengths[0];
+      dataLineFrequency = streakFrequencies[0];
       badFooters = 0;
-      consistentEnclosure = streaks[0].consistentEnclosure;
-      enclosureSeen = streaks[0].enclosureSeen;
-      int size = streaks.length;
+      badHeaderLines = 0;
+      badFooterLines = 0;
+      long dataStreakLines = streakLines[0];
+      consistentEnclosure = streakConsistentEnclosure[0];
+      enclosureSeen = streakEnclosureSeen[0];
 
       // note: skipping first item
-      for(int i=1;i<size;i++){
-        LineResult streak = streaks[i];
+      for(int i=1;i<streaks;i++){
         if (!enclosureSeen){
-          enclosureSeen = streak.enclosureSeen;
+          enclosureSeen = streakEnclosureSeen[i];
         }
-        if (streak.streak >= currentMaxStreak && streak.consistentEnclosure){
+        if (streakLengths[i] >= currentMaxStreak && streakConsistentEnclosure[i]){
           badHeaders += dataLines+badFooters;
           badFooters = 0;
-          dataLines = streak.streak;
-          dataLineFrequency = streak.frequency;
-          currentMaxStreak = streak.streak;
+          badHeaderLines += dataStreakLines+badFooterLines;
+          badFooterLines = 0;
+          dataStreakLines = streakLines[i];
+          dataLines = streakLengths[i];
+          dataLineFrequency = streakFrequencies[i];
+          currentMaxStreak = streakLengths[i];
         }
         else{
-          badFooters += streak.streak;
+          badFooters += streakLengths[i];
+          badFooterLines += streakLines[i];
         }
       }
 
     }
 
+    /**
+     * @return the delimiter if it is a single character, null otherwise
+     */
     public Character getDelimiter() {
-      return delimiter;
+      return delimiter.length() == 1 ? delimiter.charAt(0) : null;
     }
 
+    /**
+     * @return the enclosure if it is a single character, null otherwise
+     */
     public Character getEnclosure() {
+      return enclosure != null && enclosure.length() == 1 ? enclosure.charAt(0) : null;
+    }
+
+    public String getDelimiterString() {
+      return delimiter;
+    }
+
+    public String getEnclosureString() {
       return enclosure;
     }
 
@@ -139,6 +332,20 @@ public class DelimiterDetector {
       return badFooters;
     }
 
+    /**
+     * @return the number of physical lines the bad headers take up, more than getBadHeaders() if records span lines
+     */
+    public long getBadHeaderLines() {
+      return badHeaderLines;
+    }
+
+    /**
+     * @return the number of physical lines the bad footers take up, more than getBadFooters() if records span lines
+     */
+    public long getBadFooterLines() {
+      return badFooterLines;
+    }
+
     public long getDataLines() {
       return dataLines;
     }
@@ -156,23 +363,52 @@ public class DelimiterDetector {
     }
 
     public boolean hasEnclosure() {
-      return getEnclosure() != null;
+      return enclosure != null;
+    }
+
+    /**
+     * @return the number of lines scanned before the detection finished
+     */
+    public long getScannedLines() {
+      return scannedLines;
+    }
+
+    /**
+     * @return the lead of the winning streak over the best streak of another delimiter,
+     * relative to the scanned lines: 1 means no competition at all, 0 means a tie
+     */
+    public double getConfidence() {
+      return confidence;
+    }
+
+    /**
+     * @return true if the scan ended because the confidence threshold was reached
+     */
+    public boolean isStoppedEarly() {
+      return stoppedEarly;
+    }
+
+    /**
+     * @return true if the scan reached the end of the input, so trailing lines are real footers
+     */
+    public boolean isEndOfInput() {
+      return endOfInput;
     }
   }
 
-  public ArrayList<Character> getDelimiterCandidates() {
+  public ArrayList<String> getDelimiterCandidates() {
     return delimiterCandidates;
   }
 
-  void setDelimiterCandidates(ArrayList<Character> delimiterCandidates) {
+  void setDelimiterCandidates(ArrayList<String> delimiterCandidates) {
     this.delimiterCandidates = delimiterCandidates;
   }
 
-  public ArrayList<Character> getEnclosureCandidates() {
+  public ArrayList<String> getEnclosureCandidates() {
     return enclosureCandidates;
   }
 
-  void setEnclosureCandidates(ArrayList<Character> enclosureCandidates) {
+  void setEnclosureCandidates(ArrayList<String> enclosureCandidates) {
     this.enclosureCandidates = enclosureCandidates;
   }
 
@@ -184,6 +420,16 @@ public class DelimiterDetector {
     this.input = input;
   }
 
+  void setInput(InputStream byteInput, Charset charset) {
+    this.byteInput = byteInput;
+    this.charset = charset;
+  }
+
+  void setInput(RandomAccessSource source, Charset charset) {
+    this.source = source;
+    this.charset = charset;
+  }
+
   public long getMaxBadHeaderLines() {
     return maxBadHeaderLines;
   }
@@ -203,8 +449,10 @@ public class DelimiterDetector {
   public DetectionResult detectDelimiters() throws IOException {
 
     // potential configuration candidates with enclosure
-    for (Character delimiterCandidate : delimiterCandidates) {
-      for (Character enclosureCandidate : enclosureCandidates) {
+    for (String delimiterCandidate : delimiterCandidates) {
+      if (delimiterCandidate.isEmpty()) continue;
+      for (String enclosureCandidate : enclosureCandidates) {
+        if (enclosureCandidate.isEmpty()) continue;
         DetectionResult detectionResult = new DetectionResult();
         detectionResult.setDelimiter(delimiterCandidate);
         detectionResult.setEnclosure(enclosureCandidate);
@@ -217,143 +465,751 @@ public class DelimiterDetector {
       potentialResults.add(detectionResult);
     }
 
-    // scan the file
+    prepareCandidates();
+
+    if (byteInput == null && source != null) {
+      byteInput = new RangeInputStream(source, 0, source.length());
+    }
+
+    // raw bytes can be scanned without decoding them, if all candidates have an unambiguous encoding
+    boolean byteScan = byteInput != null && canScanBytes();
+    prepareMatcher(byteScan);
 
     long lineNr = 0;
+    boolean stoppedEarly = false;
+    boolean endOfInput = false;
+    ByteLineReader byteLines = null;
+    CharLineReader charLines = null;
+
+    // a full scan of random access input can be split up
+    boolean scannedInParallel = false;
+    if (byteScan && source != null && parallelism > 1 && rowLimit <= 0 && confidenceThreshold <= 0) {
+      try {
+        scannedInParallel = scanInParallel();
+      }
+      catch(IOException ex){
+        if (log != null){
+          log.logError("Error reading in parallel scan", ex);
+        }
+        return null;
+      }
+      if (scannedInParallel) {
+        lineNr = chunkLines;
+        endOfInput = true;
+      }
+    }
+
+    try {
+
+      if (scannedInParallel) {
+        // done already
+      }
+      else if (byteScan) {
+        byteLines = new ByteLineReader(byteInput);
+        while (rowLimit <= 0 || lineNr <= rowLimit) {
+          if (!byteLines.next()) {
+            endOfInput = true;
+            endInput();
+            break;
+          }
+          lineNr++;
+          scanLine(byteLines.buffer, byteLines.start, byteLines.end);
+          if (isConfident(lineNr)) {
+            stoppedEarly = true;
+            break;
+          }
+        }
+      }
+      else {
+        charLines = new CharLineReader((byteInput != null) ? new InputStreamReader(byteInput, charset) : input);
+        while (rowLimit <= 0 || lineNr <= rowLimit) {
+          if (!charLines.next()) {
+            endOfInput = true;
+            endInput();
+            break;
+          }
+          lineNr++;
+          scanLine(charLines.buffer, charLines.start, charLines.end);
+          if (isConfident(lineNr)) {
+            stoppedEarly = true;
+            break;
+          }
+        }
+      }
 
-    // keep track of delimiter frequencies for each result
-    int[] frequencies = new int[potentialResults.size()];
-    boolean[] enclosureOpen = new boolean[potentialResults.size()];
-    boolean[] enclosureSeen = new boolean[potentialResults.size()];
-    boolean[] enclosureConsistent = new boolean[potentialResults.size()];
+    }
+    catch(ArrayIndexOutOfBoundsException ex1){
+      if (log != null){
+        log.logError("Inconsistent separators on line "+lineNr+". Line breaks in fields?");
+        logOffendingLine(byteLines, charLines);
+      }
+      ex1.printStackTrace();
+      return null;
+    }
+    catch(IOException ex2){
+      if (log != null){
+        log.logError("Error reading around line "+lineNr+". Invalid charset?");
+        logOffendingLine(byteLines, charLines);
+      }
+      ex2.printStackTrace();
+      return null;
+    }
 
-    String s = "";
+    double confidence = confidence(lineNr);
+
+    // drop culled results, keeping the priority order
+    for (int j = results.length - 1; j >= 0; j--) {
+      if (!isActive(j)) {
+        potentialResults.remove(j);
+      }
+    }
+
+    DetectionResult result = selectResult();
+    if (result != null) {
+      result.scannedLines = lineNr;
+      result.confidence = confidence;
+      result.stoppedEarly = stoppedEarly;
+      result.endOfInput = endOfInput;
+    }
+
+    return result;
+
+  }
+
+  // scans line aligned chunks of the source in parallel, and merges their results into those of a
+  // sequential scan, returns false if the source is too small, or if a record spans two chunks
+  private boolean scanInParallel() throws IOException {
+
+    long length = source.length();
+    if (length < 2 * chunkSize) {
+      return false;
+    }
+
+    DelimiterDetector whole;
+    ForkJoinPool pool = (this.pool != null) ? this.pool : new ForkJoinPool(parallelism);
     try {
+      whole = pool.invoke(new ChunkTask(0, length, length));
+    }
+    catch(RuntimeException ex){
+      for (Throwable t = ex; t != null; t = t.getCause()) {
+        if (t instanceof IOException) throw (IOException) t;
+      }
+      throw ex;
+    }
+    finally {
+      if (pool != this.pool) {
+        pool.shutdown();
+      }
+    }
+
+    if (whole.chunkBroken) {
+      if (log != null){
+        log.logDetailed("A record spans two chunks, scanning sequentially");
+      }
+      return false;
+    }
+
+    results = whole.results;
+    active = whole.active;
+    potentialResults = new ArrayList<>(Arrays.asList(results));
+    chunkLines = whole.chunkLines;
+    return true;
+
+  }
+
+  // a detector for a single chunk, with the same candidates in the same order
+  private DelimiterDetector newChunkDetector() {
+
+    DelimiterDetector d = new DelimiterDetector();
+    d.charset = charset;
+    d.maxBadHeaderLines = maxBadHeaderLines;
+    d.maxBadFooterLines = maxBadFooterLines;
+    d.maxRecordLength = maxRecordLength;
+
+    for (DetectionResult r : results) {
+      DetectionResult c = d.new DetectionResult();
+      c.setDelimiter(r.getDelimiterString());
+      c.setEnclosure(r.getEnclosureString());
+      d.potentialResults.add(c);
+    }
+
+    d.prepareCandidates();
+    d.prepareMatcher(true);
+    return d;
 
-      while ((rowLimit <= 0 || lineNr <= rowLimit) && (s = input.readLine()) != null) {
-        lineNr++;
+  }
+
+  private void scanChunk(InputStream chunk, boolean last) throws IOException {
+
+    ByteLineReader lines = new ByteLineReader(chunk);
+    while (lines.next()) {
+      chunkLines++;
+      scanLine(lines.buffer, lines.start, lines.end);
+    }
+
+    if (last) {
+      endInput();
+    }
+
+  }
 
-        int remainingResults = potentialResults.size();
+  // continues this chunk with the following one, the merged streaks are those of a scan of both
+  private void append(DelimiterDetector next) {
 
-        // clear occurrences for each char
-        for (int j = 0; j < remainingResults; j++) {
-          frequencies[j] = 0;
-          enclosureOpen[j] = false;
-          enclosureConsistent[j] = true;
+    for (int j = 0; j < results.length; j++) {
+      if (!isActive(j)) continue;
+      // the next chunk started on a fresh record
+      if (recordContinued[j]) {
+        chunkBroken = true;
+      }
+      if (!next.isActive(j)) {
+        active[j >>> 6] &= ~(1L << j);
+        continue;
+      }
+      results[j].append(next.results[j]);
+      if (!isPlausible(results[j])) {
+        active[j >>> 6] &= ~(1L << j);
+      }
+    }
+
+    chunkBroken = chunkBroken || next.chunkBroken;
+    chunkLines += next.chunkLines;
+    recordContinued = next.recordContinued;
+    continuedRecords = next.continuedRecords;
+
+  }
+
+  // the first line start in [position, end), or end if there is none
+  private long lineStart(long position, long end) throws IOException {
+
+    byte[] buf = new byte[8192];
+    long p = position - 1;
+
+    while (p < end - 1) {
+      int n = source.read(p, buf, 0, (int) Math.min(buf.length, end - p));
+      if (n <= 0) break;
+      for (int k = 0; k < n - 1; k++) {
+        if (buf[k] == '\n' || buf[k] == '\r' && buf[k + 1] != '\n') {
+          return p + k + 1;
         }
+      }
+      if (buf[n - 1] == '\n') {
+        return p + n;
+      }
+      // a trailing \r depends on the byte after it
+      p += Math.max(1, n - 1);
+    }
 
-        // find occurrences for each char
-        for (int i = 0; i < s.length(); i++) {
-          char sc = s.charAt(i);
-          for (int j = 0; j < remainingResults; j++) {
-            DetectionResult detectionResult = potentialResults.get(j);
+    return end;
 
-            char c = detectionResult.getDelimiter();
-            Character enc = detectionResult.getEnclosure();
-            boolean hasEnclosure = enc != null;
+  }
 
-            // if enclosure is involved, ignore enclosed delimiters
-            if (hasEnclosure) {
+  // splits its range in halves on line starts until it is small enough to be scanned
+  private class ChunkTask extends RecursiveTask<DelimiterDetector> {
 
-              if (!enclosureOpen[j] && sc == c) {
-                frequencies[j] += 1;
-              }
+    private final long from;
+    private final long to;
+    private final long length;
 
-              if (sc == enc) {
-                enclosureSeen[j] = true;
-                enclosureConsistent[j] = enclosureConsistent[j] && (i == 0 && !enclosureOpen[j] ||
-                    i == s.length() - 1 && enclosureOpen[j] ||
-                    i > 0 && s.charAt(i - 1) == c && !enclosureOpen[j] ||
-                    i > 0 && s.charAt(i - 1) == enc && !enclosureOpen[j] ||
-                    s.length() > i + 1 && s.charAt(i + 1) == c && enclosureOpen[j] ||
-                    s.length() > i + 1 && s.charAt(i + 1) == enc && enclosureOpen[j]
+    ChunkTask(long from, long to, long length) {
+      this.from = from;
+      this.to = to;
+      this.length = length;
+    }
 
-                );
-                enclosureOpen[j] = !enclosureOpen[j];
+    @Override
+    protected DelimiterDetector compute() {
+
+      try {
+
+        if (to - from >= 2 * chunkSize) {
+          long middle = lineStart(from + (to - from) / 2, to);
+          if (middle < to) {
+            ChunkTask head = new ChunkTask(from, middle, length);
+            ChunkTask tail = new ChunkTask(middle, to, length);
+            head.fork();
+            DelimiterDetector tailResult = tail.compute();
+            DelimiterDetector headResult = head.join();
+            headResult.append(tailResult);
+            return headResult;
+          }
+        }
 
+        DelimiterDetector d = newChunkDetector();
+        d.scanChunk(new RangeInputStream(source, from, to), to == length);
+        return d;
 
-              }
+      }
+      catch(IOException ex){
+        throw new RuntimeException(ex.getMessage(), ex);
+      }
 
-            }
-            // no enclosure logic, just delimiters
-            else {
+    }
 
-              if (sc == c) {
-                frequencies[j] += 1;
-              }
+  }
+
+  private boolean isConfident(long lineNr) {
+    return confidenceThreshold > 0 && lineNr >= minSampleLines && confidence(lineNr) >= confidenceThreshold;
+  }
+
+  // the margin of the longest current data streak over the longest one using a different delimiter,
+  // variants of the same delimiter with different enclosures are not competing with each other
+  private double confidence(long lineNr) {
+
+    if (lineNr == 0) {
+      return 0;
+    }
+
+    int leader = -1;
+    long leaderStreak = 0;
+    for (int j = 0; j < results.length; j++) {
+      if (!isActive(j)) continue;
+      long streak = results[j].getCurrentStreak();
+      if (streak > leaderStreak) {
+        leader = j;
+        leaderStreak = streak;
+      }
+    }
+
+    if (leader < 0) {
+      return 0;
+    }
+
+    long runnerUpStreak = 0;
+    for (int j = 0; j < results.length; j++) {
+      if (!isActive(j) || delimiterPatterns[j] == delimiterPatterns[leader]) continue;
+      runnerUpStreak = Math.max(runnerUpStreak, results[j].getCurrentStreak());
+    }
+
+    return (double) (leaderStreak - runnerUpStreak) / lineNr;
+  }
+
+  private void logOffendingLine(ByteLineReader byteLines, CharLineReader charLines) {
+    if (byteLines != null) {
+      log.logError("offending line: "+byteLines.line(charset));
+    }
+    else if (charLines != null) {
+      log.logError("offending line: "+charLines.line());
+    }
+  }
+
+  // the byte sequence of a pattern is unambiguous in single byte charsets and in UTF-8
+  private boolean canScanBytes() {
+
+    if (!EncodingDetector.isAsciiCompatible(charset)) {
+      return false;
+    }
+
+    CharsetEncoder encoder = charset.newEncoder();
+    for (String pattern : patterns) {
+      if (!encoder.canEncode(pattern)) return false;
+    }
+
+    return true;
+  }
+
+  // sets up the primitive candidate tables and the per line scan state
+  private void prepareCandidates() {
+
+    int resultCount = potentialResults.size();
+    results = potentialResults.toArray(new DetectionResult[resultCount]);
+
+    delimiterPatterns = new int[resultCount];
+    enclosurePatterns = new int[resultCount];
+    hasEnclosure = new boolean[resultCount];
+
+    ArrayList<String> distinct = new ArrayList<>();
+    for (int j = 0; j < resultCount; j++) {
+      DetectionResult d = results[j];
+      delimiterPatterns[j] = patternIndex(distinct, d.getDelimiterString());
+      hasEnclosure[j] = d.hasEnclosure();
+      enclosurePatterns[j] = hasEnclosure[j] ? patternIndex(distinct, d.getEnclosureString()) : -1;
+    }
+    patterns = distinct.toArray(new String[distinct.size()]);
+
+    words = Math.max(1, (resultCount + 63) >>> 6);
+    active = new long[words];
+    delimiterUsers = new long[patterns.length * words];
+    enclosureUsers = new long[patterns.length * words];
+
+    for (int j = 0; j < resultCount; j++) {
+      active[j >>> 6] |= 1L << j;
+      delimiterUsers[delimiterPatterns[j] * words + (j >>> 6)] |= 1L << j;
+      if (hasEnclosure[j]) {
+        enclosureUsers[enclosurePatterns[j] * words + (j >>> 6)] |= 1L << j;
+      }
+    }
+
+    frequencies = new long[resultCount];
+    enclosureOpen = new boolean[resultCount];
+    enclosureSeen = new boolean[resultCount];
+    enclosureConsistent = new boolean[resultCount];
+    delimiterEnd = new int[resultCount];
+    enclosureEnd = new int[resultCount];
+
+    recordContinued = new boolean[resultCount];
+    recordLength = new long[resultCount];
+    recordLines = new long[resultCount];
+    continuedRecords = 0;
+
+  }
+
+  private static int patternIndex(ArrayList<String> distinct, String pattern) {
+    int idx = distinct.indexOf(pattern);
+    if (idx < 0) {
+      idx = distinct.size();
+      distinct.add(pattern);
+    }
+    return idx;
+  }
 
+  // maps the symbols used by the patterns to classes, and builds the automaton over them
+  private void prepareMatcher(boolean byteScan) {
+
+    int[][] classSequences = new int[patterns.length][];
+    patternLengths = new int[patterns.length];
+    lowClasses = new int[256];
+    ArrayList<Character> high = new ArrayList<>();
+    int classes = 1;
+
+    if (byteScan) {
+      patternBytes = new byte[patterns.length][];
+      for (int p = 0; p < patterns.length; p++) {
+        byte[] bytes = patterns[p].getBytes(charset);
+        patternBytes[p] = bytes;
+        patternLengths[p] = bytes.length;
+        classSequences[p] = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+          int unit = bytes[i] & 0xFF;
+          if (lowClasses[unit] == 0) {
+            lowClasses[unit] = classes++;
+          }
+          classSequences[p][i] = lowClasses[unit];
+        }
+      }
+    }
+    else {
+      patternChars = new char[patterns.length][];
+      for (int p = 0; p < patterns.length; p++) {
+        char[] chars = patterns[p].toCharArray();
+        patternChars[p] = chars;
+        patternLengths[p] = chars.length;
+        classSequences[p] = new int[chars.length];
+        for (int i = 0; i < chars.length; i++) {
+          char unit = chars[i];
+          if (unit < 256) {
+            if (lowClasses[unit] == 0) {
+              lowClasses[unit] = classes++;
             }
+            classSequences[p][i] = lowClasses[unit];
+          }
+          else {
+            if (!high.contains(unit)) {
+              high.add(unit);
+            }
+            classSequences[p][i] = -1 - high.indexOf(unit);
           }
         }
+      }
+    }
 
-        // add the frequency counts to the results
-        for (int j = 0; j < remainingResults; j++) {
-          LineResult result = new LineResult();
-          result.streak = 1;
-          result.frequency = frequencies[j];
-          result.consistentEnclosure = enclosureConsistent[j] && !enclosureOpen[j];
-          result.enclosureSeen = enclosureSeen[j];
-          DetectionResult d = potentialResults.get(j);
-          d.addLineResult(result);
+    // chars beyond latin-1 are rare in candidates, they get a small table of their own
+    highChars = new char[high.size()];
+    highClasses = new int[high.size()];
+    for (int h = 0; h < highChars.length; h++) {
+      highChars[h] = high.get(h);
+      highClasses[h] = classes++;
+    }
+    for (int[] sequence : classSequences) {
+      for (int i = 0; i < sequence.length; i++) {
+        if (sequence[i] < 0) {
+          sequence[i] = highClasses[-1 - sequence[i]];
         }
+      }
+    }
 
-        // can any results be eliminated now?
-        for (int j = 0; j < potentialResults.size(); ) {
-          DetectionResult d = potentialResults.get(j);
+    matcher = new PatternMatcher(classSequences, classes);
 
-          if (isPlausible(d)) {
-            // check the next one
-            j++;
-          } else {
-            // remove it, recheck index
-            potentialResults.remove(j);
-          }
+  }
 
-        }
+  private boolean isActive(int j) {
+    return (active[j >>> 6] & (1L << j)) != 0;
+  }
+
+  private void scanLine(byte[] buf, int start, int end) {
+
+    startLine(start);
+
+    int[] delta = matcher.delta;
+    int[] outStart = matcher.outStart;
+    int classes = matcher.classes;
+    int state = 0;
+
+    // a single pass of the automaton updates all candidates
+    for (int i = start; i < end; i++) {
+      state = delta[state * classes + lowClasses[buf[i] & 0xFF]];
+      for (int o = outStart[state]; o < outStart[state + 1]; o++) {
+        int p = matcher.out[o];
+        matched(p, i + 1 - patternLengths[p], i + 1, buf, start, end);
       }
+    }
+
+    endLine(end - start);
+
+  }
+
+  private void scanLine(char[] buf, int start, int end) {
 
-      // final evaluation
-      for (int j = 0; j < potentialResults.size(); ) {
-        DetectionResult d = potentialResults.get(j);
-        d.evaluate();
-        if (qualifies(d)) {
-          j++;
-        } else {
-          potentialResults.remove(j);
+    startLine(start);
+
+    int[] delta = matcher.delta;
+    int[] outStart = matcher.outStart;
+    int classes = matcher.classes;
+    int state = 0;
+
+    // a single pass of the automaton updates all candidates
+    for (int i = start; i < end; i++) {
+      char unit = buf[i];
+      int symbol = 0;
+      if (unit < 256) {
+        symbol = lowClasses[unit];
+      }
+      else {
+        for (int h = 0; h < highChars.length; h++) {
+          if (highChars[h] == unit) {
+            symbol = highClasses[h];
+            break;
+          }
         }
       }
+      state = delta[state * classes + symbol];
+      for (int o = outStart[state]; o < outStart[state + 1]; o++) {
+        int p = matcher.out[o];
+        matched(p, i + 1 - patternLengths[p], i + 1, buf, start, end);
+      }
+    }
 
-      if (potentialResults.isEmpty()) {
-        if(log != null)
-          log.logError("All possible configurations dismissed. Inconsistent fields?");
-        return null;
+    endLine(end - start);
+
+  }
+
+  // pattern p was found at buf[from, to)
+  private void matched(int p, int from, int to, byte[] buf, int start, int end) {
+
+    int base = p * words;
+
+    for (int w = 0; w < words; w++) {
+      long hits = delimiterUsers[base + w] & active[w];
+      while (hits != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(hits);
+        hits &= hits - 1;
+        delimiterHit(j, from, to);
       }
+    }
 
-      return potentialResults.get(0);
+    for (int w = 0; w < words; w++) {
+      long hits = enclosureUsers[base + w] & active[w];
+      while (hits != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(hits);
+        hits &= hits - 1;
+        if (from < enclosureEnd[j]) continue;
+        // the neighbouring tokens only matter as long as the line is consistent
+        boolean adjacent = enclosureConsistent[j] && (enclosureOpen[j]
+            ? startsWith(buf, to, end, patternBytes[delimiterPatterns[j]]) || startsWith(buf, to, end, patternBytes[p])
+            : endsWith(buf, start, from, patternBytes[delimiterPatterns[j]]) || endsWith(buf, start, from, patternBytes[p]));
+        enclosureHit(j, to, from == start, to == end, adjacent);
+      }
     }
-    catch(ArrayIndexOutOfBoundsException ex1){
-      if (log != null){
-        log.logError("Inconsistent separators on line "+lineNr+". Line breaks in fields?");
-        if(s != null){
-          log.logError("offending line: "+s);
-        }
 
+  }
+
+  // pattern p was found at buf[from, to)
+  private void matched(int p, int from, int to, char[] buf, int start, int end) {
+
+    int base = p * words;
+
+    for (int w = 0; w < words; w++) {
+      long hits = delimiterUsers[base + w] & active[w];
+      while (hits != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(hits);
+        hits &= hits - 1;
+        delimiterHit(j, from, to);
       }
-      ex1.printStackTrace();
-      return null;
     }
-    catch(IOException ex2){
-      if (log != null){
-        log.logError("Error reading around line "+lineNr+". Invalid charset?");
-        if(s != null){
-          log.logError("offending line: "+s);
+
+    for (int w = 0; w < words; w++) {
+      long hits = enclosureUsers[base + w] & active[w];
+      while (hits != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(hits);
+        hits &= hits - 1;
+        if (from < enclosureEnd[j]) continue;
+        // the neighbouring tokens only matter as long as the line is consistent
+        boolean adjacent = enclosureConsistent[j] && (enclosureOpen[j]
+            ? startsWith(buf, to, end, patternChars[delimiterPatterns[j]]) || startsWith(buf, to, end, patternChars[p])
+            : endsWith(buf, start, from, patternChars[delimiterPatterns[j]]) || endsWith(buf, start, from, patternChars[p]));
+        enclosureHit(j, to, from == start, to == end, adjacent);
+      }
+    }
+
+  }
+
+  private static boolean startsWith(byte[] buf, int from, int end, byte[] pattern) {
+    if (end - from < pattern.length) return false;
+    for (int i = 0; i < pattern.length; i++) {
+      if (buf[from + i] != pattern[i]) return false;
+    }
+    return true;
+  }
+
+  private static boolean endsWith(byte[] buf, int start, int to, byte[] pattern) {
+    return to - start >= pattern.length && startsWith(buf, to - pattern.length, to, pattern);
+  }
+
+  private static boolean startsWith(char[] buf, int from, int end, char[] pattern) {
+    if (end - from < pattern.length) return false;
+    for (int i = 0; i < pattern.length; i++) {
+      if (buf[from + i] != pattern[i]) return false;
+    }
+    return true;
+  }
+
+  private static boolean endsWith(char[] buf, int start, int to, char[] pattern) {
+    return to - start >= pattern.length && startsWith(buf, to - pattern.length, to, pattern);
+  }
+
+  private void startLine(int start) {
+
+    Arrays.fill(delimiterEnd, start);
+    Arrays.fill(enclosureEnd, start);
+
+    // clear occurrences for each result, unless its record goes on
+    if (continuedRecords == 0) {
+      Arrays.fill(frequencies, 0);
+      Arrays.fill(enclosureOpen, false);
+      Arrays.fill(enclosureConsistent, true);
+      return;
+    }
+
+    for (int j = 0; j < results.length; j++) {
+      if (!recordContinued[j]) {
+        frequencies[j] = 0;
+        enclosureOpen[j] = false;
+        enclosureConsistent[j] = true;
+      }
+    }
+
+  }
+
+  // the delimiter of result j was found, overlapping occurrences count once
+  private void delimiterHit(int j, int from, int to) {
+
+    if (from < delimiterEnd[j]) {
+      return;
+    }
+    delimiterEnd[j] = to;
+
+    // if enclosure is involved, ignore enclosed delimiters
+    if (!hasEnclosure[j] || !enclosureOpen[j]) {
+      frequencies[j] += 1;
+    }
+
+  }
+
+  // the enclosure of result j was found: an opening enclosure must start the line or follow a delimiter
+  // or another enclosure, a closing one must end the line or precede a delimiter or another enclosure
+  private void enclosureHit(int j, int to, boolean first, boolean last, boolean adjacent) {
+
+    boolean open = enclosureOpen[j];
+    enclosureEnd[j] = to;
+    enclosureSeen[j] = true;
+    enclosureConsistent[j] = enclosureConsistent[j] && (first && !open || last && open || adjacent);
+    enclosureOpen[j] = !open;
+
+  }
+
+  private void endLine(int length) {
+
+    // add the frequency counts of finished records to the results, and cull those that can not qualify anymore
+    for (int w = 0; w < words; w++) {
+      long bits = active[w];
+      while (bits != 0) {
+        int j = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+
+        recordLines[j]++;
+        recordLength[j] += length + 1;
+
+        // the line break is part of an enclosed field
+        if (hasEnclosure[j] && enclosureOpen[j] && enclosureConsistent[j] && recordLength[j] <= maxRecordLength) {
+          if (!recordContinued[j]) {
+            recordContinued[j] = true;
+            continuedRecords++;
+          }
+          continue;
+        }
+
+        endRecord(j);
+
+        if (!isPlausible(results[j])) {
+          active[w] &= ~(1L << j);
         }
       }
-      ex2.printStackTrace();
+    }
+
+  }
+
+  private void endRecord(int j) {
+
+    results[j].addLine(frequencies[j], enclosureConsistent[j] && !enclosureOpen[j], enclosureSeen[j], recordLines[j]);
+
+    recordLines[j] = 0;
+    recordLength[j] = 0;
+    if (recordContinued[j]) {
+      recordContinued[j] = false;
+      continuedRecords--;
+    }
+
+  }
+
+  // records still open at the end of the input lack their closing enclosure
+  private void endInput() {
+    for (int j = 0; j < results.length; j++) {
+      if (recordContinued[j] && isActive(j)) {
+        endRecord(j);
+      }
+    }
+  }
+
+  private DetectionResult selectResult() {
+
+    // final evaluation
+    for (int j = 0; j < potentialResults.size(); ) {
+      DetectionResult d = potentialResults.get(j);
+      d.evaluate();
+      if (qualifies(d)) {
+        j++;
+      } else {
+        potentialResults.remove(j);
+      }
+    }
+
+    if (potentialResults.isEmpty()) {
+      if(log != null)
+        log.logError("All possible configurations dismissed. Inconsistent fields?");
       return null;
     }
 
+    // a delimiter that is part of a longer qualifying one, like | in ||, is superseded by it
+    DetectionResult selected = potentialResults.get(0);
+    for (DetectionResult d : potentialResults) {
+      if (d.getDelimiterString().length() > selected.getDelimiterString().length() &&
+          d.getDelimiterString().contains(selected.getDelimiterString()) &&
+          d.getDataLines() >= selected.getDataLines()) {
+        selected = d;
+      }
+    }
 
+    return selected;
   }
 
   private boolean qualifies(DetectionResult d) {
@@ -1,16 +1,24 @@
 package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
 
 import org.pentaho.di.core.logging.LogChannelInterface;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.RandomAccessSource;
 
 import java.io.BufferedReader;
+import java.io.InputStream;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 public class DelimiterDetectorBuilder {
 
-  private ArrayList<Character> delimiterCandidates = new ArrayList<>(5);
-  private ArrayList<Character> enclosureCandidates = new ArrayList<>(5);
+  private ArrayList<String> delimiterCandidates = new ArrayList<>(5);
+  private ArrayList<String> enclosureCandidates = new ArrayList<>(5);
   private BufferedReader input = null;
+  private InputStream byteInput = null;
+  private RandomAccessSource source = null;
+  private Charset charset = null;
   private LogChannelInterface log;
 
   private long maxBadHeaderLines = 10;
@@ -18,44 +26,98 @@ public class DelimiterDetectorBuilder {
 
   private long rowLimit = 0;
 
+  private double confidenceThreshold = 0;
+  private long minSampleLines = 0;
+
+  private long maxRecordLength = 64 * 1024;
+
+  private int parallelism = 1;
+  private ForkJoinPool pool = null;
+
   public DelimiterDetectorBuilder() {
   }
 
   public DelimiterDetectorBuilder withDelimiterCandidates(char ... candidates){
     delimiterCandidates.clear();
     for (char c : candidates) {
-      delimiterCandidates.add(c);
+      delimiterCandidates.add(String.valueOf(c));
     }
     return this;
   }
 
+  public DelimiterDetectorBuilder withDelimiterCandidates(String ... candidates){
+    delimiterCandidates.clear();
+    Collections.addAll(delimiterCandidates, candidates);
+    return this;
+  }
+
   public DelimiterDetectorBuilder withDelimiterCandidates(List<Character> candidates){
     delimiterCandidates.clear();
     for (char c : candidates) {
-      delimiterCandidates.add(c);
+      delimiterCandidates.add(String.valueOf(c));
     }
     return this;
   }
 
+  public DelimiterDetectorBuilder withDelimiterStrings(List<String> candidates){
+    delimiterCandidates.clear();
+    delimiterCandidates.addAll(candidates);
+    return this;
+  }
+
 
   public DelimiterDetectorBuilder withEnclosureCandidates(char ... candidates){
     enclosureCandidates.clear();
     for (char c : candidates) {
-      enclosureCandidates.add(c);
+      enclosureCandidates.add(String.valueOf(c));
     }
     return this;
   }
 
+  public DelimiterDetectorBuilder withEnclosureCandidates(String ... candidates){
+    enclosureCandidates.clear();
+    Collections.addAll(enclosureCandidates, candidates);
+    return this;
+  }
+
   public DelimiterDetectorBuilder withEnclosureCandidates(List<Character> candidates){
     enclosureCandidates.clear();
     for (char c : candidates) {
-      enclosureCandidates.add(c);
+      enclosureCandidates.add(String.valueOf(c));
     }
     return this;
   }
 
+  public DelimiterDetectorBuilder withEnclosureStrings(List<String> candidates){
+    enclosureCandidates.clear();
+    enclosureCandidates.addAll(candidates);
+    return this;
+  }
+
   public DelimiterDetectorBuilder withInput(BufferedReader input){
     this.input = input;
+    this.byteInput = null;
+    this.source = null;
+    this.charset = null;
+    return this;
+  }
+
+  public DelimiterDetectorBuilder withInput(InputStream input, Charset charset){
+    this.byteInput = input;
+    this.charset = charset;
+    this.input = null;
+    this.source = null;
+    return this;
+  }
+
+  /**
+   * Random access input can be scanned in parallel, see withParallelism().
+   */
+  public DelimiterDetectorBuilder withInput(RandomAccessSource source, Charset charset){
+    this.source = source;
+    this.charset = charset;
+    this.input = null;
+    this.byteInput = null;
     return this;
   }
 
@@ -74,11 +136,24 @@ public class DelimiterDetectorBuilder {
     DelimiterDetector d = new DelimiterDetector();
     d.setDelimiterCandidates(delimiterCandidates);
     d.setEnclosureCandidates(enclosureCandidates);
-    d.setInput(input);
+    if (source != null){
+      d.setInput(source, charset);
+    }
+    else if (byteInput != null){
+      d.setInput(byteInput, charset);
+    }
+    else{
+      d.setInput(input);
+    }
     d.setMaxBadHeaderLines(maxBadHeaderLines);
     d.setMaxBadFooterLines(maxBadFooterLines);
     d.setLog(log);
     d.setRowLimit(rowLimit);
+    d.setConfidenceThreshold(confidenceThreshold);
+    d.setMinSampleLines(minSampleLines);
+    d.setMaxRecordLength(maxRecordLength);
+    d.setParallelism(parallelism);
+    d.setPool(pool);
     return d;
   }
 
@@ -87,4 +162,36 @@ public class DelimiterDetectorBuilder {
     rowLimit = limitRows;
     return this;
   }
+
+  public DelimiterDetectorBuilder withConfidenceThreshold(double threshold, long minSampleLines) {
+    this.confidenceThreshold = threshold;
+    this.minSampleLines = minSampleLines;
+    return this;
+  }
+
+  public DelimiterDetectorBuilder withMaxRecordLength(long maxRecordLength) {
+    this.maxRecordLength = maxRecordLength;
+    return this;
+  }
+
+  /**
+   * Scans random access input in chunks on this many threads. This only applies to full scans,
+   * without row limit or confidence threshold, of input in an ASCII compatible charset.
+   */
+  public DelimiterDetectorBuilder withParallelism(int parallelism) {
+    this.parallelism = parallelism;
+    return this;
+  }
+
+  /**
+   * Scans in parallel on a pool shared with others, at the pool's parallelism, rather than on a
+   * pool of its own. The pool is left running.
+   */
+  public DelimiterDetectorBuilder withPool(ForkJoinPool pool) {
+    this.pool = pool;
+    if (pool != null) {
+      this.parallelism = pool.getParallelism();
+    }
+    return this;
+  }
 }
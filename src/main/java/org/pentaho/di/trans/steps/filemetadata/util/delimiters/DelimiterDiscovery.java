@@ -0,0 +1,225 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import org.pentaho.di.trans.steps.filemetadata.util.encoding.EncodingDetector;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds delimiter candidates in a single pass over a sample. Every line contributes a
+ * histogram of the symbols it contains, and a symbol becomes a candidate if its count per
+ * line stays the same over a long enough run of lines, which is what the detector looks for
+ * in a delimiter. Letters, digits and enclosure candidates are never considered.
+ *
+ * Only symbols below 256 are counted. For ASCII compatible charsets the raw bytes are
+ * counted, so in UTF-8 only ASCII symbols can be discovered.
+ */
+public class DelimiterDiscovery {
+
+  private static final int SYMBOLS = 256;
+
+  private final Charset charset;
+  private final long rowLimit;
+
+  // a discovered symbol must keep its count for at least this many lines, and for this fraction of all lines
+  private long minRun = 2;
+  private double minRunFraction = 0.25;
+  private int maxDiscovered = 4;
+
+  // per line histogram, and the symbols it contains
+  private final int[] counts = new int[SYMBOLS];
+  private int[] touched = new int[SYMBOLS];
+  private int touchedCount = 0;
+  private int[] previous = new int[SYMBOLS];
+  private int previousCount = 0;
+
+  // current and longest run of a constant, non-zero count per symbol
+  private final int[] runCount = new int[SYMBOLS];
+  private final long[] runLength = new long[SYMBOLS];
+  private final int[] bestCount = new int[SYMBOLS];
+  private final long[] bestRun = new long[SYMBOLS];
+
+  private long lines = 0;
+
+  public DelimiterDiscovery(Charset charset, long rowLimit) {
+    this.charset = charset;
+    this.rowLimit = rowLimit;
+  }
+
+  public void setMinRun(long minRun, double minRunFraction) {
+    this.minRun = minRun;
+    this.minRunFraction = minRunFraction;
+  }
+
+  public void setMaxDiscovered(int maxDiscovered) {
+    this.maxDiscovered = maxDiscovered;
+  }
+
+  /**
+   * @param input                the sample to scan
+   * @param configuredCandidates candidates given by the user, kept in front if they occur in the sample
+   * @param enclosureCandidates  enclosures, these are never delimiter candidates
+   * @return the candidates to hand to the detector, in priority order
+   */
+  public ArrayList<String> discover(InputStream input, List<String> configuredCandidates, List<String> enclosureCandidates) throws IOException {
+
+    boolean byteScan = EncodingDetector.isAsciiCompatible(charset);
+    boolean singleByte = byteScan && charset.newEncoder().maxBytesPerChar() == 1;
+
+    if (byteScan) {
+      ByteLineReader reader = new ByteLineReader(input);
+      while ((rowLimit <= 0 || lines < rowLimit) && reader.next()) {
+        byte[] buf = reader.buffer;
+        for (int i = reader.start; i < reader.end; i++) {
+          count(buf[i] & 0xFF);
+        }
+        endLine();
+      }
+    }
+    else {
+      CharLineReader reader = new CharLineReader(new InputStreamReader(input, charset));
+      while ((rowLimit <= 0 || lines < rowLimit) && reader.next()) {
+        char[] buf = reader.buffer;
+        for (int i = reader.start; i < reader.end; i++) {
+          if (buf[i] < SYMBOLS) {
+            count(buf[i]);
+          }
+        }
+        endLine();
+      }
+    }
+
+    ArrayList<String> candidates = new ArrayList<>(configuredCandidates.size() + maxDiscovered);
+    for (String c : configuredCandidates) {
+      if (candidates.contains(c)) continue;
+      // symbols that are not counted, and multi-char candidates, can not be ruled out
+      int s = c.length() == 1 ? symbol(c.charAt(0), byteScan, singleByte) : -1;
+      if (s < 0 || bestRun[s] > 0) {
+        candidates.add(c);
+      }
+    }
+
+    long threshold = Math.max(minRun, (long) Math.ceil(lines * minRunFraction));
+
+    ArrayList<String> discovered = new ArrayList<>(maxDiscovered + 1);
+    ArrayList<Integer> discoveredSymbols = new ArrayList<>(maxDiscovered + 1);
+
+    for (int s = 0; s < SYMBOLS; s++) {
+
+      if (bestRun[s] < threshold) continue;
+      // multi-byte sequences are not symbols of their own
+      if (byteScan && !singleByte && s >= 0x80) continue;
+
+      Character c = decode(s, byteScan);
+      if (c == null || c == '\n' || c == '\r' || Character.isLetterOrDigit(c)) continue;
+      String candidate = String.valueOf(c);
+      if (candidates.contains(candidate) || enclosureCandidates.contains(candidate)) continue;
+
+      // longer runs first, higher counts break ties
+      int pos = discovered.size();
+      while (pos > 0 && ranksBefore(s, discoveredSymbols.get(pos - 1))) {
+        pos--;
+      }
+      discovered.add(pos, candidate);
+      discoveredSymbols.add(pos, s);
+      if (discovered.size() > maxDiscovered) {
+        discovered.remove(maxDiscovered);
+        discoveredSymbols.remove(maxDiscovered);
+      }
+    }
+
+    candidates.addAll(discovered);
+    return candidates;
+
+  }
+
+  /**
+   * @return the number of lines scanned by the last discovery
+   */
+  public long getScannedLines() {
+    return lines;
+  }
+
+  // spaces are stable in plain text too, so they rank behind all other symbols
+  private boolean ranksBefore(int s, int other) {
+    if ((s == ' ') != (other == ' ')) {
+      return other == ' ';
+    }
+    return bestRun[s] > bestRun[other] || bestRun[s] == bestRun[other] && bestCount[s] > bestCount[other];
+  }
+
+  private void count(int s) {
+    if (counts[s]++ == 0) {
+      touched[touchedCount++] = s;
+    }
+  }
+
+  private void endLine() {
+
+    // symbols of this line extend or restart their runs
+    for (int i = 0; i < touchedCount; i++) {
+      int s = touched[i];
+      int c = counts[s];
+      if (runCount[s] == c) {
+        runLength[s]++;
+      }
+      else {
+        runCount[s] = c;
+        runLength[s] = 1;
+      }
+      if (runLength[s] > bestRun[s]) {
+        bestRun[s] = runLength[s];
+        bestCount[s] = c;
+      }
+    }
+
+    // symbols of the previous line missing on this one end their runs
+    for (int i = 0; i < previousCount; i++) {
+      int s = previous[i];
+      if (counts[s] == 0) {
+        runCount[s] = 0;
+        runLength[s] = 0;
+      }
+    }
+
+    for (int i = 0; i < touchedCount; i++) {
+      counts[touched[i]] = 0;
+    }
+
+    int[] swap = previous;
+    previous = touched;
+    previousCount = touchedCount;
+    touched = swap;
+
+    touchedCount = 0;
+    lines++;
+
+  }
+
+  private Character decode(int s, boolean byteScan) {
+    if (!byteScan || s < 0x80) {
+      return (char) s;
+    }
+    String decoded = new String(new byte[]{(byte) s}, charset);
+    return (decoded.length() == 1 && decoded.charAt(0) != '\uFFFD') ? decoded.charAt(0) : null;
+  }
+
+  private int symbol(char c, boolean byteScan, boolean singleByte) {
+    if (c >= SYMBOLS) {
+      return -1;
+    }
+    if (!byteScan || c < 0x80) {
+      return c;
+    }
+    if (!singleByte) {
+      return -1;
+    }
+    byte[] encoded = String.valueOf(c).getBytes(charset);
+    return encoded.length == 1 ? encoded[0] & 0xFF : -1;
+  }
+
+}
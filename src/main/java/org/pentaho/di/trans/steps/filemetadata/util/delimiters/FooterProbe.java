@@ -0,0 +1,165 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import org.pentaho.di.trans.steps.filemetadata.util.encoding.EncodingDetector;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.RandomAccessSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * Counts the footer lines of a file by reading its tail only, or from a tail read already. Records in the tail are
+ * classified against the dialect detected at the head of the file: a record is a data record
+ * if it has the same delimiter frequency and consistent enclosures. All lines following
+ * the last data record are footers. As in the detector, a record spans lines while an
+ * enclosure is open.
+ *
+ * The tail is aligned on single-byte line breaks, so the file must use an ASCII compatible charset.
+ */
+public class FooterProbe {
+
+  private final String delimiter;
+  private final String enclosure;
+  private final boolean hasEnclosure;
+  private final long dataLineFrequency;
+  private final Charset charset;
+  private final long maxFooterLines;
+
+  // state of the current record
+  private long frequency;
+  private boolean open;
+  private boolean consistent;
+
+  public FooterProbe(DelimiterDetector.DetectionResult dialect, Charset charset, long maxFooterLines) {
+    this.delimiter = dialect.getDelimiterString();
+    this.hasEnclosure = dialect.hasEnclosure();
+    this.enclosure = dialect.getEnclosureString();
+    this.dataLineFrequency = dialect.getDataLineFrequency();
+    this.charset = charset;
+    this.maxFooterLines = maxFooterLines;
+  }
+
+  /**
+   * @param source    the file to probe
+   * @param tailSize  the number of bytes to read from the end of the file
+   * @return the number of footer lines, or -1 if they can not be determined within the tail
+   */
+  public long probe(RandomAccessSource source, int tailSize) throws IOException {
+
+    if (!EncodingDetector.isAsciiCompatible(charset)) {
+      return -1;
+    }
+
+    long length = source.length();
+    long position = Math.max(0, length - tailSize);
+    byte[] tail = new byte[(int) (length - position)];
+
+    int n = 0;
+    while (n < tail.length) {
+      int bytesRead = source.read(position + n, tail, n, tail.length - n);
+      if (bytesRead < 0) break;
+      n += bytesRead;
+    }
+
+    return countFooters(tail, 0, n, position > 0);
+
+  }
+
+  /**
+   * @param tail   holds the end of the file, starting on a line start
+   * @param offset the position of the tail in the array
+   * @param length the number of bytes of the tail
+   * @return the number of footer lines, or -1 if they can not be determined within the tail
+   */
+  public long probe(byte[] tail, int offset, int length) throws IOException {
+
+    if (!EncodingDetector.isAsciiCompatible(charset)) {
+      return -1;
+    }
+    return countFooters(tail, offset, length, false);
+
+  }
+
+  long countFooters(byte[] tail, int offset, int length, boolean partialFirstLine) throws IOException {
+
+    ByteLineReader lines = new ByteLineReader(new ByteArrayInputStream(tail, offset, length));
+
+    // the first line is cut off, unless the tail covers the file
+    if (partialFirstLine && !lines.next()) {
+      return -1;
+    }
+
+    boolean dataSeen = false;
+    long footers = 0;
+    long recordLines = 0;
+
+    while (lines.next()) {
+
+      if (recordLines == 0) {
+        frequency = 0;
+        open = false;
+        consistent = true;
+      }
+      scanLine(lines.line(charset));
+      recordLines++;
+
+      // the line break is part of an enclosed field
+      if (hasEnclosure && open && consistent) {
+        continue;
+      }
+
+      if (frequency == dataLineFrequency && (!hasEnclosure || consistent && !open)) {
+        dataSeen = true;
+        footers = 0;
+      }
+      else {
+        footers += recordLines;
+      }
+      recordLines = 0;
+    }
+
+    // an unterminated record is no data
+    footers += recordLines;
+
+    if (!dataSeen || footers > maxFooterLines) {
+      return -1;
+    }
+
+    return footers;
+
+  }
+
+  // same rules the detector applies to each line
+  private void scanLine(String line) {
+
+    int delimiterEnd = 0;
+    int enclosureEnd = 0;
+
+    int length = line.length();
+    for (int i = 0; i < length; i++) {
+
+      if (i >= delimiterEnd && line.startsWith(delimiter, i)) {
+        delimiterEnd = i + delimiter.length();
+        if (!hasEnclosure || !open) {
+          frequency++;
+        }
+      }
+
+      if (hasEnclosure && i >= enclosureEnd && line.startsWith(enclosure, i)) {
+        int to = i + enclosure.length();
+        boolean adjacent = open
+            ? line.startsWith(delimiter, to) || line.startsWith(enclosure, to)
+            : endsWith(line, i, delimiter) || endsWith(line, i, enclosure);
+        consistent = consistent && (i == 0 && !open || to == length && open || adjacent);
+        open = !open;
+        enclosureEnd = to;
+      }
+    }
+
+  }
+
+  private static boolean endsWith(String line, int to, String token) {
+    return to >= token.length() && line.startsWith(token, to - token.length());
+  }
+
+}
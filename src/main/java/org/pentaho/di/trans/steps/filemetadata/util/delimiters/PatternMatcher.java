@@ -0,0 +1,105 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Aho-Corasick automaton matching all delimiter and enclosure patterns in a single pass.
+ *
+ * Patterns are given as sequences of symbol classes. Class 0 stands for all symbols that
+ * do not occur in any pattern. The transition table is complete, so each input symbol costs
+ * a single lookup: state = delta[state * classes + class].
+ *
+ * The patterns ending in a state are out[outStart[state]] to out[outStart[state + 1] - 1],
+ * longer patterns first.
+ */
+class PatternMatcher {
+
+  final int classes;
+  final int[] delta;
+  final int[] outStart;
+  final int[] out;
+
+  PatternMatcher(int[][] patterns, int classes) {
+
+    this.classes = classes;
+
+    int maxStates = 1;
+    for (int[] pattern : patterns) {
+      maxStates += pattern.length;
+    }
+
+    // build the trie
+    int[] next = new int[maxStates * classes];
+    Arrays.fill(next, -1);
+    ArrayList<ArrayList<Integer>> outputs = new ArrayList<>(maxStates);
+    outputs.add(new ArrayList<Integer>(1));
+    int states = 1;
+
+    for (int p = 0; p < patterns.length; p++) {
+      int state = 0;
+      for (int symbol : patterns[p]) {
+        int t = next[state * classes + symbol];
+        if (t < 0) {
+          t = states++;
+          next[state * classes + symbol] = t;
+          outputs.add(new ArrayList<Integer>(1));
+        }
+        state = t;
+      }
+      outputs.get(state).add(p);
+    }
+
+    // breadth first, completing transitions along the failure links
+    int[] fail = new int[states];
+    ArrayDeque<Integer> queue = new ArrayDeque<>();
+
+    for (int c = 0; c < classes; c++) {
+      int t = next[c];
+      if (t < 0) {
+        next[c] = 0;
+      }
+      else {
+        fail[t] = 0;
+        queue.add(t);
+      }
+    }
+
+    while (!queue.isEmpty()) {
+      int state = queue.poll();
+      outputs.get(state).addAll(outputs.get(fail[state]));
+      for (int c = 0; c < classes; c++) {
+        int t = next[state * classes + c];
+        int fallback = next[fail[state] * classes + c];
+        if (t < 0) {
+          next[state * classes + c] = fallback;
+        }
+        else {
+          fail[t] = fallback;
+          queue.add(t);
+        }
+      }
+    }
+
+    delta = Arrays.copyOf(next, states * classes);
+
+    outStart = new int[states + 1];
+    int total = 0;
+    for (int s = 0; s < states; s++) {
+      outStart[s] = total;
+      total += outputs.get(s).size();
+    }
+    outStart[states] = total;
+
+    out = new int[total];
+    for (int s = 0; s < states; s++) {
+      ArrayList<Integer> list = outputs.get(s);
+      for (int i = 0; i < list.size(); i++) {
+        out[outStart[s] + i] = list.get(i);
+      }
+    }
+
+  }
+
+}
@@ -0,0 +1,186 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Splits delimited input into records for a detected dialect, with delimiters and enclosures of any
+ * length. A field starting with the enclosure may contain the delimiter and line breaks, and a doubled
+ * enclosure inside it stands for the enclosure itself.
+ *
+ * After next() returned true, field i of the current record is found in getChars()[getStarts()[i], getEnds()[i]).
+ * The buffers are reused, so their contents are only valid until the next call.
+ */
+public class RecordTokenizer {
+
+  private static final char[] LINE_BREAK = {'\n'};
+
+  private final CharLineReader lines;
+  private final char[] delimiter;
+  private final char[] enclosure;
+  private long skipLines;
+
+  private char[] chars = new char[1024];
+  private int length = 0;
+  private int[] starts = new int[16];
+  private int[] ends = new int[16];
+  private int fieldCount = 0;
+
+  /**
+   * @param enclosure the enclosure, null or empty if fields are not enclosed
+   * @param skipLines the number of lines to skip before the first record, such as bad headers
+   */
+  public RecordTokenizer(Reader input, String delimiter, String enclosure, long skipLines) {
+    this.lines = new CharLineReader(input);
+    this.delimiter = delimiter.toCharArray();
+    this.enclosure = (enclosure == null || enclosure.isEmpty()) ? null : enclosure.toCharArray();
+    this.skipLines = skipLines;
+  }
+
+  /**
+   * Reads the next record.
+   *
+   * @return false at the end of the input
+   */
+  public boolean next() throws IOException {
+
+    while (skipLines > 0) {
+      skipLines--;
+      if (!lines.next()) return false;
+    }
+
+    if (!lines.next()) {
+      return false;
+    }
+
+    length = 0;
+    fieldCount = 0;
+    boolean fieldStart = true;
+    boolean enclosed = false;
+    startField();
+
+    // while an enclosed field is open, the record goes on with the next line
+    while (true) {
+
+      char[] buf = lines.buffer;
+      int end = lines.end;
+      int i = lines.start;
+      while (i < end) {
+
+        if (enclosure != null && matches(buf, i, end, enclosure)) {
+          if (enclosed) {
+            i += enclosure.length;
+            if (matches(buf, i, end, enclosure)) {
+              append(enclosure, 0, enclosure.length);
+              i += enclosure.length;
+            }
+            else {
+              enclosed = false;
+            }
+            continue;
+          }
+          if (fieldStart) {
+            enclosed = true;
+            fieldStart = false;
+            i += enclosure.length;
+            continue;
+          }
+        }
+
+        if (!enclosed && matches(buf, i, end, delimiter)) {
+          endField();
+          startField();
+          fieldStart = true;
+          i += delimiter.length;
+          continue;
+        }
+
+        // copy the run up to the next char that may start a delimiter or enclosure
+        int run = i + 1;
+        while (run < end && buf[run] != delimiter[0] && (enclosure == null || buf[run] != enclosure[0])) {
+          run++;
+        }
+        append(buf, i, run - i);
+        fieldStart = false;
+        i = run;
+      }
+
+      if (!enclosed || !lines.next()) break;
+      append(LINE_BREAK, 0, 1);
+    }
+
+    endField();
+    return true;
+
+  }
+
+  /**
+   * @return the number of fields of the current record
+   */
+  public int getFieldCount() {
+    return fieldCount;
+  }
+
+  /**
+   * @return the buffer holding the fields of the current record
+   */
+  public char[] getChars() {
+    return chars;
+  }
+
+  public int[] getStarts() {
+    return starts;
+  }
+
+  public int[] getEnds() {
+    return ends;
+  }
+
+  /**
+   * @return field i of the current record as a string
+   */
+  public String getField(int i) {
+    return new String(chars, starts[i], ends[i] - starts[i]);
+  }
+
+  /**
+   * @return the fields of the current record as strings
+   */
+  public String[] getFields() {
+    String[] fields = new String[fieldCount];
+    for (int i = 0; i < fieldCount; i++) {
+      fields[i] = getField(i);
+    }
+    return fields;
+  }
+
+  private void startField() {
+    if (fieldCount == starts.length) {
+      starts = Arrays.copyOf(starts, fieldCount * 2);
+      ends = Arrays.copyOf(ends, fieldCount * 2);
+    }
+    starts[fieldCount] = length;
+  }
+
+  private void endField() {
+    ends[fieldCount++] = length;
+  }
+
+  private void append(char[] buf, int start, int count) {
+    if (length + count > chars.length) {
+      chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
+    }
+    System.arraycopy(buf, start, chars, length, count);
+    length += count;
+  }
+
+  private static boolean matches(char[] buf, int pos, int end, char[] pattern) {
+    if (end - pos < pattern.length) return false;
+    for (int i = 0; i < pattern.length; i++) {
+      if (buf[pos + i] != pattern[i]) return false;
+    }
+    return true;
+  }
+
+}
@@ -43,4 +43,13 @@ public class EncodingDetector {
 
   }
 
+  /**
+   * @return true if the charset encodes all ASCII characters as the same single byte,
+   * and never uses bytes < 0x80 as part of multi-byte sequences
+   */
+  public static boolean isAsciiCompatible(Charset charset) {
+    String name = charset.name();
+    return name.equals("US-ASCII") || name.equals("UTF-8") || name.startsWith("ISO-8859-") || name.startsWith("windows-125");
+  }
+
 }
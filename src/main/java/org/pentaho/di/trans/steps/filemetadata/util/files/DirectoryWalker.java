@@ -0,0 +1,95 @@
+package org.pentaho.di.trans.steps.filemetadata.util.files;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.FileSystemException;
+import org.apache.commons.vfs2.FileType;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.regex.Pattern;
+
+/**
+ * Hands out the files of a directory one at a time, optionally descending into its subdirectories.
+ * Only the children of one directory are listed at a time, and only the subdirectories still to be
+ * visited are remembered, so large trees are never listed up front. Files are selected by their base
+ * name, which must match the include pattern, if any, and must not match the exclude pattern, if any.
+ * Files come in name order, each subdirectory right after the files of its parent.
+ */
+public final class DirectoryWalker {
+
+  private static final Comparator<FileObject> BY_NAME = new Comparator<FileObject>() {
+    @Override
+    public int compare(FileObject a, FileObject b) {
+      return a.getName().getBaseName().compareTo(b.getName().getBaseName());
+    }
+  };
+
+  private final Pattern include;
+  private final Pattern exclude;
+  private final boolean recursive;
+
+  private final ArrayDeque<FileObject> directories = new ArrayDeque<>();
+  private final ArrayList<FileObject> subdirectories = new ArrayList<>();
+  private FileObject[] children = new FileObject[0];
+  private int next = 0;
+
+  /**
+   * @param directory the directory to walk
+   * @param include   the pattern base names must match, null for all
+   * @param exclude   the pattern base names must not match, null for none
+   * @param recursive true to walk subdirectories too
+   */
+  public DirectoryWalker(FileObject directory, Pattern include, Pattern exclude, boolean recursive) {
+    this.include = include;
+    this.exclude = exclude;
+    this.recursive = recursive;
+    directories.add(directory);
+  }
+
+  /**
+   * @return the next selected file, or null if there are no more
+   */
+  public FileObject next() throws FileSystemException {
+
+    while (true) {
+
+      while (next < children.length) {
+        FileObject child = children[next];
+        // drop the reference, so files handed out can be collected
+        children[next++] = null;
+        FileType type = child.getType();
+        if (type == FileType.FOLDER) {
+          if (recursive) {
+            subdirectories.add(child);
+          }
+        }
+        else if (type == FileType.FILE && isSelected(child.getName().getBaseName())) {
+          return child;
+        }
+      }
+
+      // the subdirectories of the directory listed last are visited next, in name order
+      for (int i = subdirectories.size() - 1; i >= 0; i--) {
+        directories.push(subdirectories.get(i));
+      }
+      subdirectories.clear();
+
+      FileObject directory = directories.poll();
+      if (directory == null) {
+        return null;
+      }
+      children = directory.getChildren();
+      Arrays.sort(children, BY_NAME);
+      next = 0;
+
+    }
+
+  }
+
+  private boolean isSelected(String name) {
+    return (include == null || include.matcher(name).matches()) && (exclude == null || !exclude.matcher(name).matches());
+  }
+
+}
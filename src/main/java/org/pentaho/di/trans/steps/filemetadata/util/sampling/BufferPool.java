@@ -0,0 +1,53 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.util.ArrayDeque;
+
+/**
+ * Keeps byte buffers of one size for reuse, so reading ahead many files does not allocate a large
+ * buffer for each. Acquiring never blocks: if the pool is empty, a new buffer is made, and buffers
+ * released to a full pool are dropped. Callers bound how many buffers are out at a time.
+ */
+public final class BufferPool {
+
+  private final int bufferSize;
+  private final int maxPooled;
+  private final ArrayDeque<byte[]> buffers = new ArrayDeque<>();
+
+  /**
+   * @param bufferSize the size of the buffers
+   * @param maxPooled  the number of released buffers kept
+   */
+  public BufferPool(int bufferSize, int maxPooled) {
+    this.bufferSize = bufferSize;
+    this.maxPooled = maxPooled;
+  }
+
+  /**
+   * @return a buffer of the pool's size, with arbitrary content
+   */
+  public synchronized byte[] acquire() {
+    byte[] buffer = buffers.poll();
+    return buffer != null ? buffer : new byte[bufferSize];
+  }
+
+  /**
+   * Returns a buffer to the pool. Buffers of other sizes are ignored.
+   */
+  public synchronized void release(byte[] buffer) {
+    if (buffer != null && buffer.length == bufferSize && buffers.size() < maxPooled) {
+      buffers.push(buffer);
+    }
+  }
+
+  public int getBufferSize() {
+    return bufferSize;
+  }
+
+  /**
+   * @return the number of buffers ready for reuse
+   */
+  public synchronized int size() {
+    return buffers.size();
+  }
+
+}
@@ -0,0 +1,97 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Fingerprints the content of a file by digesting its length and the bytes at its head and tail,
+ * so changed files are told apart without reading them in full. Files only read from the head are
+ * fingerprinted by their length and head, which is the same fingerprint for files no longer than
+ * the edges.
+ */
+public final class ContentFingerprint {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private ContentFingerprint() {
+  }
+
+  /**
+   * @param source   the file
+   * @param edgeSize the number of bytes digested at the head and at the tail
+   * @return the fingerprint as a hex string
+   */
+  public static String of(RandomAccessSource source, int edgeSize) throws IOException {
+
+    long length = source.length();
+    MessageDigest digest = newDigest(length);
+    byte[] buffer = new byte[edgeSize];
+
+    digestRange(digest, source, 0, (int) Math.min(edgeSize, length), buffer);
+    if (length > edgeSize) {
+      long tail = Math.max(edgeSize, length - edgeSize);
+      digestRange(digest, source, tail, (int) (length - tail), buffer);
+    }
+
+    return toHex(digest.digest());
+
+  }
+
+  /**
+   * @param in       the content of the file, read up to edgeSize bytes
+   * @param length   the length of the file
+   * @param edgeSize the number of bytes digested at the head
+   * @return the fingerprint as a hex string
+   */
+  public static String of(InputStream in, long length, int edgeSize) throws IOException {
+
+    MessageDigest digest = newDigest(length);
+    byte[] buffer = new byte[edgeSize];
+
+    int filled = 0;
+    while (filled < edgeSize) {
+      int read = in.read(buffer, filled, edgeSize - filled);
+      if (read < 0) break;
+      filled += read;
+    }
+    digest.update(buffer, 0, filled);
+
+    return toHex(digest.digest());
+
+  }
+
+  private static MessageDigest newDigest(long length) {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-1");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e.getMessage(), e);
+    }
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      digest.update((byte) (length >>> shift));
+    }
+    return digest;
+  }
+
+  private static void digestRange(MessageDigest digest, RandomAccessSource source, long position, int length, byte[] buffer) throws IOException {
+    int done = 0;
+    while (done < length) {
+      int read = source.read(position + done, buffer, 0, length - done);
+      if (read < 0) break;
+      digest.update(buffer, 0, read);
+      done += read;
+    }
+  }
+
+  private static String toHex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[2 * i] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[2 * i + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+}
@@ -0,0 +1,36 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Random access to local files. Positional reads on a file channel do not
+ * interfere with each other, so a single instance can be shared by threads.
+ */
+public class FileChannelSource implements RandomAccessSource {
+
+  private final FileChannel channel;
+
+  public FileChannelSource(Path path) throws IOException {
+    channel = FileChannel.open(path, StandardOpenOption.READ);
+  }
+
+  @Override
+  public long length() throws IOException {
+    return channel.size();
+  }
+
+  @Override
+  public int read(long position, byte[] buffer, int offset, int length) throws IOException {
+    return channel.read(ByteBuffer.wrap(buffer, offset, length), position);
+  }
+
+  @Override
+  public void close() throws IOException {
+    channel.close();
+  }
+
+}
@@ -0,0 +1,20 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * A file that can be read at arbitrary positions.
+ */
+public interface RandomAccessSource extends Closeable {
+
+  long length() throws IOException;
+
+  /**
+   * Reads up to length bytes starting at the given file position.
+   *
+   * @return the number of bytes read, -1 if the position is at or beyond the end of the file
+   */
+  int read(long position, byte[] buffer, int offset, int length) throws IOException;
+
+}
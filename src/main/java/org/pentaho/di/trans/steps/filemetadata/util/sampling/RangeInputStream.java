@@ -0,0 +1,54 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams the bytes of a source between two positions. Closing the stream leaves the source open,
+ * so several ranges of the same source can be streamed at once.
+ */
+public class RangeInputStream extends InputStream {
+
+  private final RandomAccessSource source;
+  private final long end;
+  private long position;
+
+  public RangeInputStream(RandomAccessSource source, long start, long end) {
+    this.source = source;
+    this.position = start;
+    this.end = end;
+  }
+
+  @Override
+  public int read() throws IOException {
+    byte[] b = new byte[1];
+    int n = read(b, 0, 1);
+    return n < 0 ? -1 : b[0] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] b, int off, int len) throws IOException {
+
+    if (len == 0) {
+      return 0;
+    }
+    if (position >= end) {
+      return -1;
+    }
+
+    int n = source.read(position, b, off, (int) Math.min(len, end - position));
+    if (n > 0) {
+      position += n;
+    }
+    return n;
+
+  }
+
+  @Override
+  public long skip(long n) {
+    long skipped = Math.max(0, Math.min(n, end - position));
+    position += skipped;
+    return skipped;
+  }
+
+}
@@ -0,0 +1,200 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Keeps the bytes read from a file in memory, so several detection stages can
+ * consume the same input while the underlying file is only read once.
+ *
+ * Each call to newInputStream() replays the file from the beginning. Bytes are pulled
+ * from the source lazily, as far as the furthest reader gets. Should a reader go beyond
+ * maxSize bytes, it continues on a private stream opened from the source, so the buffer
+ * stays bounded for full-file scans of large files.
+ *
+ * The head of the file may be read ahead with prefetch(), into a buffer taken from a pool, so the
+ * bytes are at hand when another thread gets to detection.
+ */
+public class SampleBuffer {
+
+  public interface Source {
+    InputStream open() throws IOException;
+  }
+
+  private static final int INITIAL_SIZE = 64 * 1024;
+  private static final int READ_CHUNK_SIZE = 16 * 1024;
+
+  private final Source source;
+  private final int maxSize;
+
+  private InputStream input;
+  private byte[] buffer = new byte[0];
+  private int size = 0;
+  private boolean eof = false;
+
+  public SampleBuffer(Source source, int maxSize) {
+    this.source = source;
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * @param buffer the buffer to read into first, replaced by larger copies if more bytes are read
+   */
+  public SampleBuffer(Source source, int maxSize, byte[] buffer) {
+    this.source = source;
+    this.maxSize = maxSize;
+    this.buffer = buffer;
+  }
+
+  /**
+   * Wraps content that has been read already.
+   */
+  public SampleBuffer(byte[] content) {
+    this.source = null;
+    this.maxSize = content.length;
+    this.buffer = content;
+    this.size = content.length;
+    this.eof = true;
+  }
+
+  /**
+   * @return a stream replaying the file from its first byte
+   */
+  public InputStream newInputStream() {
+    return new ReplayStream();
+  }
+
+  /**
+   * Reads the file up to length bytes, or up to its end, right away.
+   */
+  public void prefetch(int length) throws IOException {
+    while (size < length && fill()) {
+      // keep reading
+    }
+  }
+
+  /**
+   * @return the number of bytes currently held in memory
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * @return true if the entire file is held in memory
+   */
+  public boolean isComplete() {
+    return eof;
+  }
+
+  public void close() throws IOException {
+    if (input != null) {
+      input.close();
+      input = null;
+    }
+  }
+
+  // reads more bytes from the source, returns false if no more bytes can be buffered
+  private boolean fill() throws IOException {
+
+    if (eof || size >= maxSize) {
+      return false;
+    }
+
+    if (input == null) {
+      input = source.open();
+    }
+
+    if (size >= buffer.length) {
+      int newLength = (int) Math.min(maxSize, Math.max(INITIAL_SIZE, buffer.length * 2L));
+      buffer = Arrays.copyOf(buffer, newLength);
+    }
+
+    int bytesRead = input.read(buffer, size, Math.min(READ_CHUNK_SIZE, Math.min(buffer.length, maxSize) - size));
+    if (bytesRead < 0) {
+      eof = true;
+      close();
+      return false;
+    }
+
+    size += bytesRead;
+    return true;
+
+  }
+
+  private class ReplayStream extends InputStream {
+
+    private long position = 0;
+    private InputStream overflow = null;
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int n = read(b, 0, 1);
+      return n < 0 ? -1 : b[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+
+      if (len == 0) {
+        return 0;
+      }
+
+      int total = 0;
+
+      while (total < len) {
+
+        if (overflow != null) {
+          int n = overflow.read(b, off + total, len - total);
+          if (n < 0) break;
+          total += n;
+          position += n;
+          continue;
+        }
+
+        if (position < size) {
+          int n = (int) Math.min(len - total, size - position);
+          System.arraycopy(buffer, (int) position, b, off + total, n);
+          total += n;
+          position += n;
+          continue;
+        }
+
+        if (!fill()) {
+          if (eof) break;
+          // buffer is exhausted, continue on a private stream
+          overflow = source.open();
+          skipFully(overflow, position);
+        }
+
+      }
+
+      return (total == 0) ? -1 : total;
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (overflow != null) {
+        overflow.close();
+        overflow = null;
+      }
+    }
+
+    private void skipFully(InputStream in, long n) throws IOException {
+      while (n > 0) {
+        long skipped = in.skip(n);
+        if (skipped <= 0) {
+          if (in.read() < 0) {
+            throw new IOException("Unexpected end of file while skipping to position " + position);
+          }
+          skipped = 1;
+        }
+        n -= skipped;
+      }
+    }
+
+  }
+
+}
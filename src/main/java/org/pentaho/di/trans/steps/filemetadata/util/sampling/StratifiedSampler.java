@@ -0,0 +1,141 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Samples a file at its head, at evenly spaced interior positions, and at its tail,
+ * instead of reading it front to back. Interior and tail windows are re-synchronised
+ * to the next line start, and all windows but the tail end on a line break, so the
+ * concatenated sample consists of complete lines.
+ *
+ * Line breaks are located on the byte level, so the file must use a charset that
+ * encodes them as single ASCII bytes.
+ */
+public class StratifiedSampler {
+
+  private final RandomAccessSource source;
+  private final int windowSize;
+  private final int interiorWindows;
+
+  private int headLength = 0;
+  private int tailOffset = -1;
+  private boolean wholeFile = false;
+
+  public StratifiedSampler(RandomAccessSource source, int windowSize, int interiorWindows) {
+    this.source = source;
+    this.windowSize = windowSize;
+    this.interiorWindows = interiorWindows;
+  }
+
+  /**
+   * @return the concatenated windows, or the entire file if it is not larger than all windows together
+   */
+  public byte[] sample() throws IOException {
+
+    long length = source.length();
+
+    if (length <= (long) windowSize * (interiorWindows + 2)) {
+      byte[] content = new byte[(int) length];
+      int n = readFully(0, content);
+      wholeFile = true;
+      headLength = n;
+      tailOffset = -1;
+      return (n == content.length) ? content : Arrays.copyOf(content, n);
+    }
+
+    ByteArrayOutputStream out = new ByteArrayOutputStream(windowSize * (interiorWindows + 2));
+    byte[] window = new byte[windowSize];
+
+    // head: from the first byte up to the last complete line
+    int n = readFully(0, window);
+    int end = lastLineEnd(window, 0, n);
+    if (end < 0) {
+      // lines are longer than a window, nothing to stratify
+      out.write(window, 0, n);
+      headLength = n;
+      return out.toByteArray();
+    }
+    out.write(window, 0, end);
+    headLength = end;
+
+    // interior windows, one byte early, so a window starting exactly on a line start is recognized
+    for (int k = 1; k <= interiorWindows; k++) {
+      long position = k * (length - windowSize) / (interiorWindows + 1) - 1;
+      n = readFully(position, window);
+      int start = nextLineStart(window, n);
+      end = lastLineEnd(window, Math.max(start, 0), n);
+      if (start < 0 || end <= start) continue;
+      out.write(window, start, end - start);
+    }
+
+    // tail: from the first line start to the end of the file
+    n = readFully(length - windowSize, window);
+    int start = nextLineStart(window, n);
+    tailOffset = out.size();
+    if (start >= 0) {
+      out.write(window, start, n - start);
+    }
+
+    return out.toByteArray();
+
+  }
+
+  /**
+   * @return the number of bytes at the start of the sample that come from the head window
+   */
+  public int getHeadLength() {
+    return headLength;
+  }
+
+  /**
+   * @return the position in the sample where the tail window begins, -1 if there is no separate tail window
+   */
+  public int getTailOffset() {
+    return tailOffset;
+  }
+
+  /**
+   * @return true if the sample is the entire file
+   */
+  public boolean isWholeFile() {
+    return wholeFile;
+  }
+
+  private int readFully(long position, byte[] buffer) throws IOException {
+    int total = 0;
+    while (total < buffer.length) {
+      int n = source.read(position + total, buffer, total, buffer.length - total);
+      if (n < 0) break;
+      total += n;
+    }
+    return total;
+  }
+
+  // index of the first byte following the first line break, -1 if there is none
+  private static int nextLineStart(byte[] buffer, int length) {
+    for (int i = 0; i < length; i++) {
+      byte b = buffer[i];
+      if (b == '\n') {
+        return i + 1;
+      }
+      if (b == '\r') {
+        if (i + 1 == length) return -1; // might be the first half of \r\n
+        return (buffer[i + 1] == '\n') ? i + 2 : i + 1;
+      }
+    }
+    return -1;
+  }
+
+  // index following the last line break at or after from, -1 if there is none
+  private static int lastLineEnd(byte[] buffer, int from, int length) {
+    for (int i = length - 1; i >= from; i--) {
+      if (buffer[i] == '\n' || buffer[i] == '\r') {
+        return i + 1;
+      }
+    }
+    return -1;
+  }
+
+}
@@ -0,0 +1,41 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import org.apache.commons.vfs2.RandomAccessContent;
+
+import java.io.IOException;
+
+/**
+ * Random access to VFS content. The underlying content keeps a single file pointer,
+ * so reads are serialized.
+ */
+public class VfsRandomAccessSource implements RandomAccessSource {
+
+  private final RandomAccessContent content;
+
+  public VfsRandomAccessSource(RandomAccessContent content) {
+    this.content = content;
+  }
+
+  @Override
+  public synchronized long length() throws IOException {
+    return content.length();
+  }
+
+  @Override
+  public synchronized int read(long position, byte[] buffer, int offset, int length) throws IOException {
+    long available = content.length() - position;
+    if (available <= 0) {
+      return -1;
+    }
+    int n = (int) Math.min(length, available);
+    content.seek(position);
+    content.readFully(buffer, offset, n);
+    return n;
+  }
+
+  @Override
+  public synchronized void close() throws IOException {
+    content.close();
+  }
+
+}
@@ -0,0 +1,114 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+/**
+ * Estimates the number of distinct values with a HyperLogLog sketch. The sketch has 2^precision
+ * registers of a byte each, however many values it sees, and its standard error is about
+ * 1.04 / sqrt(2^precision). Small counts are estimated from the empty registers instead.
+ *
+ * Sketches of the same precision merge into the sketch of all their values.
+ */
+public final class HyperLogLog {
+
+  public static final int MIN_PRECISION = 4;
+  public static final int MAX_PRECISION = 18;
+
+  private final int precision;
+  private final byte[] registers;
+
+  public HyperLogLog(int precision) {
+    if (precision < MIN_PRECISION || precision > MAX_PRECISION) {
+      throw new IllegalArgumentException("HyperLogLog precision must be between " + MIN_PRECISION + " and " + MAX_PRECISION + ": " + precision);
+    }
+    this.precision = precision;
+    this.registers = new byte[1 << precision];
+  }
+
+  /**
+   * Adds the value in buf[start, end).
+   */
+  public void add(char[] buf, int start, int end) {
+    addHash(hash(buf, start, end));
+  }
+
+  /**
+   * Adds a value by its 64 bit hash.
+   */
+  public void addHash(long hash) {
+    int index = (int) (hash >>> (64 - precision));
+    // the marker bit caps the rank for hashes whose remaining bits are all zero
+    long rest = (hash << precision) | (1L << (precision - 1));
+    byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+    if (rank > registers[index]) {
+      registers[index] = rank;
+    }
+  }
+
+  /**
+   * Adds the values of a sketch of the same precision.
+   */
+  public void merge(HyperLogLog other) {
+    if (other.precision != precision) {
+      throw new IllegalArgumentException("Can not merge HyperLogLog sketches of precision " + precision + " and " + other.precision);
+    }
+    for (int i = 0; i < registers.length; i++) {
+      if (other.registers[i] > registers[i]) {
+        registers[i] = other.registers[i];
+      }
+    }
+  }
+
+  /**
+   * @return the estimated number of distinct values
+   */
+  public long estimate() {
+
+    int m = registers.length;
+    double sum = 0;
+    int zeros = 0;
+    for (byte register : registers) {
+      sum += 1.0 / (1L << register);
+      if (register == 0) zeros++;
+    }
+
+    double estimate = alpha(m) * m * m / sum;
+    if (estimate <= 2.5 * m && zeros > 0) {
+      estimate = m * Math.log((double) m / zeros);
+    }
+    return Math.round(estimate);
+
+  }
+
+  public int getPrecision() {
+    return precision;
+  }
+
+  /**
+   * @return a 64 bit hash of buf[start, end), FNV-1a over the chars, mixed with the MurmurHash3 finalizer
+   */
+  public static long hash(char[] buf, int start, int end) {
+    long h = 0xcbf29ce484222325L;
+    for (int i = start; i < end; i++) {
+      h = (h ^ buf[i]) * 0x100000001b3L;
+    }
+    h ^= h >>> 33;
+    h *= 0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return h;
+  }
+
+  private static double alpha(int m) {
+    switch (m) {
+      case 16:
+        return 0.673;
+      case 32:
+        return 0.697;
+      case 64:
+        return 0.709;
+      default:
+        return 0.7213 / (1 + 1.079 / m);
+    }
+  }
+
+}
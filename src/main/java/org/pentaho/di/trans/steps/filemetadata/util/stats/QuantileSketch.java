@@ -0,0 +1,189 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Estimates quantiles of a stream of values with a KLL sketch (Karnin, Lang and Liberty). Values are
+ * kept in a hierarchy of compactors, the values of level h standing for 2^h values each. A full
+ * compactor sorts its values and promotes every other one, starting at a random offset, to the next
+ * level. Lower levels get geometrically smaller capacities, so the sketch retains about 3k values
+ * however many it sees, and a rank is off by about 1.7 / k of the count.
+ *
+ * Sketches with the same k merge into the sketch of all their values. The coin for the offsets is
+ * seeded, so the same values in the same order give the same estimates.
+ */
+public final class QuantileSketch {
+
+  public static final int DEFAULT_K = 200;
+
+  private static final double CAPACITY_RATIO = 2.0 / 3.0;
+  private static final long SEED = 0x5eed;
+
+  private final int k;
+  private final Random coin = new Random(SEED);
+
+  private double[][] levels = new double[1][];
+  private int[] sizes = new int[1];
+  private int height = 1;
+  private int retained = 0;
+  private int maxRetained;
+
+  private long count = 0;
+  private double min = Double.NaN;
+  private double max = Double.NaN;
+
+  public QuantileSketch(int k) {
+    if (k < 8) {
+      throw new IllegalArgumentException("Quantile sketch k must be at least 8: " + k);
+    }
+    this.k = k;
+    levels[0] = new double[k];
+    maxRetained = capacity(0);
+  }
+
+  /**
+   * Adds a value, NaN is ignored.
+   */
+  public void add(double value) {
+    if (Double.isNaN(value)) {
+      return;
+    }
+    count++;
+    if (count == 1 || value < min) min = value;
+    if (count == 1 || value > max) max = value;
+    append(0, value);
+    if (retained >= maxRetained) {
+      compress();
+    }
+  }
+
+  /**
+   * Adds the values of a sketch with the same k.
+   */
+  public void merge(QuantileSketch other) {
+    if (other.k != k) {
+      throw new IllegalArgumentException("Can not merge quantile sketches with k " + k + " and " + other.k);
+    }
+    if (other.count == 0) {
+      return;
+    }
+    while (height < other.height) {
+      grow();
+    }
+    for (int h = 0; h < other.height; h++) {
+      for (int i = 0; i < other.sizes[h]; i++) {
+        append(h, other.levels[h][i]);
+      }
+    }
+    min = (count == 0) ? other.min : Math.min(min, other.min);
+    max = (count == 0) ? other.max : Math.max(max, other.max);
+    count += other.count;
+    while (retained >= maxRetained) {
+      compress();
+    }
+  }
+
+  /**
+   * @return the number of values added
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the estimated value at the given fraction of the values, NaN if there are none
+   */
+  public double quantile(double fraction) {
+
+    if (count == 0) {
+      return Double.NaN;
+    }
+    if (fraction <= 0) {
+      return min;
+    }
+    if (fraction >= 1) {
+      return max;
+    }
+
+    final double[] values = new double[retained];
+    final long[] weights = new long[retained];
+    Integer[] order = new Integer[retained];
+    int n = 0;
+    for (int h = 0; h < height; h++) {
+      for (int i = 0; i < sizes[h]; i++) {
+        values[n] = levels[h][i];
+        weights[n] = 1L << h;
+        order[n] = n;
+        n++;
+      }
+    }
+    Arrays.sort(order, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Double.compare(values[a], values[b]);
+      }
+    });
+
+    // the weights add up to the count, compactions keep them
+    double rank = fraction * count;
+    long cumulative = 0;
+    for (Integer i : order) {
+      cumulative += weights[i];
+      if (cumulative >= rank) {
+        return values[i];
+      }
+    }
+    return max;
+
+  }
+
+  private int capacity(int level) {
+    return Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, height - 1 - level)));
+  }
+
+  private void append(int level, double value) {
+    if (sizes[level] == levels[level].length) {
+      levels[level] = Arrays.copyOf(levels[level], Math.max(8, levels[level].length * 2));
+    }
+    levels[level][sizes[level]++] = value;
+    retained++;
+  }
+
+  private void grow() {
+    levels = Arrays.copyOf(levels, height + 1);
+    sizes = Arrays.copyOf(sizes, height + 1);
+    levels[height] = new double[Math.max(8, k / 2)];
+    height++;
+    maxRetained = 0;
+    for (int h = 0; h < height; h++) {
+      maxRetained += capacity(h);
+    }
+  }
+
+  // compacts full levels from the bottom up until the sketch is within its size again
+  private void compress() {
+    for (int h = 0; h < height; h++) {
+      if (sizes[h] < capacity(h)) continue;
+      if (h + 1 == height) {
+        grow();
+      }
+      double[] level = levels[h];
+      int size = sizes[h];
+      Arrays.sort(level, 0, size);
+      // an odd value out stays on its level
+      int start = size % 2;
+      int offset = coin.nextBoolean() ? 1 : 0;
+      for (int i = start + offset; i < size; i += 2) {
+        append(h + 1, level[i]);
+      }
+      retained -= size - start;
+      sizes[h] = start;
+      if (retained < maxRetained) {
+        return;
+      }
+    }
+  }
+
+}
@@ -0,0 +1,246 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Finds the most frequent values with the space-saving algorithm of Metwally et al. A fixed number of
+ * counters is kept. A value without a counter takes over the one with the smallest count, inheriting
+ * that count as its error. A reported count is never below the true count and overestimates it by at
+ * most its error, which itself is at most the number of values divided by the number of counters.
+ *
+ * Counters live in parallel arrays, ordered by count in a min-heap and found through a hash table.
+ */
+public final class SpaceSaving {
+
+  private final int capacity;
+
+  // counters, each value in an array of its own that is reused when the counter is taken over
+  private final char[][] values;
+  private final int[] lengths;
+  private final int[] hashes;
+  private final long[] counts;
+  private final long[] errors;
+  private int size = 0;
+  private long total = 0;
+
+  // min-heap of counters by count, with the position of each counter in it
+  private final int[] heap;
+  private final int[] positions;
+
+  // open addressing table of counter + 1
+  private final int[] table;
+  private final int mask;
+
+  public SpaceSaving(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("Space-saving capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    values = new char[capacity][];
+    lengths = new int[capacity];
+    hashes = new int[capacity];
+    counts = new long[capacity];
+    errors = new long[capacity];
+    heap = new int[capacity];
+    positions = new int[capacity];
+    int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+    table = new int[tableSize];
+    mask = tableSize - 1;
+  }
+
+  /**
+   * Counts the value in buf[start, end).
+   */
+  public void add(char[] buf, int start, int end) {
+
+    total++;
+    int length = end - start;
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + buf[i];
+    }
+
+    int slot = home(hash);
+    while (table[slot] != 0) {
+      int c = table[slot] - 1;
+      if (hashes[c] == hash && lengths[c] == length && equals(c, buf, start, length)) {
+        counts[c]++;
+        siftDown(positions[c]);
+        return;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int c;
+    if (size < capacity) {
+      c = size++;
+      counts[c] = 1;
+      errors[c] = 0;
+      heap[c] = c;
+      positions[c] = c;
+      siftUp(c);
+    }
+    else {
+      // the counter with the smallest count goes to the new value
+      c = heap[0];
+      remove(c);
+      slot = home(hash);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+      errors[c] = counts[c];
+      counts[c]++;
+      siftDown(0);
+    }
+
+    if (values[c] == null || values[c].length < length) {
+      values[c] = new char[Math.max(length, 8)];
+    }
+    System.arraycopy(buf, start, values[c], 0, length);
+    lengths[c] = length;
+    hashes[c] = hash;
+    table[slot] = c + 1;
+
+  }
+
+  /**
+   * @return the number of values counted
+   */
+  public long getTotal() {
+    return total;
+  }
+
+  /**
+   * @return the counters of the k most frequent values, by descending count
+   */
+  public Integer[] getTop(int k) {
+    Integer[] top = new Integer[size];
+    for (int c = 0; c < size; c++) {
+      top[c] = c;
+    }
+    Arrays.sort(top, new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        if (counts[a] != counts[b]) return (counts[a] > counts[b]) ? -1 : 1;
+        if (errors[a] != errors[b]) return (errors[a] < errors[b]) ? -1 : 1;
+        return getValue(a).compareTo(getValue(b));
+      }
+    });
+    return Arrays.copyOf(top, Math.min(k, size));
+  }
+
+  public String getValue(int counter) {
+    return new String(values[counter], 0, lengths[counter]);
+  }
+
+  /**
+   * @return the count of a counter, at least the true count of its value
+   */
+  public long getCount(int counter) {
+    return counts[counter];
+  }
+
+  /**
+   * @return the most the count of a counter may exceed the true count of its value
+   */
+  public long getError(int counter) {
+    return errors[counter];
+  }
+
+  /**
+   * @return the k most frequent values as a JSON array of objects with value, count and error
+   */
+  public String toJson(int k) {
+    StringBuilder json = new StringBuilder("[");
+    for (Integer c : getTop(k)) {
+      if (json.length() > 1) json.append(',');
+      json.append("{\"value\":\"");
+      char[] value = values[c];
+      for (int i = 0; i < lengths[c]; i++) {
+        char ch = value[i];
+        if (ch == '"' || ch == '\\') {
+          json.append('\\').append(ch);
+        }
+        else if (ch < ' ') {
+          json.append(String.format("\\u%04x", (int) ch));
+        }
+        else {
+          json.append(ch);
+        }
+      }
+      json.append("\",\"count\":").append(counts[c]).append(",\"error\":").append(errors[c]).append('}');
+    }
+    return json.append(']').toString();
+  }
+
+  private void siftUp(int pos) {
+    int c = heap[pos];
+    while (pos > 0) {
+      int parent = (pos - 1) >>> 1;
+      if (counts[heap[parent]] <= counts[c]) break;
+      move(heap[parent], pos);
+      pos = parent;
+    }
+    move(c, pos);
+  }
+
+  private void siftDown(int pos) {
+    int c = heap[pos];
+    while (true) {
+      int child = 2 * pos + 1;
+      if (child >= size) break;
+      if (child + 1 < size && counts[heap[child + 1]] < counts[heap[child]]) {
+        child++;
+      }
+      if (counts[heap[child]] >= counts[c]) break;
+      move(heap[child], pos);
+      pos = child;
+    }
+    move(c, pos);
+  }
+
+  private void move(int c, int pos) {
+    heap[pos] = c;
+    positions[c] = pos;
+  }
+
+  // takes the counter out of the table, moving later counters of its probe sequence back
+  private void remove(int c) {
+
+    int i = home(hashes[c]);
+    while (table[i] != c + 1) {
+      i = (i + 1) & mask;
+    }
+
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (table[j] == 0) {
+        table[i] = 0;
+        return;
+      }
+      int k = home(hashes[table[j] - 1]);
+      // counters whose home lies cyclically in (i, j] stay where they are
+      boolean stays = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+      if (!stays) {
+        table[i] = table[j];
+        i = j;
+      }
+    }
+
+  }
+
+  private int home(int hash) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private boolean equals(int c, char[] buf, int start, int length) {
+    char[] value = values[c];
+    for (int i = 0; i < length; i++) {
+      if (value[i] != buf[start + i]) return false;
+    }
+    return true;
+  }
+
+}
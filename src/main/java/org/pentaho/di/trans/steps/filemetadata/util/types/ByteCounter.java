@@ -0,0 +1,126 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Counts the bytes chars take up in a charset. UTF-8, UTF-16, UTF-32 and single byte charsets are
+ * counted directly, other charsets are encoded into a reused buffer.
+ */
+final class ByteCounter {
+
+  private static final int UTF_8 = 0;
+  private static final int UTF_32 = 1;
+  private static final int FIXED = 2;
+  private static final int ENCODED = 3;
+
+  private final int mode;
+  private final int bytesPerChar;
+
+  private CharsetEncoder encoder;
+  private CharBuffer chars;
+  private ByteBuffer bytes;
+
+  ByteCounter(Charset charset) {
+
+    String name = charset.name();
+    if (name.equals("UTF-8")) {
+      mode = UTF_8;
+      bytesPerChar = 0;
+    }
+    else if (name.startsWith("UTF-32")) {
+      mode = UTF_32;
+      bytesPerChar = 4;
+    }
+    else if (name.startsWith("UTF-16")) {
+      mode = FIXED;
+      bytesPerChar = 2;
+    }
+    else {
+      encoder = charset.newEncoder();
+      if (encoder.maxBytesPerChar() <= 1) {
+        mode = FIXED;
+        bytesPerChar = 1;
+      }
+      else {
+        mode = ENCODED;
+        bytesPerChar = 0;
+        encoder.onMalformedInput(CodingErrorAction.REPLACE);
+        encoder.onUnmappableCharacter(CodingErrorAction.REPLACE);
+        chars = CharBuffer.allocate(256);
+        bytes = ByteBuffer.allocate(1024);
+      }
+    }
+
+  }
+
+  /**
+   * @return the number of bytes buf[start, end) takes up
+   */
+  int count(char[] buf, int start, int end) {
+
+    switch (mode) {
+      case FIXED:
+        return (end - start) * bytesPerChar;
+      case UTF_32:
+        int codePoints = 0;
+        for (int i = start; i < end; i++) {
+          if (!Character.isLowSurrogate(buf[i]) || i == start || !Character.isHighSurrogate(buf[i - 1])) {
+            codePoints++;
+          }
+        }
+        return codePoints * 4;
+      case UTF_8:
+        int count = 0;
+        for (int i = start; i < end; i++) {
+          char c = buf[i];
+          if (c < 0x80) {
+            count++;
+          }
+          else if (c < 0x800) {
+            count += 2;
+          }
+          else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(buf[i + 1])) {
+            count += 4;
+            i++;
+          }
+          else {
+            count += 3;
+          }
+        }
+        return count;
+      default:
+        return encode(buf, start, end);
+    }
+
+  }
+
+  private int encode(char[] buf, int start, int end) {
+
+    int length = end - start;
+    if (chars.capacity() < length) {
+      chars = CharBuffer.allocate(Math.max(length, chars.capacity() * 2));
+    }
+    chars.clear();
+    chars.put(buf, start, length);
+    chars.flip();
+
+    encoder.reset();
+    int count = 0;
+    boolean flushing = false;
+    while (true) {
+      bytes.clear();
+      CoderResult result = flushing ? encoder.flush(bytes) : encoder.encode(chars, bytes, true);
+      count += bytes.position();
+      if (result.isOverflow()) continue;
+      if (flushing) return count;
+      flushing = true;
+    }
+
+  }
+
+}
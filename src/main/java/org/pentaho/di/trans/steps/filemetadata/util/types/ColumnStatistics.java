@@ -0,0 +1,392 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.HyperLogLog;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.QuantileSketch;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.SpaceSaving;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Date;
+
+/**
+ * Collects statistics of a column in the same pass as its type evaluation, in constant memory: missing
+ * and empty values, byte lengths in the charset of the file, the smallest and largest value, and
+ * optionally an estimate of the number of distinct values, the most frequent values and quantiles.
+ *
+ * The type of the column is only known once all values are seen, so the range of values is kept for
+ * every reading the advice may settle on: as text, as numbers with either decimal symbol, and as dates
+ * of each mask. A reading drops out at the first value it can not convert. Values are compared trimmed
+ * and reported as they appear in the file. Quantile sketches are kept for the numeric and date readings
+ * from their first value on, and dropped along with their reading.
+ *
+ * Dates are read with the parsers of the candidates, so the statistics belong to the thread evaluating them.
+ */
+public class ColumnStatistics {
+
+  private final TypeCandidates candidates;
+  private final ByteCounter byteCounter;
+
+  private long count = 0;
+  private long nullCount = 0;
+  private long emptyCount = 0;
+  private long totalBytes = 0;
+  private int maxBytes = 0;
+
+  private final Range text = new Range(0);
+  private final Range usNumbers;
+  private final Range euNumbers;
+  private final Range[] dates;
+
+  private final HyperLogLog distinct;
+  private final SpaceSaving frequent;
+
+  private char[] scratch = new char[64];
+
+  public ColumnStatistics(TypeCandidates candidates, Charset charset) {
+    this(candidates, charset, 0, 0, 0);
+  }
+
+  /**
+   * @param distinctPrecision the precision of the sketch counting distinct values, 0 not to count them
+   * @param frequentCapacity  the number of counters finding the most frequent values, 0 not to find them
+   * @param quantileK         the k of the sketches estimating quantiles of numbers and dates, 0 not to estimate them
+   */
+  public ColumnStatistics(TypeCandidates candidates, Charset charset, int distinctPrecision, int frequentCapacity, int quantileK) {
+    this.candidates = candidates;
+    this.distinct = (distinctPrecision > 0) ? new HyperLogLog(distinctPrecision) : null;
+    this.frequent = (frequentCapacity > 0) ? new SpaceSaving(frequentCapacity) : null;
+    this.byteCounter = new ByteCounter(charset);
+    usNumbers = new Range(quantileK);
+    euNumbers = new Range(quantileK);
+    dates = new Range[candidates.dateParsers.length];
+    for (int i = 0; i < dates.length; i++) {
+      dates[i] = new Range(quantileK);
+    }
+  }
+
+  /**
+   * Adds a value, null for a missing one.
+   */
+  public void add(String value) {
+    if (value == null) {
+      addNull();
+      return;
+    }
+    int length = value.length();
+    if (scratch.length < length) {
+      scratch = new char[Math.max(length, scratch.length * 2)];
+    }
+    value.getChars(0, length, scratch, 0);
+    add(scratch, 0, length);
+  }
+
+  /**
+   * Adds the value in buf[start, end).
+   */
+  public void add(char[] buf, int start, int end) {
+
+    count++;
+    int bytes = byteCounter.count(buf, start, end);
+    totalBytes += bytes;
+    maxBytes = Math.max(maxBytes, bytes);
+
+    while (start < end && buf[start] <= ' ') {
+      start++;
+    }
+    while (end > start && buf[end - 1] <= ' ') {
+      end--;
+    }
+    if (start == end) {
+      emptyCount++;
+      return;
+    }
+
+    text.addText(buf, start, end);
+
+    if (distinct != null) {
+      distinct.add(buf, start, end);
+    }
+    if (frequent != null) {
+      frequent.add(buf, start, end);
+    }
+
+    if (usNumbers.viable) {
+      usNumbers.add(readNumber(buf, start, end, '.', ','), buf, start, end);
+    }
+    if (euNumbers.viable) {
+      euNumbers.add(readNumber(buf, start, end, ',', '.'), buf, start, end);
+    }
+
+    for (int i = 0; i < dates.length; i++) {
+      if (!dates[i].viable) continue;
+      DateParser parser = candidates.dateParsers[i];
+      if (parser.match(buf, start, end) == TypeCandidates.VALID) {
+        dates[i].add(parser.getTime(), buf, start, end);
+      }
+      else {
+        dates[i].add(Double.NaN, buf, start, end);
+      }
+    }
+
+  }
+
+  /**
+   * Adds a missing value, as in a record with fewer fields than the column count.
+   */
+  public void addNull() {
+    nullCount++;
+  }
+
+  /**
+   * @return the number of values, empty ones included and missing ones excluded
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the number of missing values
+   */
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * @return the number of empty or blank values
+   */
+  public long getEmptyCount() {
+    return emptyCount;
+  }
+
+  /**
+   * @return the average number of bytes of the values, 0 if there are none
+   */
+  public double getAverageByteLength() {
+    return (count == 0) ? 0 : (double) totalBytes / count;
+  }
+
+  /**
+   * @return the largest number of bytes of a value
+   */
+  public int getMaxByteLength() {
+    return maxBytes;
+  }
+
+  /**
+   * @return the estimated number of distinct values, empty ones excluded, or -1 if they are not counted
+   */
+  public long getDistinctCount() {
+    return (distinct == null) ? -1 : distinct.estimate();
+  }
+
+  /**
+   * @return the k most frequent values, empty ones excluded, as a JSON array of objects with value, count
+   * and error, or null if they are not looked for
+   */
+  public String getTopValues(int k) {
+    return (frequent == null) ? null : frequent.toJson(k);
+  }
+
+  /**
+   * @return the smallest value read as the given type, or null if there is none
+   */
+  public String getMin(ValueMetaInterface type) {
+    Range range = select(type);
+    return (range == null) ? null : range.getMin();
+  }
+
+  /**
+   * @return the largest value read as the given type, or null if there is none
+   */
+  public String getMax(ValueMetaInterface type) {
+    Range range = select(type);
+    return (range == null) ? null : range.getMax();
+  }
+
+  /**
+   * @return the estimated value at the given fraction of the values read as the given type, a Long for
+   * integers, a Double for numbers and a Date for dates, or null if there is none
+   */
+  public Object getQuantile(ValueMetaInterface type, double fraction) {
+    Range range = select(type);
+    if (range == null || range.sketch == null || range.sketch.getCount() == 0) {
+      return null;
+    }
+    double value = range.sketch.quantile(fraction);
+    switch (type.getType()) {
+      case ValueMetaInterface.TYPE_INTEGER:
+        return Math.round(value);
+      case ValueMetaInterface.TYPE_NUMBER:
+        return value;
+      case ValueMetaInterface.TYPE_DATE:
+        return new Date((long) value);
+      default:
+        return null;
+    }
+  }
+
+  private Range select(ValueMetaInterface type) {
+    Range range;
+    switch (type.getType()) {
+      case ValueMetaInterface.TYPE_INTEGER:
+      case ValueMetaInterface.TYPE_NUMBER:
+        String symbol = type.getDecimalSymbol();
+        char decimal = (symbol == null || symbol.isEmpty()) ? candidates.decimalSeparator : symbol.charAt(0);
+        range = (decimal == ',') ? euNumbers : usNumbers;
+        break;
+      case ValueMetaInterface.TYPE_DATE:
+        range = null;
+        for (int i = 0; i < dates.length; i++) {
+          if (candidates.dateParsers[i].getMask().equals(type.getConversionMask())) {
+            range = dates[i];
+          }
+        }
+        break;
+      default:
+        range = text;
+    }
+    return (range != null && range.viable) ? range : null;
+  }
+
+  // reads a number ignoring grouping symbols, blanks and currency signs, NaN if it is none
+  static double readNumber(char[] buf, int start, int end, char decimal, char grouping) {
+
+    long mantissa = 0;
+    int scale = 0;
+    boolean digits = false;
+    boolean decimals = false;
+    boolean signed = false;
+    boolean negative = false;
+
+    for (int pos = start; pos < end; pos++) {
+      char c = buf[pos];
+
+      if (c >= '0' && c <= '9') {
+        digits = true;
+        if (mantissa < 100000000000000000L) {
+          mantissa = mantissa * 10 + (c - '0');
+          if (decimals) scale--;
+        }
+        else if (!decimals) {
+          scale++;
+        }
+      }
+      else if (c == decimal && !decimals) {
+        decimals = true;
+      }
+      else if (c == grouping && digits && !decimals) {
+        continue;
+      }
+      else if ((c == '-' || c == '+') && !digits && !decimals && !signed) {
+        signed = true;
+        negative = (c == '-');
+      }
+      else if ((c == 'E' || c == 'e') && digits) {
+        // the exponent takes up the rest of the value
+        pos++;
+        boolean negativeExponent = false;
+        if (pos < end && (buf[pos] == '-' || buf[pos] == '+')) {
+          negativeExponent = (buf[pos++] == '-');
+        }
+        if (pos == end) return Double.NaN;
+        int exponent = 0;
+        for (; pos < end; pos++) {
+          if (buf[pos] < '0' || buf[pos] > '9') return Double.NaN;
+          exponent = Math.min(exponent * 10 + (buf[pos] - '0'), 1000);
+        }
+        scale += negativeExponent ? -exponent : exponent;
+      }
+      else if (c != ' ' && c != '\t' && c != '\u00A0' && Character.getType(c) != Character.CURRENCY_SYMBOL) {
+        return Double.NaN;
+      }
+    }
+
+    if (!digits) {
+      return Double.NaN;
+    }
+    double value = (scale < 0) ? mantissa / Math.pow(10, -scale) : mantissa * Math.pow(10, scale);
+    return negative ? -value : value;
+
+  }
+
+  // the smallest and largest value of a reading, with their text, and the distribution of its keys
+  private static final class Range {
+
+    private final int quantileK;
+    boolean viable = true;
+    QuantileSketch sketch;
+    private double minKey;
+    private double maxKey;
+    private char[] minText = new char[16];
+    private char[] maxText = new char[16];
+    private int minLength = -1;
+    private int maxLength = -1;
+
+    Range(int quantileK) {
+      this.quantileK = quantileK;
+    }
+
+    void add(double key, char[] buf, int start, int end) {
+      if (Double.isNaN(key)) {
+        viable = false;
+        sketch = null;
+        return;
+      }
+      if (quantileK > 0) {
+        if (sketch == null) {
+          sketch = new QuantileSketch(quantileK);
+        }
+        sketch.add(key);
+      }
+      if (minLength < 0 || key < minKey) {
+        minKey = key;
+        minText = copy(minText, buf, start, end);
+        minLength = end - start;
+      }
+      if (maxLength < 0 || key > maxKey) {
+        maxKey = key;
+        maxText = copy(maxText, buf, start, end);
+        maxLength = end - start;
+      }
+    }
+
+    void addText(char[] buf, int start, int end) {
+      if (minLength < 0 || compare(buf, start, end, minText, minLength) < 0) {
+        minText = copy(minText, buf, start, end);
+        minLength = end - start;
+      }
+      if (maxLength < 0 || compare(buf, start, end, maxText, maxLength) > 0) {
+        maxText = copy(maxText, buf, start, end);
+        maxLength = end - start;
+      }
+    }
+
+    String getMin() {
+      return (minLength < 0) ? null : new String(minText, 0, minLength);
+    }
+
+    String getMax() {
+      return (maxLength < 0) ? null : new String(maxText, 0, maxLength);
+    }
+
+    private static char[] copy(char[] target, char[] buf, int start, int end) {
+      int length = end - start;
+      if (target.length < length) {
+        target = Arrays.copyOf(target, Math.max(length, target.length * 2));
+      }
+      System.arraycopy(buf, start, target, 0, length);
+      return target;
+    }
+
+    private static int compare(char[] buf, int start, int end, char[] other, int otherLength) {
+      int length = Math.min(end - start, otherLength);
+      for (int i = 0; i < length; i++) {
+        if (buf[start + i] != other[i]) return buf[start + i] - other[i];
+      }
+      return (end - start) - otherLength;
+    }
+
+  }
+
+}
@@ -0,0 +1,262 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Decides whether a char range parses as a date the way a non-lenient SimpleDateFormat reads it, with
+ * the whole range consumed as in Kettle's strict string to date conversion. Masks made of numeric fields
+ * (years, numeric months, days, hours, minutes, seconds and milliseconds) and literals are matched
+ * directly on the chars and validated with a reused calendar. Other masks go through SimpleDateFormat.
+ */
+final class DateParser {
+
+  private static final char[] NUMERIC_FIELDS = {'y', 'M', 'd', 'H', 'm', 's', 'S'};
+  private static final int[] CALENDAR_FIELDS = {Calendar.YEAR, Calendar.MONTH, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY,
+    Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND};
+
+  private final String mask;
+  private final Locale locale;
+
+  // the compiled mask: a field index and count per token, or a literal
+  private int[] fields;
+  private int[] counts;
+  private char[][] literals;
+
+  private final int[] values = new int[NUMERIC_FIELDS.length];
+  private final boolean[] set = new boolean[NUMERIC_FIELDS.length];
+  private Calendar calendar;
+  private int centuryStart;
+
+  private SimpleDateFormat format;
+  private boolean valid = true;
+  private long time;
+
+  DateParser(String mask, Locale locale) {
+    this.mask = mask;
+    this.locale = locale;
+    if (!compile()) {
+      try {
+        format = new SimpleDateFormat(mask, locale);
+        format.setLenient(false);
+      }
+      catch(IllegalArgumentException e) {
+        valid = false;
+      }
+    }
+  }
+
+  /**
+   * @return true if buf[start, end) is a date, the range must not be empty
+   */
+  boolean parse(char[] buf, int start, int end) {
+    return match(buf, start, end) == TypeCandidates.VALID;
+  }
+
+  /**
+   * @return the mask the parser reads
+   */
+  String getMask() {
+    return mask;
+  }
+
+  /**
+   * @return the time of the date last matched as VALID, in milliseconds
+   */
+  long getTime() {
+    return time;
+  }
+
+  /**
+   * Tells the values that do not fit the mask apart from those that fit it but are no valid date.
+   * A mismatch does not depend on the values of digits, so it holds for every value of the same shape.
+   *
+   * @return VALID, INVALID or MISMATCH, the range must not be empty
+   */
+  int match(char[] buf, int start, int end) {
+
+    if (!valid) {
+      return TypeCandidates.MISMATCH;
+    }
+
+    if (format != null) {
+      ParsePosition position = new ParsePosition(0);
+      String value = new String(buf, start, end - start);
+      Date date = format.parse(value, position);
+      if (date == null || position.getIndex() != value.length()) {
+        return TypeCandidates.INVALID;
+      }
+      time = date.getTime();
+      return TypeCandidates.VALID;
+    }
+
+    for (int i = 0; i < set.length; i++) {
+      set[i] = false;
+    }
+
+    int pos = start;
+    for (int t = 0; t < fields.length; t++) {
+
+      if (fields[t] < 0) {
+        char[] literal = literals[t];
+        if (end - pos < literal.length) return TypeCandidates.MISMATCH;
+        for (char c : literal) {
+          if (buf[pos++] != c) return TypeCandidates.MISMATCH;
+        }
+        continue;
+      }
+
+      // leading spaces and tabs are skipped, adjacent fields take exactly their count of chars
+      int fieldStart = pos;
+      while (pos < end && (buf[pos] == ' ' || buf[pos] == '\t')) {
+        pos++;
+      }
+      if (pos >= end) return TypeCandidates.MISMATCH;
+
+      int limit = end;
+      if (t + 1 < fields.length && fields[t + 1] >= 0) {
+        limit = fieldStart + counts[t];
+        if (limit > end) return TypeCandidates.MISMATCH;
+      }
+
+      int digitsStart = pos;
+      long value = 0;
+      while (pos < limit) {
+        int digit = Character.digit(buf[pos], 10);
+        if (digit < 0) break;
+        if (value < Integer.MAX_VALUE) {
+          value = value * 10 + digit;
+        }
+        pos++;
+      }
+      if (pos == digitsStart) return TypeCandidates.MISMATCH;
+      if (value > Integer.MAX_VALUE) return TypeCandidates.INVALID;
+
+      int field = fields[t];
+      int v = (int) value;
+      if (field == 0 && counts[t] <= 2 && pos - digitsStart == 2) {
+        // two digit years fall into the century starting 80 years ago
+        int ambiguous = centuryStart % 100;
+        v += (centuryStart / 100) * 100 + (v < ambiguous ? 100 : 0);
+      }
+      else if (field == 1) {
+        v -= 1;
+      }
+      values[field] = v;
+      set[field] = true;
+    }
+
+    if (pos != end) {
+      return TypeCandidates.MISMATCH;
+    }
+
+    calendar.clear();
+    for (int i = 0; i < set.length; i++) {
+      if (set[i]) {
+        calendar.set(CALENDAR_FIELDS[i], values[i]);
+      }
+    }
+    try {
+      time = calendar.getTimeInMillis();
+      return TypeCandidates.VALID;
+    }
+    catch(IllegalArgumentException e) {
+      return TypeCandidates.INVALID;
+    }
+
+  }
+
+  // compiles masks made only of numeric fields and literals
+  private boolean compile() {
+
+    ArrayList<Integer> fieldList = new ArrayList<>();
+    ArrayList<Integer> countList = new ArrayList<>();
+    ArrayList<char[]> literalList = new ArrayList<>();
+    StringBuilder literal = new StringBuilder();
+
+    int length = mask.length();
+    int i = 0;
+    while (i < length) {
+      char c = mask.charAt(i);
+
+      if (c == '\'') {
+        // quoted text, two quotes stand for one
+        if (i + 1 < length && mask.charAt(i + 1) == '\'') {
+          literal.append('\'');
+          i += 2;
+          continue;
+        }
+        int close = i + 1;
+        while (true) {
+          if (close >= length) return false;
+          if (mask.charAt(close) == '\'') {
+            if (close + 1 < length && mask.charAt(close + 1) == '\'') {
+              literal.append('\'');
+              close += 2;
+              continue;
+            }
+            break;
+          }
+          literal.append(mask.charAt(close++));
+        }
+        i = close + 1;
+        continue;
+      }
+
+      if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+        int field = -1;
+        for (int f = 0; f < NUMERIC_FIELDS.length; f++) {
+          if (NUMERIC_FIELDS[f] == c) field = f;
+        }
+        int count = 1;
+        while (i + count < length && mask.charAt(i + count) == c) {
+          count++;
+        }
+        // text months and all other fields go through SimpleDateFormat
+        if (field < 0 || (c == 'M' && count > 2)) return false;
+
+        if (literal.length() > 0) {
+          fieldList.add(-1);
+          countList.add(0);
+          literalList.add(literal.toString().toCharArray());
+          literal.setLength(0);
+        }
+        fieldList.add(field);
+        countList.add(count);
+        literalList.add(null);
+        i += count;
+        continue;
+      }
+
+      literal.append(c);
+      i++;
+    }
+
+    if (literal.length() > 0) {
+      fieldList.add(-1);
+      countList.add(0);
+      literalList.add(literal.toString().toCharArray());
+    }
+
+    fields = new int[fieldList.size()];
+    counts = new int[fieldList.size()];
+    literals = literalList.toArray(new char[literalList.size()][]);
+    for (int t = 0; t < fields.length; t++) {
+      fields[t] = fieldList.get(t);
+      counts[t] = countList.get(t);
+    }
+
+    calendar = Calendar.getInstance(locale);
+    calendar.setLenient(false);
+    Calendar now = Calendar.getInstance(locale);
+    now.add(Calendar.YEAR, -80);
+    centuryStart = now.get(Calendar.YEAR);
+    return true;
+
+  }
+
+}
@@ -0,0 +1,240 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Locale;
+
+/**
+ * Decides whether a char range parses as a number the way DecimalFormat.parse() reads it for a given
+ * pattern and symbols, with the whole range consumed as in Kettle's strict string to number conversion.
+ * Prefixes, suffixes, grouping, the decimal separator, exponents, NaN and infinity follow the rules
+ * of the JDK parser, without creating strings or intermediate numbers. Patterns with the currency sign
+ * parse with monetary separators that differ between JDK versions, those go through DecimalFormat.
+ */
+final class NumberParser {
+
+  private final boolean valid;
+  private final String key;
+  private final DecimalFormat format;
+
+  private final char[] positivePrefix;
+  private final char[] negativePrefix;
+  private final char[] positiveSuffix;
+  private final char[] negativeSuffix;
+  private final char[] nan;
+  private final char[] infinity;
+  private final char[] exponent;
+  private final char[] minus;
+  private final char zero;
+  private final char decimal;
+  private final char grouping;
+  private final boolean groupingUsed;
+
+  private NumberParser(DecimalFormat format, boolean currencyFormat) {
+
+    DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+
+    valid = true;
+    this.format = currencyFormat ? format : null;
+    positivePrefix = format.getPositivePrefix().toCharArray();
+    negativePrefix = format.getNegativePrefix().toCharArray();
+    positiveSuffix = format.getPositiveSuffix().toCharArray();
+    negativeSuffix = format.getNegativeSuffix().toCharArray();
+    nan = symbols.getNaN().toCharArray();
+    infinity = symbols.getInfinity().toCharArray();
+    exponent = symbols.getExponentSeparator().toCharArray();
+    minus = new char[]{symbols.getMinusSign()};
+    zero = symbols.getZeroDigit();
+    decimal = symbols.getDecimalSeparator();
+    grouping = symbols.getGroupingSeparator();
+    groupingUsed = format.isGroupingUsed();
+
+    key = new String(positivePrefix) + '\u0000' + new String(negativePrefix) + '\u0000' + new String(positiveSuffix) + '\u0000' +
+          new String(negativeSuffix) + '\u0000' + new String(nan) + '\u0000' + new String(infinity) + '\u0000' +
+          new String(exponent) + '\u0000' + new String(minus) + zero + decimal + grouping + groupingUsed +
+          (currencyFormat ? '\u0000' + format.toPattern() : "");
+  }
+
+  // a pattern the JDK rejects, so no value converts
+  private NumberParser() {
+    valid = false;
+    key = "";
+    format = null;
+    positivePrefix = negativePrefix = positiveSuffix = negativeSuffix = nan = infinity = exponent = minus = new char[0];
+    zero = decimal = grouping = 0;
+    groupingUsed = false;
+  }
+
+  /**
+   * Sets up the format the way Kettle does for a conversion mask: the locale's number format with
+   * the given symbols replaced, then the mask applied as a pattern. Empty symbols keep the locale's.
+   */
+  static NumberParser forMask(Locale locale, String mask, String decimalSymbol, String groupingSymbol, String currencySymbol) {
+    try {
+      DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(locale);
+      DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+      if (currencySymbol != null && !currencySymbol.isEmpty()) {
+        symbols.setCurrencySymbol(currencySymbol);
+      }
+      if (groupingSymbol != null && !groupingSymbol.isEmpty()) {
+        symbols.setGroupingSeparator(groupingSymbol.charAt(0));
+      }
+      if (decimalSymbol != null && !decimalSymbol.isEmpty()) {
+        symbols.setDecimalSeparator(decimalSymbol.charAt(0));
+      }
+      format.setDecimalFormatSymbols(symbols);
+      format.applyPattern(mask);
+      return new NumberParser(format, mask.indexOf('\u00A4') >= 0);
+    }
+    catch(IllegalArgumentException e) {
+      return new NumberParser();
+    }
+  }
+
+  /**
+   * @return a key that is equal for parsers that accept the same values
+   */
+  String getKey() {
+    return key;
+  }
+
+  /**
+   * @return true if buf[start, end) is a number, the range must not be empty
+   */
+  boolean parse(char[] buf, int start, int end) {
+
+    if (!valid) {
+      return false;
+    }
+
+    if (format != null) {
+      ParsePosition position = new ParsePosition(0);
+      String value = new String(buf, start, end - start);
+      return format.parse(value, position) != null && position.getIndex() == value.length();
+    }
+
+    if (matches(buf, start, end, nan)) {
+      return start + nan.length == end;
+    }
+
+    // the longer prefix wins if both match
+    boolean gotPositive = matches(buf, start, end, positivePrefix);
+    boolean gotNegative = matches(buf, start, end, negativePrefix);
+    if (gotPositive && gotNegative) {
+      if (positivePrefix.length > negativePrefix.length) {
+        gotNegative = false;
+      }
+      else if (positivePrefix.length < negativePrefix.length) {
+        gotPositive = false;
+      }
+    }
+
+    int pos;
+    if (gotPositive) {
+      pos = start + positivePrefix.length;
+    }
+    else if (gotNegative) {
+      pos = start + negativePrefix.length;
+    }
+    else {
+      return false;
+    }
+
+    if (matches(buf, pos, end, infinity)) {
+      pos += infinity.length;
+    }
+    else {
+      pos = digits(buf, pos, end, false);
+      if (pos < 0) {
+        return false;
+      }
+    }
+
+    // the suffix must match the prefix, the longer one wins if both do
+    if (gotPositive) {
+      gotPositive = matches(buf, pos, end, positiveSuffix);
+    }
+    if (gotNegative) {
+      gotNegative = matches(buf, pos, end, negativeSuffix);
+    }
+    if (gotPositive && gotNegative) {
+      if (positiveSuffix.length > negativeSuffix.length) {
+        gotNegative = false;
+      }
+      else if (positiveSuffix.length < negativeSuffix.length) {
+        gotPositive = false;
+      }
+    }
+    if (gotPositive == gotNegative) {
+      return false;
+    }
+
+    pos += gotPositive ? positiveSuffix.length : negativeSuffix.length;
+    return pos == end;
+
+  }
+
+  // the digits of a number or an exponent, returns the position after them, or -1 if there are none
+  private int digits(char[] buf, int pos, int end, boolean isExponent) {
+
+    boolean sawDigit = false;
+    boolean sawDecimal = false;
+    int backup = -1;
+
+    while (pos < end) {
+      char ch = buf[pos];
+      int digit = ch - zero;
+      if (digit < 0 || digit > 9) {
+        digit = Character.digit(ch, 10);
+      }
+
+      if (digit >= 0 && digit <= 9) {
+        sawDigit = true;
+        backup = -1;
+      }
+      else if (!isExponent && ch == decimal) {
+        if (sawDecimal) break;
+        sawDecimal = true;
+      }
+      else if (!isExponent && ch == grouping && groupingUsed) {
+        if (sawDecimal) break;
+        // grouping separators must be followed by a digit
+        backup = pos;
+      }
+      else if (!isExponent && matches(buf, pos, end, exponent)) {
+        // the exponent is taken if it has digits, either way the number ends here
+        int exponentStart = pos + exponent.length;
+        if (matches(buf, exponentStart, end, minus)) {
+          exponentStart += minus.length;
+        }
+        int exponentEnd = digits(buf, exponentStart, end, true);
+        if (exponentEnd >= 0) {
+          pos = exponentEnd;
+        }
+        break;
+      }
+      else {
+        break;
+      }
+      pos++;
+    }
+
+    if (backup != -1) {
+      pos = backup;
+    }
+
+    return sawDigit ? pos : -1;
+
+  }
+
+  private static boolean matches(char[] buf, int pos, int end, char[] token) {
+    if (end - pos < token.length) return false;
+    for (int i = 0; i < token.length; i++) {
+      if (buf[pos + i] != token[i]) return false;
+    }
+    return true;
+  }
+
+}
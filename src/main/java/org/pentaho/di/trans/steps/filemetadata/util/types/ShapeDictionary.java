@@ -0,0 +1,156 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import java.util.Arrays;
+
+/**
+ * Counts the distinct shapes of the values of a column. A shape keeps every char of a value except
+ * ASCII digits, whose runs are reduced to their length, so 2016-03-14 and 2016-03-15 share a shape.
+ * Whether a value parses as a number, a boolean, or fits a date mask at all, is the same for all
+ * values of a shape, which lets the type evaluation run once per shape.
+ *
+ * The dictionary is bounded, values with long shapes and new shapes once it is full get no shape.
+ */
+final class ShapeDictionary {
+
+  private static final char DIGITS = '\uE000';
+  private static final char ESCAPE = '\uE001';
+
+  private final int maxShapes;
+  private final int maxShapeLength;
+
+  // open addressing table of shape index + 1
+  private final int[] table;
+  private final int mask;
+
+  private int[] hashes;
+  private int[] offsets;
+  private int[] lengths;
+  private long[] counts;
+  private char[] pool;
+  private int poolSize = 0;
+  private int size = 0;
+
+  private final char[] shape;
+  private boolean added;
+
+  ShapeDictionary(int maxShapes, int maxShapeLength) {
+    this.maxShapes = maxShapes;
+    this.maxShapeLength = maxShapeLength;
+    int capacity = Integer.highestOneBit(Math.max(1, maxShapes) * 2 - 1) << 1;
+    table = new int[capacity];
+    mask = capacity - 1;
+    int initial = Math.min(maxShapes, 16);
+    hashes = new int[initial];
+    offsets = new int[initial];
+    lengths = new int[initial];
+    counts = new long[initial];
+    pool = new char[initial * 8];
+    // escapes and digit runs take two chars each
+    shape = new char[maxShapeLength + 2];
+  }
+
+  /**
+   * Finds the shape of buf[start, end), adding it if it is new.
+   *
+   * @return the index of the shape, or -1 if the value gets no shape
+   */
+  int find(char[] buf, int start, int end) {
+
+    added = false;
+
+    int length = 0;
+    int hash = 0;
+    int pos = start;
+    while (pos < end) {
+      if (length >= maxShapeLength) {
+        return -1;
+      }
+      char c = buf[pos];
+      if (c >= '0' && c <= '9') {
+        int runEnd = pos + 1;
+        while (runEnd < end && runEnd - pos < Character.MAX_VALUE && buf[runEnd] >= '0' && buf[runEnd] <= '9') {
+          runEnd++;
+        }
+        shape[length++] = DIGITS;
+        shape[length++] = (char) (runEnd - pos);
+        pos = runEnd;
+      }
+      else {
+        if (c == DIGITS || c == ESCAPE) {
+          shape[length++] = ESCAPE;
+        }
+        shape[length++] = c;
+        pos++;
+      }
+    }
+    for (int i = 0; i < length; i++) {
+      hash = 31 * hash + shape[i];
+    }
+
+    int slot = (hash ^ (hash >>> 16)) & mask;
+    while (table[slot] != 0) {
+      int s = table[slot] - 1;
+      if (hashes[s] == hash && lengths[s] == length && equals(s, length)) {
+        counts[s]++;
+        return s;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    if (size >= maxShapes) {
+      return -1;
+    }
+
+    if (size == hashes.length) {
+      int grown = Math.min(maxShapes, size * 2);
+      hashes = Arrays.copyOf(hashes, grown);
+      offsets = Arrays.copyOf(offsets, grown);
+      lengths = Arrays.copyOf(lengths, grown);
+      counts = Arrays.copyOf(counts, grown);
+    }
+    if (poolSize + length > pool.length) {
+      pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + length));
+    }
+
+    System.arraycopy(shape, 0, pool, poolSize, length);
+    hashes[size] = hash;
+    offsets[size] = poolSize;
+    lengths[size] = length;
+    counts[size] = 1;
+    poolSize += length;
+    table[slot] = ++size;
+    added = true;
+    return size - 1;
+
+  }
+
+  /**
+   * @return true if the last call to find() added a shape
+   */
+  boolean isAdded() {
+    return added;
+  }
+
+  /**
+   * @return the number of distinct shapes
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * @return the number of values of the given shape
+   */
+  long getCount(int shape) {
+    return counts[shape];
+  }
+
+  private boolean equals(int s, int length) {
+    int offset = offsets[s];
+    for (int i = 0; i < length; i++) {
+      if (pool[offset + i] != shape[i]) return false;
+    }
+    return true;
+  }
+
+}
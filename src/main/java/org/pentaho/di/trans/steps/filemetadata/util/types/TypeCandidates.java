@@ -0,0 +1,249 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * The conversions a column of strings is tested against, in the same order and with the same
+ * settings as Kettle's StringEvaluator: date masks, number masks in US and EU notation, currency,
+ * integers, zero padded integers and booleans, once untrimmed and once trimmed.
+ *
+ * Candidates sharing a mask and symbols share a parser. Parsers keep state while parsing, so an
+ * instance must not be used by several threads at once.
+ */
+public class TypeCandidates {
+
+  static final int BOOLEAN = -1;
+
+  // parse outcomes, a mismatch holds for all values of the same shape
+  static final int MISMATCH = -1;
+  static final int INVALID = 0;
+  static final int VALID = 1;
+
+  private static final String[] NUMBER_FORMATS = {"#,###,###.#", "#.#", " #.#", "#", "#.0", "#.00", "#.000", "#.0000", "#.00000", "#.000000", " #.0#"};
+
+  private static final int[] TRIM_TYPES = {ValueMetaInterface.TRIM_TYPE_NONE, ValueMetaInterface.TRIM_TYPE_BOTH};
+
+  private final Locale locale;
+  private final String[] dateFormats;
+  final char decimalSeparator;
+
+  // per candidate
+  final int[] types;
+  final String[] names;
+  final String[] masks;
+  final int[] trimTypes;
+  final String[] decimalSymbols;
+  final String[] groupingSymbols;
+  final String[] currencySymbols;
+  final int[] lengths;
+  final int[] precisions;
+  // index into the parsers, numbers first, then dates, or BOOLEAN
+  final int[] parsers;
+
+  final NumberParser[] numberParsers;
+  final DateParser[] dateParsers;
+
+  private final ArrayList<Object[]> list = new ArrayList<>();
+  private final ArrayList<NumberParser> numberList = new ArrayList<>();
+  private final HashMap<String, Integer> numberKeys = new HashMap<>();
+  private final ArrayList<String> dateList = new ArrayList<>();
+
+  public TypeCandidates(Locale locale, String[] dateFormats) {
+
+    this.locale = locale;
+    this.dateFormats = dateFormats;
+    this.decimalSeparator = new DecimalFormatSymbols(locale).getDecimalSeparator();
+
+    NumberFormat currencyFormat = NumberFormat.getCurrencyInstance(locale);
+    String currencySymbol = currencyFormat.getCurrency().getSymbol(locale);
+    int currencyPrecision = currencyFormat.getCurrency().getDefaultFractionDigits();
+    String currencyMask = ((DecimalFormat) currencyFormat).toLocalizedPattern().replace("\u00A4", currencySymbol);
+    String currencyNumberMask = currencyMask.replace(currencySymbol, "");
+
+    for (int trimType : TRIM_TYPES) {
+
+      for (String format : dateFormats) {
+        add(ValueMetaInterface.TYPE_DATE, "date", format, trimType, null, null, null, -1, -1);
+      }
+
+      for (String format : NUMBER_FORMATS) {
+        if (format.equals("#")) continue;
+        add(ValueMetaInterface.TYPE_NUMBER, "number-us-" + format, format, trimType, ".", ",", null, 15, determinePrecision(format));
+        add(ValueMetaInterface.TYPE_NUMBER, "number-eu-" + format, format, trimType, ",", ".", null, 15, determinePrecision(format));
+      }
+
+      add(ValueMetaInterface.TYPE_NUMBER, "number-currency", currencyMask, trimType, null, null, currencySymbol, 15, currencyPrecision);
+      add(ValueMetaInterface.TYPE_NUMBER, "number-currency-us", currencyNumberMask, trimType, ".", ",", null, 15, currencyPrecision);
+      add(ValueMetaInterface.TYPE_NUMBER, "number-currency-eu", currencyNumberMask, trimType, ",", ".", null, 15, currencyPrecision);
+
+      // integers are converted untrimmed, the masks with a leading space take care of padding
+      add(ValueMetaInterface.TYPE_INTEGER, "integer", "#", ValueMetaInterface.TRIM_TYPE_NONE, null, null, null, 15, -1);
+      add(ValueMetaInterface.TYPE_INTEGER, "integer", " #", ValueMetaInterface.TRIM_TYPE_NONE, null, null, null, 15, -1);
+
+      StringBuilder zeros = new StringBuilder();
+      for (int i = 1; i <= 15; i++) {
+        zeros.append('0');
+        add(ValueMetaInterface.TYPE_INTEGER, "integer-zero-padded-" + i, " " + zeros + ";-" + zeros, ValueMetaInterface.TRIM_TYPE_NONE, null, null, null, i, -1);
+      }
+
+      add(ValueMetaInterface.TYPE_BOOLEAN, "boolean", null, ValueMetaInterface.TRIM_TYPE_NONE, null, null, null, -1, -1);
+    }
+
+    int count = list.size();
+    types = new int[count];
+    names = new String[count];
+    masks = new String[count];
+    trimTypes = new int[count];
+    decimalSymbols = new String[count];
+    groupingSymbols = new String[count];
+    currencySymbols = new String[count];
+    lengths = new int[count];
+    precisions = new int[count];
+    parsers = new int[count];
+
+    numberParsers = numberList.toArray(new NumberParser[numberList.size()]);
+    dateParsers = new DateParser[dateList.size()];
+    for (int i = 0; i < dateParsers.length; i++) {
+      dateParsers[i] = new DateParser(dateList.get(i), locale);
+    }
+
+    for (int i = 0; i < count; i++) {
+      Object[] c = list.get(i);
+      types[i] = (Integer) c[0];
+      names[i] = (String) c[1];
+      masks[i] = (String) c[2];
+      trimTypes[i] = (Integer) c[3];
+      decimalSymbols[i] = (String) c[4];
+      groupingSymbols[i] = (String) c[5];
+      currencySymbols[i] = (String) c[6];
+      lengths[i] = (Integer) c[7];
+      precisions[i] = (Integer) c[8];
+      parsers[i] = (Integer) c[9];
+      if (types[i] == ValueMetaInterface.TYPE_DATE) {
+        parsers[i] += numberParsers.length;
+      }
+    }
+
+  }
+
+  /**
+   * @return the same candidates with parsers of their own, for use by another thread
+   */
+  public TypeCandidates copy() {
+    return new TypeCandidates(locale, dateFormats);
+  }
+
+  /**
+   * @return the number of candidates
+   */
+  public int size() {
+    return types.length;
+  }
+
+  /**
+   * @return the number of distinct parsers behind the candidates
+   */
+  public int getParserCount() {
+    return numberParsers.length + dateParsers.length;
+  }
+
+  /**
+   * @return VALID if buf[start, end) converts with the given parser, INVALID or MISMATCH if it does not,
+   * the range must not be empty
+   */
+  int match(int parser, char[] buf, int start, int end) {
+    if (parser < numberParsers.length) {
+      // numbers do not depend on the values of digits
+      return numberParsers[parser].parse(buf, start, end) ? VALID : MISMATCH;
+    }
+    return dateParsers[parser - numberParsers.length].match(buf, start, end);
+  }
+
+  /**
+   * @return the digits after the locale's decimal separator, up to the first char that is no digit or '#'
+   */
+  int determinePrecision(char[] buf, int start, int end) {
+    int pos = start;
+    while (pos < end && buf[pos] != decimalSeparator) {
+      pos++;
+    }
+    if (pos == end) {
+      return 0;
+    }
+    int precision = 0;
+    for (pos++; pos < end; pos++) {
+      char c = buf[pos];
+      if ((c < '0' || c > '9') && c != '#') break;
+      precision++;
+    }
+    return precision;
+  }
+
+  private int determinePrecision(String format) {
+    return determinePrecision(format.toCharArray(), 0, format.length());
+  }
+
+  /**
+   * @return a new value meta with the settings of the candidate
+   */
+  ValueMetaInterface createValueMeta(int candidate) {
+    ValueMetaInterface meta = new ValueMeta(names[candidate], types[candidate]);
+    if (masks[candidate] != null) {
+      meta.setConversionMask(masks[candidate]);
+    }
+    meta.setTrimType(trimTypes[candidate]);
+    if (decimalSymbols[candidate] != null) {
+      meta.setDecimalSymbol(decimalSymbols[candidate]);
+    }
+    if (groupingSymbols[candidate] != null) {
+      meta.setGroupingSymbol(groupingSymbols[candidate]);
+    }
+    if (currencySymbols[candidate] != null) {
+      meta.setCurrencySymbol(currencySymbols[candidate]);
+    }
+    if (lengths[candidate] >= 0) {
+      meta.setLength(lengths[candidate]);
+    }
+    if (precisions[candidate] >= 0) {
+      meta.setPrecision(precisions[candidate]);
+    }
+    if (types[candidate] == ValueMetaInterface.TYPE_DATE) {
+      meta.setDateFormatLenient(false);
+    }
+    return meta;
+  }
+
+  private void add(int type, String name, String mask, int trimType, String decimalSymbol, String groupingSymbol, String currencySymbol, int length, int precision) {
+
+    int parser = BOOLEAN;
+    if (type == ValueMetaInterface.TYPE_DATE) {
+      parser = dateList.indexOf(mask);
+      if (parser < 0) {
+        parser = dateList.size();
+        dateList.add(mask);
+      }
+    }
+    else if (type != ValueMetaInterface.TYPE_BOOLEAN) {
+      NumberParser numberParser = NumberParser.forMask(locale, mask, decimalSymbol, groupingSymbol, currencySymbol);
+      Integer known = numberKeys.get(numberParser.getKey());
+      if (known == null) {
+        known = numberList.size();
+        numberList.add(numberParser);
+        numberKeys.put(numberParser.getKey(), known);
+      }
+      parser = known;
+    }
+
+    list.add(new Object[]{type, name, mask, trimType, decimalSymbol, groupingSymbol, currencySymbol, length, precision, parser});
+
+  }
+
+}
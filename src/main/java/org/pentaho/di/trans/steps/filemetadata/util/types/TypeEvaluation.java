@@ -0,0 +1,288 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import java.io.Closeable;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates the types of the columns of a series of records, one TypeEvaluator per column.
+ *
+ * Records come as fields in ranges of a char buffer, as handed out by a tokenizer, or as strings.
+ * With several workers, their chars are copied into a batch, and each worker evaluates its own slice of
+ * columns over the batch on a ForkJoinPool, which may be shared with other evaluations. Workers share nothing, each slice has candidates of its own,
+ * and every column still sees its values in record order, so the advice is the same as with one worker.
+ */
+public class TypeEvaluation implements Closeable {
+
+  private final TypeEvaluator[] evaluators;
+  private ColumnStatistics[] statistics;
+
+  // the columns of worker w are sliceStarts[w] to sliceStarts[w + 1]
+  private final int[] sliceStarts;
+  private final TypeCandidates[] sliceCandidates;
+
+  // the chars of the batched records, with the ranges of their fields, a start of -1 for null
+  private final int batchSize;
+  private char[] batchChars;
+  private int batchLength = 0;
+  private int[] batchStarts;
+  private int[] batchEnds;
+  private int batchFields = 0;
+  private int[] recordFields;
+  private int[] recordFieldCounts;
+  private int batchCount = 0;
+  private ForkJoinPool pool;
+  private boolean ownPool;
+
+  /**
+   * @param candidates     the candidates of the first slice, the others get copies
+   * @param columns        the number of columns, values beyond are ignored
+   * @param workers        the number of threads evaluating columns, 1 to evaluate each record right away
+   * @param maxShapes      the number of distinct value shapes to remember per column
+   * @param valueCacheSize the number of recent distinct values to remember per column
+   * @param batchSize      the number of records collected before the workers evaluate them
+   */
+  public TypeEvaluation(TypeCandidates candidates, int columns, int workers, int maxShapes, int valueCacheSize, int batchSize) {
+    this(candidates, columns, workers, maxShapes, valueCacheSize, batchSize, null);
+  }
+
+  /**
+   * @param pool the pool the workers run on, left running by close(), null for a pool of its own
+   */
+  public TypeEvaluation(TypeCandidates candidates, int columns, int workers, int maxShapes, int valueCacheSize, int batchSize,
+                        ForkJoinPool pool) {
+
+    workers = Math.max(1, Math.min(workers, columns));
+
+    sliceStarts = new int[workers + 1];
+    sliceCandidates = new TypeCandidates[workers];
+    evaluators = new TypeEvaluator[columns];
+    for (int w = 0; w < workers; w++) {
+      sliceStarts[w] = (int) ((long) columns * w / workers);
+      sliceStarts[w + 1] = (int) ((long) columns * (w + 1) / workers);
+      sliceCandidates[w] = (w == 0) ? candidates : candidates.copy();
+      for (int i = sliceStarts[w]; i < sliceStarts[w + 1]; i++) {
+        evaluators[i] = new TypeEvaluator(sliceCandidates[w], maxShapes, valueCacheSize);
+      }
+    }
+
+    this.batchSize = Math.max(1, batchSize);
+    if (workers > 1) {
+      batchChars = new char[this.batchSize * 16];
+      batchStarts = new int[this.batchSize * Math.max(1, columns)];
+      batchEnds = new int[batchStarts.length];
+      recordFields = new int[this.batchSize];
+      recordFieldCounts = new int[this.batchSize];
+      ownPool = (pool == null);
+      this.pool = ownPool ? new ForkJoinPool(workers) : pool;
+    }
+
+  }
+
+  /**
+   * Collects the statistics of each column along with its type, call before the first record.
+   *
+   * @param charset           the charset of the file, for byte lengths
+   * @param distinctPrecision the precision of the sketches counting distinct values, 0 not to count them
+   * @param frequentCapacity  the number of counters finding the most frequent values, 0 not to find them
+   * @param quantileK         the k of the sketches estimating quantiles, 0 not to estimate them
+   */
+  public void collectStatistics(Charset charset, int distinctPrecision, int frequentCapacity, int quantileK) {
+    statistics = new ColumnStatistics[evaluators.length];
+    for (int w = 0; w < sliceCandidates.length; w++) {
+      for (int i = sliceStarts[w]; i < sliceStarts[w + 1]; i++) {
+        statistics[i] = new ColumnStatistics(sliceCandidates[w], charset, distinctPrecision, frequentCapacity, quantileK);
+      }
+    }
+  }
+
+  /**
+   * Evaluates the fields of a record, with several workers once its batch is full.
+   */
+  public void evaluate(String[] record) {
+
+    int fieldCount = Math.min(record.length, evaluators.length);
+
+    if (pool == null) {
+      for (int i = 0; i < fieldCount; i++) {
+        evaluators[i].evaluate(record[i]);
+        if (statistics != null) statistics[i].add(record[i]);
+      }
+      addMissing(fieldCount, evaluators.length);
+      return;
+    }
+
+    reserve(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      String value = record[i];
+      if (value == null) {
+        batchStarts[batchFields] = -1;
+      }
+      else {
+        append(value.length());
+        value.getChars(0, value.length(), batchChars, batchLength);
+        batchLength += value.length();
+      }
+      batchEnds[batchFields++] = batchLength;
+    }
+    addRecord(fieldCount);
+
+  }
+
+  /**
+   * Evaluates the fields of a record found in chars[starts[i], ends[i]), with several workers once its batch is full.
+   * The arrays may be reused once the call returns.
+   */
+  public void evaluate(char[] chars, int[] starts, int[] ends, int fieldCount) {
+
+    fieldCount = Math.min(fieldCount, evaluators.length);
+
+    if (pool == null) {
+      for (int i = 0; i < fieldCount; i++) {
+        evaluators[i].evaluate(chars, starts[i], ends[i]);
+        if (statistics != null) statistics[i].add(chars, starts[i], ends[i]);
+      }
+      addMissing(fieldCount, evaluators.length);
+      return;
+    }
+
+    reserve(fieldCount);
+    for (int i = 0; i < fieldCount; i++) {
+      int length = ends[i] - starts[i];
+      append(length);
+      System.arraycopy(chars, starts[i], batchChars, batchLength, length);
+      batchLength += length;
+      batchEnds[batchFields++] = batchLength;
+    }
+    addRecord(fieldCount);
+
+  }
+
+  /**
+   * Evaluates the records collected so far.
+   */
+  public void flush() {
+
+    if (pool == null || batchCount == 0) {
+      return;
+    }
+
+    pool.invoke(new SliceTask(0, sliceStarts.length - 1));
+
+    batchCount = 0;
+    batchFields = 0;
+    batchLength = 0;
+
+  }
+
+  /**
+   * @return the evaluator of each column, call flush() first for all records to be evaluated
+   */
+  public TypeEvaluator[] getEvaluators() {
+    return evaluators;
+  }
+
+  /**
+   * @return the statistics of each column, or null if they are not collected
+   */
+  public ColumnStatistics[] getStatistics() {
+    return statistics;
+  }
+
+  /**
+   * @return true if all columns are saturated
+   */
+  public boolean isSaturated() {
+    for (TypeEvaluator evaluator : evaluators) {
+      if (!evaluator.isSaturated()) return false;
+    }
+    return true;
+  }
+
+  @Override
+  public void close() {
+    if (pool != null && ownPool) {
+      pool.shutdown();
+    }
+    pool = null;
+  }
+
+  // counts the columns a record has no fields for as missing
+  private void addMissing(int from, int to) {
+    if (statistics == null) return;
+    for (int i = from; i < to; i++) {
+      statistics[i].addNull();
+    }
+  }
+
+  // makes room for the ranges of another record's fields
+  private void reserve(int fieldCount) {
+    if (batchFields + fieldCount > batchStarts.length) {
+      int grown = Math.max(batchStarts.length * 2, batchFields + fieldCount);
+      batchStarts = Arrays.copyOf(batchStarts, grown);
+      batchEnds = Arrays.copyOf(batchEnds, grown);
+    }
+  }
+
+  // makes room for the chars of the next field and records where it starts
+  private void append(int length) {
+    if (batchLength + length > batchChars.length) {
+      batchChars = Arrays.copyOf(batchChars, Math.max(batchChars.length * 2, batchLength + length));
+    }
+    batchStarts[batchFields] = batchLength;
+  }
+
+  private void addRecord(int fieldCount) {
+    recordFields[batchCount] = batchFields - fieldCount;
+    recordFieldCounts[batchCount] = fieldCount;
+    batchCount++;
+    if (batchCount == batchSize) {
+      flush();
+    }
+  }
+
+  // splits its workers in halves until it evaluates the batch on the columns of a single one
+  private class SliceTask extends RecursiveAction {
+
+    private final int fromWorker;
+    private final int toWorker;
+
+    SliceTask(int fromWorker, int toWorker) {
+      this.fromWorker = fromWorker;
+      this.toWorker = toWorker;
+    }
+
+    @Override
+    protected void compute() {
+
+      if (toWorker - fromWorker > 1) {
+        int middle = (fromWorker + toWorker) >>> 1;
+        invokeAll(new SliceTask(fromWorker, middle), new SliceTask(middle, toWorker));
+        return;
+      }
+
+      int from = sliceStarts[fromWorker];
+      int to = sliceStarts[toWorker];
+      for (int r = 0; r < batchCount; r++) {
+        int first = recordFields[r];
+        int end = Math.min(to, recordFieldCounts[r]);
+        for (int i = from; i < end; i++) {
+          int start = batchStarts[first + i];
+          if (start >= 0) {
+            evaluators[i].evaluate(batchChars, start, batchEnds[first + i]);
+            if (statistics != null) statistics[i].add(batchChars, start, batchEnds[first + i]);
+          }
+          else {
+            addMissing(i, i + 1);
+          }
+        }
+        addMissing(Math.max(from, end), to);
+      }
+
+    }
+
+  }
+
+}
@@ -0,0 +1,442 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.util.Arrays;
+
+/**
+ * Infers the type of a column from its values, giving the same advice as Kettle's StringEvaluator
+ * without creating objects per value. The candidates still viable are kept in a bit set, each value
+ * is parsed once per distinct parser directly on its chars, and candidates it fails for are dropped.
+ *
+ * Values are grouped by shape, see ShapeDictionary. The candidates are tested against the first value
+ * of a shape only, later values of the shape just apply the outcome, except for the dates fitting the
+ * mask, whose fields are validated for every value.
+ *
+ * Recently seen values are cached, see ValueCache. A value found there has nothing new to tell and is
+ * only counted, so columns with few distinct values cost little more than their distinct values.
+ *
+ * Values that are empty, after trimming if the candidate trims, count as nulls and rule nothing out.
+ */
+public class TypeEvaluator {
+
+  private static final int NULL = 2;
+
+  private static final int MAX_SHAPES = 512;
+  private static final int MAX_SHAPE_LENGTH = 64;
+  private static final int MAX_CACHED_LENGTH = 32;
+
+  private final TypeCandidates candidates;
+
+  // candidates not ruled out yet, and those that converted a non-null value
+  private final int words;
+  private final long[] viable;
+  private final long[] successes;
+  private int viableCount;
+
+  // per shape, the candidates its values rule out, convert, or that need each value checked
+  private final ShapeDictionary shapes;
+  private final int maxShapes;
+  private int[] shapePrecisions = new int[0];
+  private long[] shapeKills = new long[0];
+  private long[] shapeSuccesses = new long[0];
+  private long[] shapeRechecks = new long[0];
+  private final long[] pending;
+
+  private final ValueCache cache;
+
+  // the order advice is picked in, sorted in place like the StringEvaluator result list
+  private final int[] order;
+
+  // parse results of the current value per parser and trimming
+  private final int[] resultStamps;
+  private final int[] results;
+  private int stamp = 0;
+  private int trimmedStart;
+  private int trimmedEnd;
+
+  private char[] scratch = new char[64];
+
+  private long count = 0;
+  private int maxLength = 0;
+  private int maxPrecision = 0;
+
+  public TypeEvaluator(TypeCandidates candidates) {
+    this(candidates, MAX_SHAPES, 0);
+  }
+
+  /**
+   * @param maxShapes      the number of distinct value shapes to remember, 0 evaluates every value on its own
+   * @param valueCacheSize the number of recent distinct values to remember, 0 for no cache
+   */
+  public TypeEvaluator(TypeCandidates candidates, int maxShapes, int valueCacheSize) {
+
+    this.candidates = candidates;
+    this.maxShapes = maxShapes;
+    this.shapes = maxShapes > 0 ? new ShapeDictionary(maxShapes, MAX_SHAPE_LENGTH) : null;
+    this.cache = valueCacheSize > 0 ? new ValueCache(valueCacheSize, MAX_CACHED_LENGTH) : null;
+
+    int size = candidates.size();
+    words = (size + 63) >>> 6;
+    viable = new long[words];
+    successes = new long[words];
+    pending = new long[words];
+    for (int i = 0; i < size; i++) {
+      viable[i >>> 6] |= 1L << i;
+    }
+    viableCount = size;
+
+    order = new int[size];
+    for (int i = 0; i < size; i++) {
+      order[i] = i;
+    }
+
+    resultStamps = new int[candidates.getParserCount() * 2];
+    results = new int[resultStamps.length];
+
+  }
+
+  /**
+   * Evaluates a value, null values are not counted.
+   */
+  public void evaluate(String value) {
+    if (value == null) {
+      return;
+    }
+    int length = value.length();
+    if (isSaturated()) {
+      count++;
+      maxLength = Math.max(maxLength, length);
+      return;
+    }
+    if (scratch.length < length) {
+      scratch = new char[Math.max(length, scratch.length * 2)];
+    }
+    value.getChars(0, length, scratch, 0);
+    evaluate(scratch, 0, length);
+  }
+
+  /**
+   * Evaluates the value in buf[start, end).
+   */
+  public void evaluate(char[] buf, int start, int end) {
+
+    count++;
+    maxLength = Math.max(maxLength, end - start);
+
+    // nothing but the length can change any more
+    if (isSaturated()) {
+      return;
+    }
+
+    // a value seen before has been evaluated already
+    if (cache != null && cache.seen(buf, start, end)) {
+      return;
+    }
+
+    int shape = shapes == null ? -1 : shapes.find(buf, start, end);
+    if (shape < 0) {
+      maxPrecision = Math.max(maxPrecision, candidates.determinePrecision(buf, start, end));
+      evaluateCandidates(viable, buf, start, end);
+      return;
+    }
+
+    if (shapes.isAdded()) {
+      describeShape(shape, buf, start, end);
+    }
+    maxPrecision = Math.max(maxPrecision, shapePrecisions[shape]);
+
+    int base = shape * words;
+    boolean recheck = false;
+    for (int w = 0; w < words; w++) {
+      long killed = shapeKills[base + w] & viable[w];
+      if (killed != 0) {
+        viable[w] &= ~killed;
+        viableCount -= Long.bitCount(killed);
+      }
+      successes[w] |= shapeSuccesses[base + w] & viable[w];
+      recheck |= (shapeRechecks[base + w] & viable[w]) != 0;
+    }
+
+    // dates fitting the mask still need their fields validated
+    if (recheck) {
+      for (int w = 0; w < words; w++) {
+        pending[w] = shapeRechecks[base + w];
+      }
+      evaluateCandidates(pending, buf, start, end);
+    }
+
+  }
+
+  // evaluates the value against the viable candidates among the given ones
+  private void evaluateCandidates(long[] which, char[] buf, int start, int end) {
+
+    trim(buf, start, end);
+    nextStamp();
+
+    for (int w = 0; w < words; w++) {
+      long bits = which[w] & viable[w];
+      while (bits != 0) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+
+        int result = evaluate((w << 6) + bit, buf, start, end);
+        if (result == TypeCandidates.VALID) {
+          successes[w] |= 1L << bit;
+        }
+        else if (result != NULL) {
+          viable[w] &= ~(1L << bit);
+          viableCount--;
+        }
+      }
+    }
+
+  }
+
+  // sorts the candidates viable on a value of a new shape by what holds for the whole shape
+  private void describeShape(int shape, char[] buf, int start, int end) {
+
+    if (shape == shapePrecisions.length) {
+      int grown = Math.min(maxShapes, Math.max(16, shape * 2));
+      shapePrecisions = Arrays.copyOf(shapePrecisions, grown);
+      shapeKills = Arrays.copyOf(shapeKills, grown * words);
+      shapeSuccesses = Arrays.copyOf(shapeSuccesses, grown * words);
+      shapeRechecks = Arrays.copyOf(shapeRechecks, grown * words);
+    }
+    shapePrecisions[shape] = candidates.determinePrecision(buf, start, end);
+
+    trim(buf, start, end);
+    nextStamp();
+
+    int base = shape * words;
+    for (int w = 0; w < words; w++) {
+      long bits = viable[w];
+      while (bits != 0) {
+        int bit = Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        int c = (w << 6) + bit;
+
+        int result = evaluate(c, buf, start, end);
+        if (result == NULL) continue;
+        if (candidates.types[c] == ValueMetaInterface.TYPE_DATE && result != TypeCandidates.MISMATCH) {
+          shapeRechecks[base + w] |= 1L << bit;
+        }
+        else if (result == TypeCandidates.VALID) {
+          shapeSuccesses[base + w] |= 1L << bit;
+        }
+        else {
+          shapeKills[base + w] |= 1L << bit;
+        }
+      }
+    }
+
+  }
+
+  // the outcome of converting the value with the candidate, NULL for values it treats as null
+  private int evaluate(int c, char[] buf, int start, int end) {
+    int parser = candidates.parsers[c];
+    if (parser == TypeCandidates.BOOLEAN) {
+      if (end == start) return NULL;
+      return isBoolean(buf, trimmedStart, trimmedEnd) ? TypeCandidates.VALID : TypeCandidates.MISMATCH;
+    }
+    if (candidates.trimTypes[c] == ValueMetaInterface.TRIM_TYPE_BOTH) {
+      return trimmedStart == trimmedEnd ? NULL : match(parser, 1, buf, trimmedStart, trimmedEnd);
+    }
+    return start == end ? NULL : match(parser, 0, buf, start, end);
+  }
+
+  private void trim(char[] buf, int start, int end) {
+    trimmedStart = start;
+    trimmedEnd = end;
+    while (trimmedStart < trimmedEnd && isSpace(buf[trimmedStart])) {
+      trimmedStart++;
+    }
+    while (trimmedEnd > trimmedStart && isSpace(buf[trimmedEnd - 1])) {
+      trimmedEnd--;
+    }
+  }
+
+  // a new stamp invalidates the parse results of the previous value
+  private void nextStamp() {
+    if (++stamp == 0) {
+      Arrays.fill(resultStamps, 0);
+      stamp = 1;
+    }
+  }
+
+  /**
+   * Picks the type for the values evaluated so far. Like StringEvaluator, numbers and integers
+   * that lose out to each other or to dates are dropped for good.
+   *
+   * @return a new value meta describing the conversion, strings if nothing else fits
+   */
+  public ValueMetaInterface getAdvice() {
+
+    if (viableCount == 0) {
+      ValueMetaInterface meta = new ValueMeta("adviced", ValueMetaInterface.TYPE_STRING);
+      meta.setLength(maxLength);
+      return meta;
+    }
+
+    // if there are numbers and integers, the precision decides
+    if (contains(ValueMetaInterface.TYPE_INTEGER) && contains(ValueMetaInterface.TYPE_NUMBER)) {
+      drop(maxPrecision == 0 ? ValueMetaInterface.TYPE_NUMBER : ValueMetaInterface.TYPE_INTEGER);
+    }
+    // if there are dates and integers, dates win
+    if (contains(ValueMetaInterface.TYPE_INTEGER) && contains(ValueMetaInterface.TYPE_DATE)) {
+      drop(ValueMetaInterface.TYPE_INTEGER);
+    }
+
+    // the longest mask for dates, the shortest for everything else, keeping the order of equal ones
+    boolean longest = contains(ValueMetaInterface.TYPE_DATE);
+    for (int i = 1; i < order.length; i++) {
+      int c = order[i];
+      int length = maskLength(c);
+      int j = i;
+      while (j > 0 && (longest ? maskLength(order[j - 1]) < length : maskLength(order[j - 1]) > length)) {
+        order[j] = order[j - 1];
+        j--;
+      }
+      order[j] = c;
+    }
+
+    int picked = -1;
+    for (int c : order) {
+      if (isViable(c)) {
+        picked = c;
+        break;
+      }
+    }
+    if (picked < 0) {
+      ValueMetaInterface meta = new ValueMeta("adviced", ValueMetaInterface.TYPE_STRING);
+      meta.setLength(maxLength);
+      return meta;
+    }
+
+    ValueMetaInterface meta = candidates.createValueMeta(picked);
+    if (meta.isNumber() && candidates.currencySymbols[picked] == null) {
+      meta.setPrecision(maxPrecision);
+      if (maxPrecision > 0 && maxLength > 0) {
+        meta.setLength(maxLength);
+      }
+    }
+    return meta;
+
+  }
+
+  /**
+   * @return the number of non-null values evaluated
+   */
+  public long getCount() {
+    return count;
+  }
+
+  /**
+   * @return the longest value evaluated
+   */
+  public int getMaxLength() {
+    return maxLength;
+  }
+
+  /**
+   * @return the most digits seen after a decimal separator, until the column saturated
+   */
+  public int getMaxPrecision() {
+    return maxPrecision;
+  }
+
+  /**
+   * @return the number of values looked up in the value cache
+   */
+  public long getCacheLookups() {
+    return cache == null ? 0 : cache.getLookups();
+  }
+
+  /**
+   * @return the number of values found in the value cache
+   */
+  public long getCacheHits() {
+    return cache == null ? 0 : cache.getHits();
+  }
+
+  /**
+   * @return the number of distinct value shapes seen, up to the maximum remembered
+   */
+  public int getShapeCount() {
+    return shapes == null ? 0 : shapes.size();
+  }
+
+  /**
+   * A column is saturated once all candidates are ruled out. Its advice is a string then, and further
+   * values only update the length.
+   */
+  public boolean isSaturated() {
+    return viableCount == 0;
+  }
+
+  /**
+   * @return the number of candidates not ruled out yet
+   */
+  public int getViableCount() {
+    return viableCount;
+  }
+
+  private int match(int parser, int trimmed, char[] buf, int start, int end) {
+    int slot = parser * 2 + trimmed;
+    if (resultStamps[slot] != stamp) {
+      resultStamps[slot] = stamp;
+      results[slot] = candidates.match(parser, buf, start, end);
+    }
+    return results[slot];
+  }
+
+  private boolean isViable(int c) {
+    return (viable[c >>> 6] & (1L << c)) != 0;
+  }
+
+  // a viable candidate of the type that converted at least one value
+  private boolean contains(int type) {
+    for (int w = 0; w < words; w++) {
+      long bits = viable[w] & successes[w];
+      while (bits != 0) {
+        int c = (w << 6) + Long.numberOfTrailingZeros(bits);
+        bits &= bits - 1;
+        if (candidates.types[c] == type) return true;
+      }
+    }
+    return false;
+  }
+
+  private void drop(int type) {
+    for (int c = 0; c < candidates.size(); c++) {
+      if (candidates.types[c] == type && isViable(c)) {
+        viable[c >>> 6] &= ~(1L << c);
+        viableCount--;
+      }
+    }
+  }
+
+  private int maskLength(int c) {
+    String mask = candidates.masks[c];
+    return mask == null ? 0 : mask.length();
+  }
+
+  private static boolean isBoolean(char[] buf, int start, int end) {
+    return matches(buf, start, end, "Y") || matches(buf, start, end, "N") || matches(buf, start, end, "TRUE") || matches(buf, start, end, "FALSE");
+  }
+
+  private static boolean matches(char[] buf, int start, int end, String token) {
+    if (end - start != token.length()) return false;
+    for (int i = 0; i < token.length(); i++) {
+      if (Character.toUpperCase(buf[start + i]) != token.charAt(i)) return false;
+    }
+    return true;
+  }
+
+  // whitespace as Kettle trims it
+  private static boolean isSpace(char c) {
+    return c == ' ' || c == '\t' || c == '\r' || c == '\n' || Character.isWhitespace(c);
+  }
+
+}
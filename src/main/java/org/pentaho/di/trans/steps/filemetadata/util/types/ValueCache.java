@@ -0,0 +1,151 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+/**
+ * Remembers the recent distinct values of a column, so repeated values can skip type evaluation.
+ * The cache holds a fixed number of values up to a maximum length in preallocated arrays. Once it is
+ * full, values are evicted in CLOCK order: the hand passes over values hit since it last came by,
+ * clearing their mark, and evicts the first unmarked one. Values hit again stay cached, values seen
+ * once make room first.
+ */
+final class ValueCache {
+
+  private final int capacity;
+  private final int maxValueLength;
+
+  // entries, each value in its own stretch of the pool
+  private final char[] pool;
+  private final int[] lengths;
+  private final int[] hashes;
+  private final boolean[] referenced;
+  private int size = 0;
+  private int hand = 0;
+
+  // open addressing table of entry + 1
+  private final int[] table;
+  private final int mask;
+
+  private long lookups = 0;
+  private long hits = 0;
+
+  ValueCache(int capacity, int maxValueLength) {
+    this.capacity = capacity;
+    this.maxValueLength = maxValueLength;
+    pool = new char[capacity * maxValueLength];
+    lengths = new int[capacity];
+    hashes = new int[capacity];
+    referenced = new boolean[capacity];
+    int tableSize = Integer.highestOneBit(Math.max(1, capacity) * 2 - 1) << 1;
+    table = new int[tableSize];
+    mask = tableSize - 1;
+  }
+
+  /**
+   * Looks up buf[start, end), adding it if it is not cached.
+   *
+   * @return true if the value was cached
+   */
+  boolean seen(char[] buf, int start, int end) {
+
+    lookups++;
+    int length = end - start;
+    if (length > maxValueLength) {
+      return false;
+    }
+
+    int hash = 0;
+    for (int i = start; i < end; i++) {
+      hash = 31 * hash + buf[i];
+    }
+
+    int slot = home(hash);
+    while (table[slot] != 0) {
+      int e = table[slot] - 1;
+      if (hashes[e] == hash && lengths[e] == length && equals(e, buf, start, length)) {
+        referenced[e] = true;
+        hits++;
+        return true;
+      }
+      slot = (slot + 1) & mask;
+    }
+
+    int e;
+    if (size < capacity) {
+      e = size++;
+    }
+    else {
+      while (referenced[hand]) {
+        referenced[hand] = false;
+        hand = (hand + 1) % capacity;
+      }
+      e = hand;
+      hand = (hand + 1) % capacity;
+      remove(e);
+      // the removal may have moved entries into the probe sequence
+      slot = home(hash);
+      while (table[slot] != 0) {
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    System.arraycopy(buf, start, pool, e * maxValueLength, length);
+    lengths[e] = length;
+    hashes[e] = hash;
+    referenced[e] = false;
+    table[slot] = e + 1;
+    return false;
+
+  }
+
+  /**
+   * @return the number of values looked up
+   */
+  long getLookups() {
+    return lookups;
+  }
+
+  /**
+   * @return the number of values found in the cache
+   */
+  long getHits() {
+    return hits;
+  }
+
+  // takes the entry out of the table, moving later entries of its probe sequence back
+  private void remove(int e) {
+
+    int i = home(hashes[e]);
+    while (table[i] != e + 1) {
+      i = (i + 1) & mask;
+    }
+
+    int j = i;
+    while (true) {
+      j = (j + 1) & mask;
+      if (table[j] == 0) {
+        table[i] = 0;
+        return;
+      }
+      int k = home(hashes[table[j] - 1]);
+      // entries whose home lies cyclically in (i, j] stay where they are
+      boolean stays = (i <= j) ? (i < k && k <= j) : (i < k || k <= j);
+      if (!stays) {
+        table[i] = table[j];
+        i = j;
+      }
+    }
+
+  }
+
+  private int home(int hash) {
+    return (hash ^ (hash >>> 16)) & mask;
+  }
+
+  private boolean equals(int e, char[] buf, int start, int length) {
+    int offset = e * maxValueLength;
+    for (int i = 0; i < length; i++) {
+      if (pool[offset + i] != buf[start + i]) return false;
+    }
+    return true;
+  }
+
+}
@@ -0,0 +1,96 @@
+package org.pentaho.di.trans.steps.filemetadata;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class FileMetadataResultTest {
+
+  private static FileMetadataResult roundTrip(FileMetadataResult result) throws IOException {
+    return FileMetadataResult.fromBytes(result.toBytes());
+  }
+
+  @Test
+  public void keepsAllValueTypes() throws Exception {
+
+    char[] chars = new char[70000];
+    Arrays.fill(chars, 'é');
+    String longValue = new String(chars);
+
+    Object[] fileValues = {Charset.forName("UTF-8"), ";", "\"", 3L, 0L, 1L, true};
+    List<Object[]> fieldValues = new ArrayList<>();
+    fieldValues.add(new Object[]{"id", "Integer", 15L, 0L, "#", null, 1.5d, false});
+    fieldValues.add(new Object[]{"name", "String", null, null, null, longValue, -0.25d, true});
+
+    FileMetadataResult result = roundTrip(new FileMetadataResult(fileValues, fieldValues));
+
+    assertTrue(result.isFound());
+    assertArrayEquals(fileValues, result.getFileValues());
+    assertEquals(2, result.getFieldValues().size());
+    assertArrayEquals(fieldValues.get(0), result.getFieldValues().get(0));
+    assertArrayEquals(fieldValues.get(1), result.getFieldValues().get(1));
+
+  }
+
+  @Test
+  public void keepsResultsOfMissingFiles() throws Exception {
+
+    FileMetadataResult result = roundTrip(new FileMetadataResult(null, new ArrayList<Object[]>(0)));
+
+    assertFalse(result.isFound());
+    assertNull(result.getFileValues());
+    assertTrue(result.getFieldValues().isEmpty());
+
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsUnknownCharsets() throws Exception {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBoolean(true);
+    out.writeInt(1);
+    out.writeByte(5); // charset
+    byte[] name = "no-such-charset".getBytes("UTF-8");
+    out.writeInt(name.length);
+    out.write(name);
+    out.writeInt(0);
+    out.flush();
+
+    FileMetadataResult.fromBytes(bytes.toByteArray());
+
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsTruncatedBytes() throws Exception {
+
+    List<Object[]> fieldValues = new ArrayList<>();
+    fieldValues.add(new Object[]{"id", 1L});
+    byte[] bytes = new FileMetadataResult(new Object[]{"x"}, fieldValues).toBytes();
+
+    FileMetadataResult.fromBytes(Arrays.copyOf(bytes, bytes.length - 3));
+
+  }
+
+  @Test(expected = IOException.class)
+  public void rejectsImpossibleLengths() throws Exception {
+
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    DataOutputStream out = new DataOutputStream(bytes);
+    out.writeBoolean(false);
+    out.writeInt(Integer.MAX_VALUE);
+    out.flush();
+
+    FileMetadataResult.fromBytes(bytes.toByteArray());
+
+  }
+
+}
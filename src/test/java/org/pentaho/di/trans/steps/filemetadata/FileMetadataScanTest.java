@@ -0,0 +1,82 @@
+package org.pentaho.di.trans.steps.filemetadata;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.pentaho.di.core.logging.KettleLogStore;
+import org.pentaho.di.core.logging.LogChannel;
+import org.pentaho.di.core.row.ValueMeta;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.variables.Variables;
+import org.pentaho.di.trans.steps.filemetadata.util.delimiters.DelimiterDetector;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class FileMetadataScanTest {
+
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    KettleLogStore.init();
+    file = File.createTempFile("scan", ".csv");
+  }
+
+  @After
+  public void tearDown() {
+    file.delete();
+  }
+
+  // a header, data lines up to the given size, and two footer lines
+  private void writeReport(long size) throws IOException {
+    try (BufferedWriter out = Files.newBufferedWriter(file.toPath(), Charset.forName("US-ASCII"))) {
+      out.write("id;name;amount\n");
+      long written = 0;
+      int row = 0;
+      while (written < size) {
+        String line = row + ";name" + row + ";" + row + "." + (row % 100) + "\n";
+        out.write(line);
+        written += line.length();
+        row++;
+      }
+      out.write("Total: " + row + "\n");
+      out.write("End of report\n");
+    }
+  }
+
+  @Test
+  public void findsFootersOfStratifiedSamplesScannedInParallel() throws Exception {
+
+    // large enough for a parallel scan, which must not replace the stratified sample
+    writeReport(2 * DelimiterDetector.DEFAULT_CHUNK_SIZE + 1024 * 1024);
+
+    FileMetadataMeta meta = new FileMetadataMeta();
+    meta.setDefault();
+    meta.setStratifiedSampling(true);
+    meta.setParallelDetection(true);
+
+    FileMetadataResult result = new FileMetadataScan(meta, new Variables(), new LogChannel("FileMetadataScanTest"), file.getPath()).call();
+
+    assertTrue(result.isFound());
+    Object[] fileValues = result.getFileValues();
+    assertEquals(";", fileValues[1]);
+    assertEquals(3L, fileValues[3]);
+    // footers
+    assertEquals(2L, fileValues[5]);
+    assertEquals(true, fileValues[6]);
+
+    // the footer lines in the tail window are no data
+    assertEquals(3, result.getFieldValues().size());
+    assertEquals(ValueMeta.getTypeDesc(ValueMetaInterface.TYPE_INTEGER), result.getFieldValues().get(0)[1]);
+    assertEquals(ValueMeta.getTypeDesc(ValueMetaInterface.TYPE_STRING), result.getFieldValues().get(1)[1]);
+    assertEquals(ValueMeta.getTypeDesc(ValueMetaInterface.TYPE_NUMBER), result.getFieldValues().get(2)[1]);
+
+  }
+
+}
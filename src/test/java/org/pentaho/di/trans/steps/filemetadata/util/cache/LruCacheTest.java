@@ -0,0 +1,63 @@
+package org.pentaho.di.trans.steps.filemetadata.util.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LruCacheTest {
+
+  @Test
+  public void evictsTheLeastRecentlyUsedEntry() {
+
+    LruCache<String, Integer> cache = new LruCache<>(3);
+    cache.put("a", 1);
+    cache.put("b", 2);
+    cache.put("c", 3);
+
+    // a is used again, so b is the least recently used one
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    cache.put("d", 4);
+
+    assertEquals(3, cache.size());
+    assertNull(cache.get("b"));
+    assertEquals(Integer.valueOf(1), cache.get("a"));
+    assertEquals(Integer.valueOf(3), cache.get("c"));
+    assertEquals(Integer.valueOf(4), cache.get("d"));
+
+  }
+
+  @Test
+  public void countsHitsAndMisses() {
+
+    LruCache<String, Integer> cache = new LruCache<>(2);
+    assertNull(cache.get("a"));
+    cache.put("a", 1);
+    cache.get("a");
+    cache.get("a");
+    cache.get("b");
+
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+
+  }
+
+  @Test
+  public void replacesValuesOfTheSameKey() {
+
+    LruCache<String, Integer> cache = new LruCache<>(2);
+    cache.put("a", 1);
+    cache.put("a", 2);
+    assertEquals(1, cache.size());
+    assertEquals(Integer.valueOf(2), cache.get("a"));
+
+    cache.remove("a");
+    assertNull(cache.get("a"));
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsEmptyCaches() {
+    new LruCache<String, Integer>(0);
+  }
+
+}
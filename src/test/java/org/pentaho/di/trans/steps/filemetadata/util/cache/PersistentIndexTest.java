@@ -0,0 +1,171 @@
+package org.pentaho.di.trans.steps.filemetadata.util.cache;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class PersistentIndexTest {
+
+  private File dir;
+  private File file;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("index").toFile();
+    file = new File(dir, "metadata.idx");
+  }
+
+  @After
+  public void tearDown() {
+    File[] files = dir.listFiles();
+    if (files != null) {
+      for (File f : files) {
+        f.delete();
+      }
+    }
+    dir.delete();
+  }
+
+  private static byte[] bytes(String value) {
+    return value.getBytes();
+  }
+
+  @Test
+  public void survivesReopening() throws Exception {
+
+    PersistentIndex index = new PersistentIndex(file, 100);
+    assertNull(index.get("a"));
+    index.put("a", bytes("one"));
+    index.put("b", bytes("two"));
+    index.put("a", bytes("three"));
+
+    PersistentIndex reopened = new PersistentIndex(file, 100);
+    assertArrayEquals(bytes("three"), reopened.get("a"));
+    assertArrayEquals(bytes("two"), reopened.get("b"));
+    assertEquals(2, reopened.size());
+
+  }
+
+  @Test
+  public void seesRecordsOfOtherWriters() throws Exception {
+
+    PersistentIndex first = new PersistentIndex(file, 100);
+    PersistentIndex second = new PersistentIndex(file, 100);
+
+    first.put("a", bytes("one"));
+    assertArrayEquals(bytes("one"), second.get("a"));
+    second.put("b", bytes("two"));
+    assertArrayEquals(bytes("two"), first.get("b"));
+
+  }
+
+  @Test
+  public void compactsToTheMostRecentEntries() throws Exception {
+
+    PersistentIndex index = new PersistentIndex(file, 10);
+    PersistentIndex other = new PersistentIndex(file, 10);
+    for (int i = 0; i < 19; i++) {
+      index.put("key" + i, bytes("value" + i));
+      if (i == 0) {
+        assertArrayEquals(bytes("value0"), other.get("key0"));
+      }
+    }
+    long uncompacted = file.length();
+    index.put("key19", bytes("value19"));
+
+    assertTrue(file.length() < uncompacted);
+    assertEquals(10, index.size());
+    assertNull(index.get("key9"));
+    assertArrayEquals(bytes("value10"), index.get("key10"));
+
+    // others notice the file was replaced
+    assertArrayEquals(bytes("value19"), other.get("key19"));
+    assertNull(other.get("key0"));
+
+  }
+
+  @Test
+  public void keepsEntriesInUse() throws Exception {
+
+    PersistentIndex index = new PersistentIndex(file, 10);
+    index.put("used", bytes("value"));
+    for (int i = 0; i < 30; i++) {
+      index.put("key" + i, bytes("value" + i));
+      assertNotNull(index.get("used"));
+    }
+
+  }
+
+  @Test
+  public void cutsOffTornRecords() throws Exception {
+
+    PersistentIndex index = new PersistentIndex(file, 100);
+    index.put("a", bytes("one"));
+    long length = file.length();
+    index.put("b", bytes("two"));
+
+    // a writer died half way through its record
+    try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+      raf.setLength(file.length() - 2);
+    }
+
+    PersistentIndex reopened = new PersistentIndex(file, 100);
+    assertArrayEquals(bytes("one"), reopened.get("a"));
+    assertNull(reopened.get("b"));
+
+    reopened.put("c", bytes("three"));
+    assertTrue(file.length() > length);
+    PersistentIndex again = new PersistentIndex(file, 100);
+    assertArrayEquals(bytes("one"), again.get("a"));
+    assertArrayEquals(bytes("three"), again.get("c"));
+
+  }
+
+  @Test
+  public void sharesIndexesOfTheSameFile() throws Exception {
+    assertSame(PersistentIndex.open(file, 10), PersistentIndex.open(new File(dir, "./metadata.idx"), 10));
+    assertNotSame(PersistentIndex.open(file, 10), PersistentIndex.open(file, 20));
+  }
+
+  @Test
+  public void leavesOtherFilesAlone() throws Exception {
+
+    byte[] content = bytes("id;name\n1;one\n");
+    Files.write(file.toPath(), content);
+
+    PersistentIndex index = new PersistentIndex(file, 10);
+    try {
+      index.put("a", bytes("one"));
+      fail("Expected the file to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+    try {
+      index.get("a");
+      fail("Expected the file to be rejected");
+    } catch (IOException e) {
+      // expected
+    }
+    assertArrayEquals(content, Files.readAllBytes(file.toPath()));
+
+  }
+
+  @Test
+  public void startsOverOnAnEmptyFile() throws Exception {
+
+    assertTrue(file.createNewFile());
+    PersistentIndex index = new PersistentIndex(file, 10);
+    assertNull(index.get("a"));
+    index.put("a", bytes("one"));
+    assertArrayEquals(bytes("one"), new PersistentIndex(file, 10).get("a"));
+
+  }
+
+}
@@ -3,10 +3,17 @@ package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
 
 import com.google.common.base.Charsets;
 import org.junit.Test;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.FileChannelSource;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.*;
 
@@ -291,4 +298,375 @@ public class DelimiterDetectorTest {
     }
 
   }
+
+  @Test
+  public void detectsSimpleCSVFromBytes() throws Exception {
+
+    try(InputStream f = Files.newInputStream(Paths.get(getClass().getResource("/delimited/simple-2h-3f-enclosed.csv").toURI()))){
+      DelimiterDetector detector = new DelimiterDetectorBuilder()
+                                       .withDelimiterCandidates(' ',';','\t',',')
+                                       .withEnclosureCandidates('"','\t')
+                                       .withInput(f, Charsets.UTF_8)
+                                       .build();
+      DelimiterDetector.DetectionResult result = detector.detectDelimiters();
+      assertNotNull(result);
+      assertEquals(',', (char)result.getDelimiter());
+      assertEquals('"', (char)result.getEnclosure());
+      assertEquals(7, result.getDataLines());
+      assertEquals(2, result.getBadHeaders());
+      assertEquals(3, result.getBadFooters());
+      assertEquals(2, result.getDataLineFrequency());
+    }
+
+  }
+
+  @Test
+  public void byteScanMatchesLineScan() throws Exception {
+
+    String[] files = {"simple.csv", "simple-enclosed.csv", "simple-optionally-enclosed.csv", "simple-6h.csv", "simple-6f.csv",
+        "simple-2h-3f.csv", "simple-2h-3f-enclosed.csv", "tab-separated.csv", "excel-export.csv"};
+
+    for (String file : files) {
+      byte[] content = Files.readAllBytes(Paths.get(getClass().getResource("/delimited/" + file).toURI()));
+      assertSameResult(file, detectFromLines(content, Charsets.UTF_8), detectFromBytes(content, Charsets.UTF_8));
+      assertSameResult(file, detectFromLines(content, Charsets.ISO_8859_1), detectFromBytes(content, Charsets.ISO_8859_1));
+    }
+
+  }
+
+  @Test
+  public void byteScanHandlesAllLineBreaks() throws Exception {
+
+    byte[] content = "h\r\n1,\"a\",b\r2,\"c\",d\n3,e,f\r\n\r\n4,g,h".getBytes(Charsets.UTF_8);
+
+    DelimiterDetector.DetectionResult result = detectFromBytes(content, Charsets.UTF_8);
+    assertNotNull(result);
+    assertSameResult("line breaks", detectFromLines(content, Charsets.UTF_8), result);
+
+  }
+
+  @Test
+  public void fallsBackToDecodingForUTF16() throws Exception {
+
+    byte[] content = Files.readAllBytes(Paths.get(getClass().getResource("/delimited/simple-6h.csv").toURI()));
+    byte[] utf16 = new String(content, Charsets.UTF_8).getBytes(Charsets.UTF_16LE);
+
+    DelimiterDetector.DetectionResult result = detectFromBytes(utf16, Charsets.UTF_16LE);
+    assertNotNull(result);
+    assertEquals(',', (char)result.getDelimiter());
+    assertEquals(7, result.getDataLines());
+    assertEquals(6, result.getBadHeaders());
+
+  }
+
+  @Test
+  public void stopsEarlyWhenConfident() throws Exception {
+
+    StringBuilder content = new StringBuilder("Header\n");
+    for (int i = 0; i < 10000; i++) {
+      content.append(i).append(",foo,\"bar\"\n");
+    }
+
+    DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                   .withDelimiterCandidates(' ',';','\t',',')
+                                                   .withEnclosureCandidates('"','\'')
+                                                   .withConfidenceThreshold(0.95, 500)
+                                                   .withInput(new ByteArrayInputStream(content.toString().getBytes(Charsets.UTF_8)), Charsets.UTF_8)
+                                                   .build()
+                                                   .detectDelimiters();
+    assertNotNull(result);
+    assertEquals(',', (char)result.getDelimiter());
+    assertEquals('"', (char)result.getEnclosure());
+    assertTrue(result.isStoppedEarly());
+    assertEquals(500, result.getScannedLines());
+    assertEquals(1, result.getBadHeaders());
+    assertEquals(499, result.getDataLines());
+    assertTrue(result.getConfidence() >= 0.95);
+
+  }
+
+  @Test
+  public void keepsScanningWhenDelimitersCompete() throws Exception {
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      content.append(i).append(";foo,bar\n");
+    }
+
+    DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                   .withDelimiterCandidates(';',',')
+                                                   .withConfidenceThreshold(0.95, 500)
+                                                   .withInput(new ByteArrayInputStream(content.toString().getBytes(Charsets.UTF_8)), Charsets.UTF_8)
+                                                   .build()
+                                                   .detectDelimiters();
+    assertNotNull(result);
+    assertEquals(';', (char)result.getDelimiter());
+    assertFalse(result.isStoppedEarly());
+    assertEquals(2000, result.getScannedLines());
+    assertEquals(0, result.getConfidence(), 0.0);
+
+  }
+
+  @Test
+  public void detectsMultiCharDelimiters() throws Exception {
+
+    for (String delimiter : new String[]{"||", "~|~", "::"}) {
+
+      StringBuilder content = new StringBuilder("Report\n");
+      for (int i = 0; i < 20; i++) {
+        content.append(i).append(delimiter).append("''a").append(delimiter).append("b''").append(delimiter).append("c\n");
+      }
+
+      DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                     .withDelimiterCandidates(",", "|", ":", "||", "~|~", "::")
+                                                     .withEnclosureCandidates("\"", "''")
+                                                     .withInput(new ByteArrayInputStream(content.toString().getBytes(Charsets.UTF_8)), Charsets.UTF_8)
+                                                     .build()
+                                                     .detectDelimiters();
+      assertNotNull(delimiter, result);
+      assertEquals(delimiter, delimiter, result.getDelimiterString());
+      assertEquals(delimiter, "''", result.getEnclosureString());
+      assertNull(result.getEnclosure());
+      assertEquals(delimiter, 2, result.getDataLineFrequency());
+      assertEquals(delimiter, 1, result.getBadHeaders());
+      assertEquals(delimiter, 20, result.getDataLines());
+    }
+
+  }
+
+  @Test
+  public void countsOverlappingDelimitersOnce() throws Exception {
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 10; i++) {
+      content.append("a||||b||c\n");
+    }
+
+    DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                   .withDelimiterCandidates("||")
+                                                   .withInput(new BufferedReader(new java.io.StringReader(content.toString())))
+                                                   .build()
+                                                   .detectDelimiters();
+    assertNotNull(result);
+    assertEquals(3, result.getDataLineFrequency());
+
+  }
+
+  @Test
+  public void multiCharByteScanMatchesCharScan() throws Exception {
+
+    String content = "h1~|~h2\n1~|~\"x~|~y\"\n2~|~\"a\"\"b\"\n3~|~z\n€~|~€\n";
+    for (Charset charset : new Charset[]{Charsets.UTF_8, Charsets.UTF_16}) {
+      DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                     .withDelimiterCandidates("~|~", "|", "~")
+                                                     .withEnclosureCandidates("\"")
+                                                     .withInput(new ByteArrayInputStream(content.getBytes(charset)), charset)
+                                                     .build()
+                                                     .detectDelimiters();
+      assertNotNull(charset.name(), result);
+      assertEquals(charset.name(), "~|~", result.getDelimiterString());
+      assertEquals(charset.name(), '"', (char) result.getEnclosure());
+      assertEquals(charset.name(), 5, result.getDataLines());
+    }
+
+  }
+
+  @Test
+  public void detectsRecordsSpanningLines() throws Exception {
+
+    StringBuilder content = new StringBuilder("Report\nid;comment;value\n");
+    for (int i = 0; i < 10; i++) {
+      content.append(i).append(";\"first-line\nsecond;line\";").append(i * 2).append('\n');
+    }
+    content.append("Total\n");
+
+    for (Charset charset : new Charset[]{Charsets.UTF_8, Charsets.UTF_16}) {
+      byte[] bytes = content.toString().getBytes(charset);
+      for (DelimiterDetector.DetectionResult result : new DelimiterDetector.DetectionResult[]{detectFromBytes(bytes, charset), detectFromLines(bytes, charset)}) {
+        assertNotNull(charset.name(), result);
+        assertEquals(charset.name(), ';', (char) result.getDelimiter());
+        assertEquals(charset.name(), '"', (char) result.getEnclosure());
+        assertEquals(charset.name(), 2, result.getDataLineFrequency());
+        assertEquals(charset.name(), 11, result.getDataLines());
+        assertEquals(charset.name(), 1, result.getBadHeaders());
+        assertEquals(charset.name(), 1, result.getBadHeaderLines());
+        assertEquals(charset.name(), 1, result.getBadFooters());
+        assertEquals(charset.name(), 1, result.getBadFooterLines());
+      }
+    }
+
+  }
+
+  @Test
+  public void countsPhysicalLinesOfRecordsSpanningLines() throws Exception {
+
+    StringBuilder content = new StringBuilder("\"multi\nline\nheader\"\n");
+    for (int i = 0; i < 10; i++) {
+      content.append(i).append(",a,b\n");
+    }
+
+    DelimiterDetector.DetectionResult result = detectFromBytes(content.toString().getBytes(Charsets.UTF_8), Charsets.UTF_8);
+    assertNotNull(result);
+    assertEquals(',', (char) result.getDelimiter());
+    assertEquals(10, result.getDataLines());
+    assertEquals(1, result.getBadHeaders());
+    assertEquals(3, result.getBadHeaderLines());
+
+  }
+
+  @Test
+  public void endsRecordsAtMaxRecordLength() throws Exception {
+
+    // an unbalanced enclosure must not swallow the rest of the file
+    StringBuilder content = new StringBuilder("a;b;c\n1;\"2;3\n");
+    for (int i = 0; i < 10; i++) {
+      content.append(i).append(";x;y\n");
+    }
+    byte[] bytes = content.toString().getBytes(Charsets.UTF_8);
+
+    DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                   .withDelimiterCandidates(';')
+                                                   .withEnclosureCandidates('"')
+                                                   .withMaxRecordLength(20)
+                                                   .withInput(new ByteArrayInputStream(bytes), Charsets.UTF_8)
+                                                   .build()
+                                                   .detectDelimiters();
+    assertNotNull(result);
+    assertEquals(2, result.getDataLineFrequency());
+    assertEquals(7, result.getDataLines());
+    assertEquals(2, result.getBadHeaders());
+    assertEquals(5, result.getBadHeaderLines());
+
+    result = new DelimiterDetectorBuilder()
+                 .withDelimiterCandidates(';')
+                 .withEnclosureCandidates('"')
+                 .withMaxRecordLength(0)
+                 .withInput(new ByteArrayInputStream(bytes), Charsets.UTF_8)
+                 .build()
+                 .detectDelimiters();
+    assertNotNull(result);
+    assertEquals(10, result.getDataLines());
+    assertEquals(2, result.getBadHeaders());
+
+  }
+
+  @Test
+  public void parallelScanMatchesSequentialScan() throws Exception {
+
+    StringBuilder content = new StringBuilder("Report\r\n\r\nid,name,value\r\n");
+    for (int i = 0; i < 500; i++) {
+      content.append(i).append(i % 7 == 0 ? ",\"x,y\"," : ",n,").append(i * 3).append(i % 3 == 0 ? "\r\n" : "\n");
+    }
+    content.append("Total\nEnd\n");
+
+    // the second variant has a record spanning lines, it may fall back to a sequential scan
+    String[] variants = {content.toString(), content.toString().replace("x,y", "x\ny")};
+
+    for (String variant : variants) {
+      byte[] bytes = variant.getBytes(Charsets.UTF_8);
+      Path path = Files.createTempFile("parallel", ".csv");
+      try {
+        Files.write(path, bytes);
+        DelimiterDetector.DetectionResult expected = detectFromBytes(bytes, Charsets.UTF_8);
+        assertNotNull(expected);
+        assertEquals(',', (char) expected.getDelimiter());
+        for (long chunkSize : new long[]{1, 64, 1000}) {
+          try (FileChannelSource source = new FileChannelSource(path)) {
+            DelimiterDetector detector = new DelimiterDetectorBuilder()
+                                             .withDelimiterCandidates(' ',';','\t',',')
+                                             .withEnclosureCandidates('"','\'')
+                                             .withInput(source, Charsets.UTF_8)
+                                             .withParallelism(4)
+                                             .build();
+            detector.setChunkSize(chunkSize);
+            DelimiterDetector.DetectionResult actual = detector.detectDelimiters();
+            assertSameResult("chunk size " + chunkSize, expected, actual);
+            assertEquals(expected.getScannedLines(), actual.getScannedLines());
+            assertEquals(expected.getBadHeaderLines(), actual.getBadHeaderLines());
+            assertEquals(expected.getBadFooterLines(), actual.getBadFooterLines());
+            assertTrue(actual.isEndOfInput());
+          }
+        }
+      }
+      finally {
+        Files.delete(path);
+      }
+    }
+
+  }
+
+  @Test
+  public void scansInParallelOnASharedPool() throws Exception {
+
+    StringBuilder content = new StringBuilder("id;name;value\n");
+    for (int i = 0; i < 500; i++) {
+      content.append(i).append(";n;").append(i * 3).append('\n');
+    }
+    byte[] bytes = content.toString().getBytes(Charsets.UTF_8);
+    DelimiterDetector.DetectionResult expected = detectFromBytes(bytes, Charsets.UTF_8);
+
+    Path path = Files.createTempFile("parallel", ".csv");
+    ForkJoinPool pool = new ForkJoinPool(3);
+    try {
+      Files.write(path, bytes);
+      for (int run = 0; run < 2; run++) {
+        try (FileChannelSource source = new FileChannelSource(path)) {
+          DelimiterDetector detector = new DelimiterDetectorBuilder()
+                                           .withDelimiterCandidates(' ',';','\t',',')
+                                           .withEnclosureCandidates('"','\'')
+                                           .withInput(source, Charsets.UTF_8)
+                                           .withPool(pool)
+                                           .build();
+          assertEquals(3, detector.getParallelism());
+          detector.setChunkSize(64);
+          DelimiterDetector.DetectionResult actual = detector.detectDelimiters();
+          assertSameResult("run " + run, expected, actual);
+          assertEquals(expected.getScannedLines(), actual.getScannedLines());
+        }
+        assertFalse(pool.isShutdown());
+      }
+    }
+    finally {
+      pool.shutdown();
+      Files.delete(path);
+    }
+
+  }
+
+  private DelimiterDetector.DetectionResult detectFromLines(byte[] content, Charset charset) throws Exception {
+    try(BufferedReader f = new BufferedReader(new InputStreamReader(new ByteArrayInputStream(content), charset))){
+      return new DelimiterDetectorBuilder()
+                 .withDelimiterCandidates(' ',';','\t',',')
+                 .withEnclosureCandidates('"','\'')
+                 .withInput(f)
+                 .build()
+                 .detectDelimiters();
+    }
+  }
+
+  private DelimiterDetector.DetectionResult detectFromBytes(byte[] content, Charset charset) throws Exception {
+    return new DelimiterDetectorBuilder()
+               .withDelimiterCandidates(' ',';','\t',',')
+               .withEnclosureCandidates('"','\'')
+               .withInput(new ByteArrayInputStream(content), charset)
+               .build()
+               .detectDelimiters();
+  }
+
+  private void assertSameResult(String message, DelimiterDetector.DetectionResult expected, DelimiterDetector.DetectionResult actual) {
+    if (expected == null){
+      assertNull(message, actual);
+      return;
+    }
+    assertNotNull(message, actual);
+    assertEquals(message, expected.getDelimiter(), actual.getDelimiter());
+    assertEquals(message, expected.getEnclosure(), actual.getEnclosure());
+    assertEquals(message, expected.getDataLines(), actual.getDataLines());
+    assertEquals(message, expected.getBadHeaders(), actual.getBadHeaders());
+    assertEquals(message, expected.getBadFooters(), actual.getBadFooters());
+    assertEquals(message, expected.getDataLineFrequency(), actual.getDataLineFrequency());
+    assertEquals(message, expected.isConsistentEnclosure(), actual.isConsistentEnclosure());
+    assertEquals(message, expected.isEnclosureSeen(), actual.isEnclosureSeen());
+  }
+
 }
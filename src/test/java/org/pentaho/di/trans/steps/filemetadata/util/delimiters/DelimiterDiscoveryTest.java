@@ -0,0 +1,109 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class DelimiterDiscoveryTest {
+
+  private static final List<String> NONE = Collections.emptyList();
+
+  private static byte[] lines(String delimiter, int count) {
+    StringBuilder content = new StringBuilder("Exported records\n");
+    for (int i = 0; i < count; i++) {
+      content.append(i).append(delimiter).append("some text").append(delimiter).append(i * 0.5).append(delimiter).append("x\n");
+    }
+    return content.toString().getBytes(Charsets.UTF_8);
+  }
+
+  private ArrayList<String> discover(byte[] content, Charset charset, List<String> configured, List<String> enclosures) throws Exception {
+    return new DelimiterDiscovery(charset, 0).discover(new ByteArrayInputStream(content), configured, enclosures);
+  }
+
+  @Test
+  public void discoversExoticDelimiters() throws Exception {
+
+    for (String delimiter : new String[]{"|", "^", "\u001F", "~"}) {
+      ArrayList<String> candidates = discover(lines(delimiter, 100), Charsets.UTF_8, NONE, NONE);
+      assertFalse(delimiter, candidates.isEmpty());
+      assertEquals(delimiter, delimiter, candidates.get(0));
+      assertFalse(candidates.contains("s"));
+      assertFalse(candidates.contains("0"));
+    }
+
+  }
+
+  @Test
+  public void discoveredCandidatesAreDetected() throws Exception {
+
+    byte[] content = lines("\u001F", 100);
+    ArrayList<String> candidates = discover(content, Charsets.UTF_8, NONE, Arrays.asList("\""));
+
+    DelimiterDetector.DetectionResult result = new DelimiterDetectorBuilder()
+                                                   .withDelimiterStrings(candidates)
+                                                   .withEnclosureCandidates('"')
+                                                   .withInput(new ByteArrayInputStream(content), Charsets.UTF_8)
+                                                   .build()
+                                                   .detectDelimiters();
+    assertNotNull(result);
+    assertEquals('\u001F', (char) result.getDelimiter());
+    assertEquals(1, result.getBadHeaders());
+    assertEquals(100, result.getDataLines());
+
+  }
+
+  @Test
+  public void keepsConfiguredCandidatesFirstIfPresent() throws Exception {
+
+    try (InputStream f = Files.newInputStream(Paths.get(getClass().getResource("/delimited/simple-2h-3f-enclosed.csv").toURI()))) {
+      ArrayList<String> candidates = new DelimiterDiscovery(Charsets.UTF_8, 0).discover(f, Arrays.asList("\t", ";", ","), Arrays.asList("\""));
+      assertEquals(",", candidates.get(0));
+      assertFalse(candidates.contains("\t"));
+      assertFalse(candidates.contains(";"));
+      assertFalse(candidates.contains("\""));
+    }
+
+  }
+
+  @Test
+  public void ignoresUnstableSymbols() throws Exception {
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100; i++) {
+      content.append(i).append(',');
+      for (int j = 0; j < i % 7; j++) {
+        content.append('-');
+      }
+      content.append(",end\n");
+    }
+
+    ArrayList<String> candidates = discover(content.toString().getBytes(Charsets.UTF_8), Charsets.UTF_8, NONE, NONE);
+    assertEquals(Arrays.asList(","), candidates);
+
+  }
+
+  @Test
+  public void discoversInDecodedCharsets() throws Exception {
+
+    byte[] content = new String(lines("|", 50), Charsets.UTF_8).getBytes(Charsets.UTF_16);
+    ArrayList<String> candidates = discover(content, Charsets.UTF_16, NONE, NONE);
+    assertEquals("|", candidates.get(0));
+
+    content = new String(lines("¦", 50), Charsets.UTF_8).getBytes(Charsets.ISO_8859_1);
+    candidates = discover(content, Charsets.ISO_8859_1, NONE, NONE);
+    assertEquals("¦", candidates.get(0));
+
+  }
+
+}
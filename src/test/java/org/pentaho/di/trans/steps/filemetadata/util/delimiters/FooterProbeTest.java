@@ -0,0 +1,103 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+import org.pentaho.di.trans.steps.filemetadata.util.sampling.FileChannelSource;
+
+import java.io.BufferedReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class FooterProbeTest {
+
+  private DelimiterDetector.DetectionResult detectHead(Path path, long rowLimit) throws Exception {
+    try(BufferedReader f = Files.newBufferedReader(path, Charsets.UTF_8)){
+      return new DelimiterDetectorBuilder()
+                 .withDelimiterCandidates(' ',';','\t',',')
+                 .withEnclosureCandidates('"')
+                 .withRowLimit(rowLimit)
+                 .withInput(f)
+                 .build()
+                 .detectDelimiters();
+    }
+  }
+
+  @Test
+  public void detectsFootersFromTail() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-2h-3f.csv").toURI());
+    DelimiterDetector.DetectionResult head = detectHead(path, 5);
+    assertNotNull(head);
+    assertFalse(head.isEndOfInput());
+
+    try (FileChannelSource source = new FileChannelSource(path)) {
+      FooterProbe probe = new FooterProbe(head, Charsets.UTF_8, 30);
+      assertEquals(3, probe.probe(source, 100));
+      assertEquals(3, probe.probe(source, 64 * 1024));
+    }
+
+  }
+
+  @Test
+  public void detectsFootersInTailReadAlready() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-2h-3f.csv").toURI());
+    DelimiterDetector.DetectionResult head = detectHead(path, 5);
+    byte[] content = Files.readAllBytes(path);
+
+    // the tail starts on the line start following the middle of the file
+    int offset = content.length / 2;
+    while (content[offset - 1] != '\n') {
+      offset++;
+    }
+    assertEquals(3, new FooterProbe(head, Charsets.UTF_8, 30).probe(content, offset, content.length - offset));
+
+  }
+
+  @Test
+  public void detectsFootersWithEnclosure() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-2h-3f-enclosed.csv").toURI());
+    DelimiterDetector.DetectionResult head = detectHead(path, 5);
+    assertNotNull(head);
+    assertEquals('"', (char) head.getEnclosure());
+
+    try (FileChannelSource source = new FileChannelSource(path)) {
+      assertEquals(3, new FooterProbe(head, Charsets.UTF_8, 30).probe(source, 100));
+    }
+
+  }
+
+  @Test
+  public void findsNoFootersInPlainFile() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-6h.csv").toURI());
+    DelimiterDetector.DetectionResult head = detectHead(path, 0);
+    assertNotNull(head);
+    assertTrue(head.isEndOfInput());
+
+    try (FileChannelSource source = new FileChannelSource(path)) {
+      assertEquals(0, new FooterProbe(head, Charsets.UTF_8, 30).probe(source, 50));
+    }
+
+  }
+
+  @Test
+  public void givesUpWithoutDataLinesInTail() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-2h-3f.csv").toURI());
+    DelimiterDetector.DetectionResult head = detectHead(path, 5);
+
+    try (FileChannelSource source = new FileChannelSource(path)) {
+      // the tail only holds the summary section
+      assertEquals(-1, new FooterProbe(head, Charsets.UTF_8, 30).probe(source, 60));
+      // more footers than allowed
+      assertEquals(-1, new FooterProbe(head, Charsets.UTF_8, 2).probe(source, 100));
+    }
+
+  }
+
+}
@@ -0,0 +1,63 @@
+package org.pentaho.di.trans.steps.filemetadata.util.delimiters;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.*;
+
+public class RecordTokenizerTest {
+
+  @Test
+  public void splitsOnMultiCharDelimiters() throws Exception {
+
+    RecordTokenizer tokenizer = new RecordTokenizer(new StringReader("a~|~b|c~|~~|~d\n\n"), "~|~", null, 0);
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{"a", "b|c", "", "d"}, tokenizer.getFields());
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{""}, tokenizer.getFields());
+    assertFalse(tokenizer.next());
+
+  }
+
+  @Test
+  public void keepsEnclosedDelimiters() throws Exception {
+
+    RecordTokenizer tokenizer = new RecordTokenizer(new StringReader("1||''a||b''||''c''''d''||x''y"), "||", "''", 0);
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{"1", "a||b", "c''d", "x''y"}, tokenizer.getFields());
+
+    tokenizer = new RecordTokenizer(new StringReader("1,\"a,b\",\"c\"\"d\",x\"y"), ",", "\"", 0);
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{"1", "a,b", "c\"d", "x\"y"}, tokenizer.getFields());
+
+  }
+
+  @Test
+  public void readsEnclosedLineBreaks() throws Exception {
+
+    RecordTokenizer tokenizer = new RecordTokenizer(new StringReader("1||''a\r\nb''||c\r\n2||''open\n"), "||", "''", 0);
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{"1", "a\nb", "c"}, tokenizer.getFields());
+    assertTrue(tokenizer.next());
+    assertArrayEquals(new String[]{"2", "open"}, tokenizer.getFields());
+    assertFalse(tokenizer.next());
+
+  }
+
+  @Test
+  public void skipsHeaderLines() throws Exception {
+
+    RecordTokenizer tokenizer = new RecordTokenizer(new StringReader("report\nof today\nid;name\n1;x\n"), ";", null, 2);
+    assertTrue(tokenizer.next());
+    assertEquals("name", tokenizer.getField(1));
+    assertTrue(tokenizer.next());
+    assertEquals(2, tokenizer.getFieldCount());
+    assertEquals(1, tokenizer.getStarts()[1]);
+    assertEquals(2, tokenizer.getEnds()[1]);
+    assertEquals('x', tokenizer.getChars()[1]);
+    assertFalse(tokenizer.next());
+
+  }
+
+}
@@ -0,0 +1,75 @@
+package org.pentaho.di.trans.steps.filemetadata.util.files;
+
+import org.apache.commons.vfs2.FileObject;
+import org.apache.commons.vfs2.VFS;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class DirectoryWalkerTest {
+
+  private File dir;
+
+  @Before
+  public void setUp() throws IOException {
+    dir = Files.createTempDirectory("walker").toFile();
+    for (String name : new String[]{"b.csv", "a.csv", "notes.txt", "sub/d.csv", "sub/c.txt", "sub/deeper/e.csv", "z/f.csv"}) {
+      File file = new File(dir, name);
+      file.getParentFile().mkdirs();
+      Files.write(file.toPath(), name.getBytes());
+    }
+  }
+
+  @After
+  public void tearDown() {
+    delete(dir);
+  }
+
+  private static void delete(File file) {
+    File[] children = file.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        delete(child);
+      }
+    }
+    file.delete();
+  }
+
+  private List<String> walk(Pattern include, Pattern exclude, boolean recursive) throws IOException {
+    DirectoryWalker walker = new DirectoryWalker(VFS.getManager().resolveFile(dir.toURI().toString()), include, exclude, recursive);
+    List<String> names = new ArrayList<>();
+    FileObject file;
+    while ((file = walker.next()) != null) {
+      names.add(file.getName().getBaseName());
+    }
+    return names;
+  }
+
+  @Test
+  public void walksTheDirectoryInNameOrder() throws Exception {
+    assertEquals(Arrays.asList("a.csv", "b.csv", "notes.txt"), walk(null, null, false));
+  }
+
+  @Test
+  public void walksSubdirectoriesAfterTheFilesOfTheirParent() throws Exception {
+    assertEquals(Arrays.asList("a.csv", "b.csv", "notes.txt", "c.txt", "d.csv", "e.csv", "f.csv"), walk(null, null, true));
+  }
+
+  @Test
+  public void selectsFilesByName() throws Exception {
+    assertEquals(Arrays.asList("a.csv", "b.csv", "d.csv", "e.csv", "f.csv"), walk(Pattern.compile(".*\\.csv"), null, true));
+    assertEquals(Arrays.asList("a.csv", "d.csv", "e.csv", "f.csv"), walk(Pattern.compile(".*\\.csv"), Pattern.compile("b.*"), true));
+    assertEquals(Arrays.asList("notes.txt", "c.txt"), walk(null, Pattern.compile(".*\\.csv"), true));
+  }
+
+}
@@ -0,0 +1,45 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class BufferPoolTest {
+
+  @Test
+  public void reusesReleasedBuffers() {
+
+    BufferPool pool = new BufferPool(1024, 2);
+    byte[] first = pool.acquire();
+    byte[] second = pool.acquire();
+    assertEquals(1024, first.length);
+    assertNotSame(first, second);
+
+    pool.release(first);
+    assertSame(first, pool.acquire());
+    assertEquals(0, pool.size());
+
+  }
+
+  @Test
+  public void keepsNoMoreThanMaxPooled() {
+
+    BufferPool pool = new BufferPool(16, 2);
+    pool.release(pool.acquire());
+    pool.release(new byte[16]);
+    pool.release(new byte[16]);
+    assertEquals(2, pool.size());
+
+  }
+
+  @Test
+  public void ignoresBuffersOfOtherSizes() {
+
+    BufferPool pool = new BufferPool(16, 2);
+    pool.release(new byte[32]);
+    pool.release(null);
+    assertEquals(0, pool.size());
+
+  }
+
+}
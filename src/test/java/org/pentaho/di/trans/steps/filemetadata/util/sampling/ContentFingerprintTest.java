@@ -0,0 +1,69 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.*;
+
+public class ContentFingerprintTest {
+
+  private static byte[] content(int length) {
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) ('a' + i % 26);
+    }
+    return content;
+  }
+
+  private static String fingerprint(byte[] content, int edgeSize) throws IOException {
+    Path path = Files.createTempFile("fingerprint", ".csv");
+    try {
+      Files.write(path, content);
+      try (FileChannelSource source = new FileChannelSource(path)) {
+        return ContentFingerprint.of(source, edgeSize);
+      }
+    } finally {
+      Files.delete(path);
+    }
+  }
+
+  @Test
+  public void seesChangesAtHeadTailAndLength() throws Exception {
+
+    byte[] content = content(10000);
+    String original = fingerprint(content, 1024);
+    assertEquals(original, fingerprint(content.clone(), 1024));
+
+    byte[] head = content.clone();
+    head[10] = 'X';
+    assertNotEquals(original, fingerprint(head, 1024));
+
+    byte[] tail = content.clone();
+    tail[9990] = 'X';
+    assertNotEquals(original, fingerprint(tail, 1024));
+
+    byte[] longer = content(10001);
+    assertNotEquals(original, fingerprint(longer, 1024));
+
+    // the middle is not read
+    byte[] middle = content.clone();
+    middle[5000] = 'X';
+    assertEquals(original, fingerprint(middle, 1024));
+
+  }
+
+  @Test
+  public void headOnlyFingerprintsMatchForShortFiles() throws Exception {
+
+    byte[] content = content(500);
+    String random = fingerprint(content, 1024);
+    String head = ContentFingerprint.of(new ByteArrayInputStream(content), content.length, 1024);
+    assertEquals(random, head);
+
+  }
+
+}
@@ -0,0 +1,126 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.*;
+
+public class SampleBufferTest {
+
+  private static class CountingSource implements SampleBuffer.Source {
+
+    private final byte[] content;
+    int opened = 0;
+
+    CountingSource(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+      opened++;
+      return new ByteArrayInputStream(content);
+    }
+  }
+
+  private static byte[] content(int size) {
+    byte[] content = new byte[size];
+    for (int i = 0; i < size; i++) {
+      content[i] = (byte) (i % 251);
+    }
+    return content;
+  }
+
+  private static byte[] readAll(InputStream in) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    byte[] buf = new byte[1000];
+    int n;
+    while ((n = in.read(buf)) > 0) {
+      out.write(buf, 0, n);
+    }
+    return out.toByteArray();
+  }
+
+  @Test
+  public void replaysContentFromSingleRead() throws Exception {
+
+    byte[] content = content(100000);
+    CountingSource source = new CountingSource(content);
+    SampleBuffer sample = new SampleBuffer(source, 1024 * 1024);
+
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+
+    assertEquals(1, source.opened);
+    assertTrue(sample.isComplete());
+    assertEquals(content.length, sample.size());
+
+  }
+
+  @Test
+  public void readsOnlyAsFarAsRequested() throws Exception {
+
+    byte[] content = content(1024 * 1024);
+    CountingSource source = new CountingSource(content);
+    SampleBuffer sample = new SampleBuffer(source, 2 * 1024 * 1024);
+
+    byte[] head = new byte[100];
+    assertEquals(100, sample.newInputStream().read(head));
+
+    assertFalse(sample.isComplete());
+    assertTrue(sample.size() < content.length);
+
+  }
+
+  @Test
+  public void continuesBeyondMaxSize() throws Exception {
+
+    byte[] content = content(100000);
+    CountingSource source = new CountingSource(content);
+    SampleBuffer sample = new SampleBuffer(source, 10000);
+
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+    assertEquals(10000, sample.size());
+    assertFalse(sample.isComplete());
+
+  }
+
+  @Test
+  public void prefetchesIntoTheGivenBuffer() throws Exception {
+
+    byte[] content = content(100000);
+    CountingSource source = new CountingSource(content);
+    byte[] buffer = new byte[50000];
+    SampleBuffer sample = new SampleBuffer(source, 1024 * 1024, buffer);
+
+    sample.prefetch(40000);
+    assertEquals(1, source.opened);
+    assertTrue(sample.size() >= 40000);
+    assertTrue(sample.size() <= buffer.length);
+    assertEquals(content[39999], buffer[39999]);
+
+    // reading on grows past the given buffer
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+    assertEquals(1, source.opened);
+    assertTrue(sample.isComplete());
+
+  }
+
+  @Test
+  public void prefetchesNoMoreThanMaxSize() throws Exception {
+
+    byte[] content = content(100000);
+    SampleBuffer sample = new SampleBuffer(new CountingSource(content), 10000, new byte[50000]);
+
+    sample.prefetch(50000);
+    assertEquals(10000, sample.size());
+    assertArrayEquals(content, readAll(sample.newInputStream()));
+
+  }
+
+}
@@ -0,0 +1,129 @@
+package org.pentaho.di.trans.steps.filemetadata.util.sampling;
+
+import com.google.common.base.Charsets;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.*;
+
+public class StratifiedSamplerTest {
+
+  private static class ByteArraySource implements RandomAccessSource {
+
+    private final byte[] content;
+    long bytesRead = 0;
+
+    ByteArraySource(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public long length() {
+      return content.length;
+    }
+
+    @Override
+    public int read(long position, byte[] buffer, int offset, int length) {
+      if (position >= content.length) return -1;
+      int n = (int) Math.min(length, content.length - position);
+      System.arraycopy(content, (int) position, buffer, offset, n);
+      bytesRead += n;
+      return n;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private static String lines(int count, String lineBreak) {
+    StringBuilder content = new StringBuilder("Header\n-----\n");
+    for (int i = 0; i < count; i++) {
+      content.append(i).append(",some,data").append(lineBreak);
+    }
+    content.append("Total: ").append(count).append(lineBreak);
+    return content.toString();
+  }
+
+  @Test
+  public void samplesSmallFilesEntirely() throws Exception {
+
+    Path path = Paths.get(getClass().getResource("/delimited/simple-2h-3f.csv").toURI());
+    try (FileChannelSource source = new FileChannelSource(path)) {
+      StratifiedSampler sampler = new StratifiedSampler(source, 1024, 4);
+      byte[] sample = sampler.sample();
+      assertArrayEquals(Files.readAllBytes(path), sample);
+      assertTrue(sampler.isWholeFile());
+      assertEquals(-1, sampler.getTailOffset());
+    }
+
+  }
+
+  @Test
+  public void samplesHeadInteriorAndTail() throws Exception {
+
+    String content = lines(100000, "\n");
+    ByteArraySource source = new ByteArraySource(content.getBytes(Charsets.UTF_8));
+    StratifiedSampler sampler = new StratifiedSampler(source, 4096, 4);
+
+    String sample = new String(sampler.sample(), Charsets.UTF_8);
+
+    assertFalse(sampler.isWholeFile());
+    assertTrue(source.bytesRead <= 6 * 4096);
+    assertTrue(sample.startsWith("Header\n-----\n0,some,data\n"));
+    assertTrue(sample.endsWith("99999,some,data\nTotal: 100000\n"));
+    assertTrue(sample.substring(sampler.getTailOffset()).endsWith("Total: 100000\n"));
+    assertEquals(sample.substring(0, sampler.getHeadLength()), content.substring(0, sampler.getHeadLength()));
+
+    // every line of the sample is a complete line of the file, and interior lines are present
+    String[] sampled = sample.split("\n");
+    int interiorLines = 0;
+    for (int i = 2; i < sampled.length - 1; i++) {
+      assertTrue(sampled[i], sampled[i].matches("[0-9]+,some,data"));
+      int lineNr = Integer.parseInt(sampled[i].substring(0, sampled[i].indexOf(',')));
+      if (lineNr > 10000 && lineNr < 90000) {
+        interiorLines++;
+      }
+    }
+    assertTrue(interiorLines > 4 * 200);
+
+  }
+
+  @Test
+  public void resynchronisesOnCarriageReturns() throws Exception {
+
+    String content = lines(50000, "\r\n");
+    ByteArraySource source = new ByteArraySource(content.getBytes(Charsets.UTF_8));
+    StratifiedSampler sampler = new StratifiedSampler(source, 1000, 3);
+
+    String sample = new String(sampler.sample(), Charsets.UTF_8);
+
+    String[] sampled = sample.split("\r\n", -1);
+    assertEquals("", sampled[sampled.length - 1]);
+    for (int i = 2; i < sampled.length - 2; i++) {
+      assertTrue(sampled[i], sampled[i].matches("[0-9]+,some,data"));
+    }
+
+  }
+
+  @Test
+  public void fallsBackToHeadForOverlongLines() throws IOException {
+
+    StringBuilder content = new StringBuilder();
+    for (int i = 0; i < 100000; i++) {
+      content.append("x,");
+    }
+
+    ByteArraySource source = new ByteArraySource(content.toString().getBytes(Charsets.UTF_8));
+    StratifiedSampler sampler = new StratifiedSampler(source, 1000, 3);
+
+    assertEquals(1000, sampler.sample().length);
+    assertEquals(-1, sampler.getTailOffset());
+
+  }
+
+}
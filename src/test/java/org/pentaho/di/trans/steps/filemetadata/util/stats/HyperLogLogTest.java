@@ -0,0 +1,65 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HyperLogLogTest {
+
+  @Test
+  public void countsSmallSetsClosely() {
+
+    HyperLogLog sketch = new HyperLogLog(12);
+    assertEquals(0, sketch.estimate());
+    for (int repeat = 0; repeat < 3; repeat++) {
+      for (int i = 0; i < 10; i++) {
+        add(sketch, "value" + i);
+      }
+    }
+    assertEquals(10, sketch.estimate());
+
+  }
+
+  @Test
+  public void estimatesLargeSetsWithinTheErrorBound() {
+
+    for (int precision : new int[]{10, 12, 14}) {
+      HyperLogLog sketch = new HyperLogLog(precision);
+      int distinct = 200000;
+      for (int i = 0; i < distinct; i++) {
+        add(sketch, Integer.toString(i));
+        add(sketch, Integer.toString(i));
+      }
+      // four standard errors
+      double bound = 4 * 1.04 / Math.sqrt(1 << precision);
+      assertEquals(distinct, sketch.estimate(), distinct * bound);
+    }
+
+  }
+
+  @Test
+  public void mergesIntoTheSketchOfTheUnion() {
+
+    HyperLogLog left = new HyperLogLog(11);
+    HyperLogLog right = new HyperLogLog(11);
+    HyperLogLog all = new HyperLogLog(11);
+    for (int i = 0; i < 50000; i++) {
+      String value = "k" + i;
+      add((i % 3 == 0) ? left : right, value);
+      add(all, value);
+    }
+    left.merge(right);
+    assertEquals(all.estimate(), left.estimate());
+
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void rejectsPrecisionsOutOfRange() {
+    new HyperLogLog(HyperLogLog.MAX_PRECISION + 1);
+  }
+
+  private static void add(HyperLogLog sketch, String value) {
+    sketch.add(value.toCharArray(), 0, value.length());
+  }
+
+}
@@ -0,0 +1,81 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class QuantileSketchTest {
+
+  @Test
+  public void isExactWhileValuesFit() {
+
+    QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_K);
+    assertTrue(Double.isNaN(sketch.quantile(0.5)));
+    for (int i = 100; i >= 1; i--) {
+      sketch.add(i);
+    }
+    sketch.add(Double.NaN);
+    assertEquals(100, sketch.getCount());
+    assertEquals(1, sketch.quantile(0.01), 0);
+    assertEquals(50, sketch.quantile(0.5), 0);
+    assertEquals(99, sketch.quantile(0.99), 0);
+    assertEquals(100, sketch.quantile(1), 0);
+
+  }
+
+  @Test
+  public void estimatesRanksWithinTheErrorBound() {
+
+    Random random = new Random(3);
+    QuantileSketch sketch = new QuantileSketch(QuantileSketch.DEFAULT_K);
+    int n = 200000;
+    ArrayList<Integer> values = new ArrayList<>();
+    for (int i = 0; i < n; i++) {
+      values.add(i);
+    }
+    Collections.shuffle(values, random);
+    for (int value : values) {
+      sketch.add(value);
+    }
+
+    for (double fraction : new double[]{0.01, 0.25, 0.5, 0.75, 0.99}) {
+      // values equal their ranks
+      assertEquals(fraction * n, sketch.quantile(fraction), 0.02 * n);
+    }
+    assertEquals(0, sketch.quantile(0), 0);
+    assertEquals(n - 1, sketch.quantile(1), 0);
+
+  }
+
+  @Test
+  public void mergesChunksOfAStream() {
+
+    int n = 100000;
+    QuantileSketch all = new QuantileSketch(100);
+    QuantileSketch[] chunks = new QuantileSketch[4];
+    for (int c = 0; c < chunks.length; c++) {
+      chunks[c] = new QuantileSketch(100);
+    }
+    for (int i = 0; i < n; i++) {
+      double value = (i * 7919L) % n;
+      all.add(value);
+      chunks[i * chunks.length / n].add(value);
+    }
+    QuantileSketch merged = new QuantileSketch(100);
+    for (QuantileSketch chunk : chunks) {
+      merged.merge(chunk);
+    }
+
+    assertEquals(n, merged.getCount());
+    for (double fraction : new double[]{0.01, 0.5, 0.99}) {
+      assertEquals(fraction * n, merged.quantile(fraction), 0.03 * n);
+      assertEquals(all.quantile(fraction), merged.quantile(fraction), 0.04 * n);
+    }
+
+  }
+
+}
@@ -0,0 +1,64 @@
+package org.pentaho.di.trans.steps.filemetadata.util.stats;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SpaceSavingTest {
+
+  @Test
+  public void countsExactlyWhileValuesFit() {
+
+    SpaceSaving sketch = new SpaceSaving(4);
+    for (String value : new String[]{"b", "a", "b", "c", "b", "a"}) {
+      add(sketch, value);
+    }
+    assertEquals("[{\"value\":\"b\",\"count\":3,\"error\":0},{\"value\":\"a\",\"count\":2,\"error\":0}]", sketch.toJson(2));
+    assertEquals(6, sketch.getTotal());
+
+  }
+
+  @Test
+  public void boundsTheCountsOfFrequentValues() {
+
+    Random random = new Random(7);
+    SpaceSaving sketch = new SpaceSaving(50);
+    HashMap<String, Integer> exact = new HashMap<>();
+    int total = 100000;
+    for (int i = 0; i < total; i++) {
+      // a few heavy hitters among many rare values
+      String value = (random.nextInt(4) == 0) ? "rare" + random.nextInt(20000) : "code" + (int) Math.abs(random.nextGaussian() * 3);
+      add(sketch, value);
+      Integer count = exact.get(value);
+      exact.put(value, (count == null) ? 1 : count + 1);
+    }
+
+    Integer[] top = sketch.getTop(5);
+    assertEquals(5, top.length);
+    assertEquals("code0", sketch.getValue(top[0]));
+    for (Integer c : top) {
+      long trueCount = exact.get(sketch.getValue(c));
+      assertTrue(sketch.getCount(c) >= trueCount);
+      assertTrue(sketch.getCount(c) - sketch.getError(c) <= trueCount);
+      assertTrue(sketch.getError(c) <= total / 50);
+    }
+
+  }
+
+  @Test
+  public void escapesValuesInJson() {
+
+    SpaceSaving sketch = new SpaceSaving(2);
+    add(sketch, "say \"hi\"\\\n");
+    assertEquals("[{\"value\":\"say \\\"hi\\\"\\\\\\u000a\",\"count\":1,\"error\":0}]", sketch.toJson(10));
+
+  }
+
+  private static void add(SpaceSaving sketch, String value) {
+    sketch.add(value.toCharArray(), 0, value.length());
+  }
+
+}
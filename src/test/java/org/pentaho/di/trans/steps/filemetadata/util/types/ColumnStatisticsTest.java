@@ -0,0 +1,171 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.trans.steps.filemetadata.util.stats.QuantileSketch;
+
+import java.nio.charset.Charset;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class ColumnStatisticsTest {
+
+  private static final String[] DATE_FORMATS = {"yyyy/MM/dd", "dd/MM/yyyy", "yyyyMMdd"};
+
+  private static final int QUANTILE_K = QuantileSketch.DEFAULT_K;
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final TypeCandidates candidates = new TypeCandidates(Locale.US, DATE_FORMATS);
+
+  @Test
+  public void countsMissingAndEmptyValues() {
+
+    ColumnStatistics statistics = statistics(UTF_8, "a", "", "  ", null, "b");
+    statistics.addNull();
+    assertEquals(4, statistics.getCount());
+    assertEquals(2, statistics.getNullCount());
+    assertEquals(2, statistics.getEmptyCount());
+
+  }
+
+  @Test
+  public void measuresByteLengths() {
+
+    ColumnStatistics statistics = statistics(UTF_8, "ab", "été", "€", "😀");
+    assertEquals(5, statistics.getMaxByteLength());
+    assertEquals((2 + 5 + 3 + 4) / 4.0, statistics.getAverageByteLength(), 1e-9);
+
+    assertEquals(4, statistics(Charset.forName("UTF-16LE"), "ab").getMaxByteLength());
+    assertEquals(3, statistics(Charset.forName("ISO-8859-1"), "été").getMaxByteLength());
+    assertEquals(4, statistics(Charset.forName("UTF-32"), "😀").getMaxByteLength());
+
+    // double byte charsets go through an encoder
+    Charset shiftJis = Charset.forName("Shift_JIS");
+    assertEquals(5, statistics(shiftJis, "aあい").getMaxByteLength());
+
+  }
+
+  @Test
+  public void ordersValuesByTheirType() {
+
+    String[] values = {" 9", "10", "-2.5", "1,000.25"};
+    ColumnStatistics statistics = statistics(UTF_8, values);
+    ValueMetaInterface type = advice(values);
+    assertEquals(ValueMetaInterface.TYPE_NUMBER, type.getType());
+    assertEquals("-2.5", statistics.getMin(type));
+    assertEquals("1,000.25", statistics.getMax(type));
+
+    values = new String[]{"31/01/2015", "01/02/2014", "", "15/06/2014"};
+    statistics = statistics(UTF_8, values);
+    type = advice(values);
+    assertEquals(ValueMetaInterface.TYPE_DATE, type.getType());
+    assertEquals("01/02/2014", statistics.getMin(type));
+    assertEquals("31/01/2015", statistics.getMax(type));
+
+    values = new String[]{"pear", "apple", "plum"};
+    statistics = statistics(UTF_8, values);
+    type = advice(values);
+    assertEquals("apple", statistics.getMin(type));
+    assertEquals("plum", statistics.getMax(type));
+
+  }
+
+  @Test
+  public void countsDistinctValuesOnRequest() {
+
+    assertEquals(-1, statistics(UTF_8, "a", "b").getDistinctCount());
+
+    ColumnStatistics statistics = new ColumnStatistics(candidates, UTF_8, 10, 0, 0);
+    for (String value : new String[]{"a", " a", "b", "", null, "c", "b"}) {
+      statistics.add(value);
+    }
+    assertEquals(3, statistics.getDistinctCount());
+
+  }
+
+  @Test
+  public void findsTheMostFrequentValuesOnRequest() {
+
+    assertNull(statistics(UTF_8, "a").getTopValues(3));
+
+    ColumnStatistics statistics = new ColumnStatistics(candidates, UTF_8, 0, 16, 0);
+    for (String value : new String[]{"DE", "US ", "", "DE", "FR", " DE", "US"}) {
+      statistics.add(value);
+    }
+    assertEquals("[{\"value\":\"DE\",\"count\":3,\"error\":0},{\"value\":\"US\",\"count\":2,\"error\":0}]", statistics.getTopValues(2));
+
+  }
+
+  @Test
+  public void estimatesQuantilesOfTheAdvisedReading() {
+
+    String[] values = new String[101];
+    for (int i = 0; i <= 100; i++) {
+      values[i] = Integer.toString(1000 - i * 10);
+    }
+    ColumnStatistics statistics = new ColumnStatistics(candidates, UTF_8, 0, 0, QUANTILE_K);
+    for (String value : values) {
+      statistics.add(value);
+    }
+    ValueMetaInterface type = advice(values);
+    assertEquals(ValueMetaInterface.TYPE_INTEGER, type.getType());
+    assertEquals(10L, statistics.getQuantile(type, 0.01));
+    assertEquals(500L, statistics.getQuantile(type, 0.5));
+    assertEquals(990L, statistics.getQuantile(type, 0.99));
+
+    values = new String[]{"2014/01/01", "2015/06/30", "2016/12/31"};
+    statistics = new ColumnStatistics(candidates, UTF_8, 0, 0, QUANTILE_K);
+    for (String value : values) {
+      statistics.add(value);
+    }
+    type = advice(values);
+    assertEquals(ValueMetaInterface.TYPE_DATE, type.getType());
+    Calendar median = Calendar.getInstance(Locale.US);
+    median.setTime((Date) statistics.getQuantile(type, 0.5));
+    assertEquals(2015, median.get(Calendar.YEAR));
+    assertEquals(Calendar.JUNE, median.get(Calendar.MONTH));
+
+    // strings have no quantiles, nor do statistics without sketches
+    assertNull(statistics.getQuantile(advice("a", "b"), 0.5));
+    assertNull(statistics(UTF_8, values).getQuantile(type, 0.5));
+
+  }
+
+  @Test
+  public void readsNumbers() {
+
+    assertEquals(1234.5, read("1,234.5", '.', ','), 1e-9);
+    assertEquals(1234.5, read("1.234,5", ',', '.'), 1e-9);
+    assertEquals(-12, read("-$12", '.', ','), 1e-9);
+    assertEquals(1500, read("1.5E3", '.', ','), 1e-9);
+    assertTrue(Double.isNaN(read("1-2", '.', ',')));
+    assertTrue(Double.isNaN(read("abc", '.', ',')));
+    assertTrue(Double.isNaN(read("1.2.3", '.', ',')));
+
+  }
+
+  private ColumnStatistics statistics(Charset charset, String... values) {
+    ColumnStatistics statistics = new ColumnStatistics(candidates, charset);
+    for (String value : values) {
+      statistics.add(value);
+    }
+    return statistics;
+  }
+
+  private ValueMetaInterface advice(String... values) {
+    TypeEvaluator evaluator = new TypeEvaluator(candidates);
+    for (String value : values) {
+      evaluator.evaluate(value);
+    }
+    return evaluator.getAdvice();
+  }
+
+  private static double read(String value, char decimal, char grouping) {
+    return ColumnStatistics.readNumber(value.toCharArray(), 0, value.length(), decimal, grouping);
+  }
+
+}
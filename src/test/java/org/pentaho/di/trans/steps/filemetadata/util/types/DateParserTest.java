@@ -0,0 +1,38 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+
+import java.text.ParsePosition;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class DateParserTest {
+
+  private static final String[] VALUES = {"2015/01/31", "2015/02/31", "2015/1/5", "2015/01/31 12:30:45", "2015/01/31 24:00:00", "2015/01/31 12:30:45.123",
+    "2015-01-31", "15-01-31", "2015-13-01", "31/01/2015", "31-01-2015", "01/31/2015", "20150131", "2015013", "201501311", "31.01.2015",
+    " 2015/01/31", "2015/ 01/31", "2015/01/31 ", "2015/01/-1", "0/01/31", "99/01/31", "2015/01/31 1:2:3", "Jan 31, 2015", "31 Jan 2015",
+    "2015-01-31T12:30", "2015", "", "x"};
+
+  private static final String[] MASKS = {"yyyy/MM/dd HH:mm:ss.SSS", "yyyy/MM/dd HH:mm:ss", "yyyy/MM/dd", "yyyy-MM-dd", "yy-MM-dd", "dd/MM/yyyy",
+    "dd-MM-yyyy", "MM/dd/yyyy", "yyyyMMdd", "dd.MM.yyyy", "yyyy-MM-dd'T'HH:mm", "MMM dd, yyyy", "dd MMM yyyy", "yyyy/M/d"};
+
+  @Test
+  public void acceptsWhatSimpleDateFormatParsesCompletely() {
+
+    for (String mask : MASKS) {
+      DateParser parser = new DateParser(mask, Locale.US);
+      SimpleDateFormat format = new SimpleDateFormat(mask, Locale.US);
+      format.setLenient(false);
+      for (String value : VALUES) {
+        if (value.isEmpty()) continue;
+        ParsePosition position = new ParsePosition(0);
+        boolean expected = format.parse(value, position) != null && position.getIndex() == value.length();
+        assertEquals(mask + " '" + value + "'", expected, parser.parse(value.toCharArray(), 0, value.length()));
+      }
+    }
+
+  }
+
+}
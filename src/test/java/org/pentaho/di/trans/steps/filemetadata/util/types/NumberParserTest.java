@@ -0,0 +1,65 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.text.NumberFormat;
+import java.text.ParsePosition;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class NumberParserTest {
+
+  private static final String[] VALUES = {"0", "1", "-1", "12", "1.5", "-1.5", "1,5", "1,234", "1,234.5", "1.234,5", "1,,234", "1,", ",1", ".5", "5.",
+    "1.2.3", "1e5", "1E5", "1E-5", "1E", "1E-", "-", "+1", " 1", "1 ", " 12", " -12", "-0012", "NaN", "∞", "-∞", "abc", "12abc",
+    "$1.00", "$1,234.56", "($1.00)", "-$1.00", "1.00$", "0012", "1 234", "١٢", "12%", "1,234,567.891"};
+
+  private static final String[] MASKS = {"#,###,###.#", "#.#", " #.#", "#.0", "#.00", " #.0#", "#", " #", " 00;-00", " 0000;-0000",
+    "$#,##0.00", "¤#,##0.00;(¤#,##0.00)", "#,##0.00", "#%", "0.###E0"};
+
+  @Test
+  public void acceptsWhatDecimalFormatParsesCompletely() {
+
+    for (String mask : MASKS) {
+      for (String[] symbols : new String[][]{{".", ","}, {",", "."}, {null, null}}) {
+        NumberParser parser = NumberParser.forMask(Locale.US, mask, symbols[0], symbols[1], null);
+        DecimalFormat format = format(mask, symbols[0], symbols[1]);
+        for (String value : VALUES) {
+          ParsePosition position = new ParsePosition(0);
+          boolean expected = format.parse(value, position) != null && position.getIndex() == value.length();
+          assertEquals(mask + " " + symbols[0] + " '" + value + "'", expected, parser.parse(value.toCharArray(), 0, value.length()));
+        }
+      }
+    }
+
+  }
+
+  @Test
+  public void rejectsEverythingForInvalidMasks() {
+
+    NumberParser parser = NumberParser.forMask(Locale.US, "#.#.#", null, null, null);
+    assertFalse(parser.parse("1".toCharArray(), 0, 1));
+
+  }
+
+  @Test
+  public void sharesKeysForEquivalentMasks() {
+
+    assertEquals(NumberParser.forMask(Locale.US, "#.0", ".", ",", null).getKey(), NumberParser.forMask(Locale.US, "#.000", ".", ",", null).getKey());
+    assertNotEquals(NumberParser.forMask(Locale.US, "#.0", ".", ",", null).getKey(), NumberParser.forMask(Locale.US, "#.0", ",", ".", null).getKey());
+
+  }
+
+  private static DecimalFormat format(String mask, String decimal, String grouping) {
+    DecimalFormat format = (DecimalFormat) NumberFormat.getInstance(Locale.US);
+    DecimalFormatSymbols symbols = format.getDecimalFormatSymbols();
+    if (grouping != null) symbols.setGroupingSeparator(grouping.charAt(0));
+    if (decimal != null) symbols.setDecimalSeparator(decimal.charAt(0));
+    format.setDecimalFormatSymbols(symbols);
+    format.applyPattern(mask);
+    return format;
+  }
+
+}
@@ -0,0 +1,168 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+import org.pentaho.di.core.row.ValueMetaInterface;
+
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.*;
+
+public class TypeEvaluationTest {
+
+  private static final String[] DATE_FORMATS = {"yyyy/MM/dd HH:mm:ss", "yyyy/MM/dd", "yyyy-MM-dd", "dd/MM/yyyy", "MM/dd/yyyy", "yyyyMMdd"};
+
+  private static final String[] VALUES = {"", " ", "12", "-7", "1.5", "1,234.5", "1.234,5", "007", "2016-03-14", "2016-02-30",
+    "14/03/2016", "20160314", "Y", "false", "abc", "$12.00"};
+
+  @Test
+  public void givesTheSameAdviceWithSeveralWorkers() {
+
+    Random random = new Random(42);
+    int columns = 37;
+    String[][] records = new String[1000][];
+    for (int r = 0; r < records.length; r++) {
+      // short records leave the last columns without values
+      records[r] = new String[columns - random.nextInt(3)];
+      for (int i = 0; i < records[r].length; i++) {
+        // most columns stick to a few values, so not all of them end up strings
+        int choices = 1 + (i % 4) * 5;
+        records[r][i] = VALUES[(i + random.nextInt(choices)) % VALUES.length];
+      }
+    }
+
+    TypeEvaluator[] expected = evaluate(records, columns, 1);
+    TypeEvaluator[] actual = evaluate(records, columns, 4);
+    for (int i = 0; i < columns; i++) {
+      ValueMetaInterface expectedMeta = expected[i].getAdvice();
+      ValueMetaInterface actualMeta = actual[i].getAdvice();
+      assertEquals(expectedMeta.getType(), actualMeta.getType());
+      assertEquals(expectedMeta.getConversionMask(), actualMeta.getConversionMask());
+      assertEquals(expectedMeta.getLength(), actualMeta.getLength());
+      assertEquals(expectedMeta.getPrecision(), actualMeta.getPrecision());
+      assertEquals(expected[i].getCount(), actual[i].getCount());
+    }
+
+  }
+
+  @Test
+  public void sharesAPoolWithOtherEvaluations() {
+
+    String[][] records = new String[200][];
+    for (int r = 0; r < records.length; r++) {
+      records[r] = new String[]{String.valueOf(r), r + ".5", "2016-03-14", "abc" + r};
+    }
+    TypeEvaluator[] expected = evaluate(records, 4, 1);
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      for (int run = 0; run < 2; run++) {
+        TypeEvaluation evaluation = new TypeEvaluation(new TypeCandidates(Locale.US, DATE_FORMATS), 4, 4, 512, 16, 64, pool);
+        try {
+          for (String[] record : records) {
+            evaluation.evaluate(record);
+          }
+          evaluation.flush();
+          for (int i = 0; i < 4; i++) {
+            assertEquals(expected[i].getAdvice().getType(), evaluation.getEvaluators()[i].getAdvice().getType());
+          }
+        }
+        finally {
+          evaluation.close();
+        }
+        // closing leaves the shared pool to the next evaluation
+        assertFalse(pool.isShutdown());
+      }
+    }
+    finally {
+      pool.shutdown();
+    }
+
+  }
+
+  @Test
+  public void evaluatesFieldsInACharBuffer() {
+
+    int[] starts = {0, 2, 5};
+    int[] ends = {2, 5, 15};
+    for (int workers = 1; workers <= 3; workers++) {
+      char[] chars = "12abc2016-03-14".toCharArray();
+      TypeEvaluation evaluation = new TypeEvaluation(new TypeCandidates(Locale.US, DATE_FORMATS), 3, workers, 512, 0, 2);
+      try {
+        evaluation.evaluate(chars, starts, ends, 3);
+        // the buffer may be reused right away
+        chars[0] = 'x';
+        evaluation.evaluate("7,de,2016-03-15".split(","));
+        evaluation.flush();
+        TypeEvaluator[] evaluators = evaluation.getEvaluators();
+        assertEquals(ValueMetaInterface.TYPE_INTEGER, evaluators[0].getAdvice().getType());
+        assertEquals(ValueMetaInterface.TYPE_STRING, evaluators[1].getAdvice().getType());
+        assertEquals(ValueMetaInterface.TYPE_DATE, evaluators[2].getAdvice().getType());
+        assertEquals(2, evaluators[2].getCount());
+      }
+      finally {
+        evaluation.close();
+      }
+    }
+
+  }
+
+  @Test
+  public void collectsStatisticsOfEachColumn() {
+
+    for (int workers = 1; workers <= 2; workers++) {
+      TypeEvaluation evaluation = new TypeEvaluation(new TypeCandidates(Locale.US, DATE_FORMATS), 2, workers, 512, 0, 10);
+      try {
+        evaluation.collectStatistics(Charset.forName("UTF-8"), 0, 0, 0);
+        evaluation.evaluate(new String[]{"1", "a"});
+        evaluation.evaluate(new String[]{"3"});
+        evaluation.evaluate("2,,x".split(","));
+        evaluation.flush();
+        ColumnStatistics[] statistics = evaluation.getStatistics();
+        assertEquals(3, statistics[0].getCount());
+        assertEquals("3", statistics[0].getMax(evaluation.getEvaluators()[0].getAdvice()));
+        assertEquals(1, statistics[1].getNullCount());
+        assertEquals(1, statistics[1].getEmptyCount());
+      }
+      finally {
+        evaluation.close();
+      }
+    }
+
+  }
+
+  @Test
+  public void evaluatesTheLastBatchOnFlush() {
+
+    TypeEvaluation evaluation = new TypeEvaluation(new TypeCandidates(Locale.US, DATE_FORMATS), 2, 2, 512, 0, 10);
+    try {
+      evaluation.evaluate(new String[]{"1", "abc"});
+      assertEquals(0, evaluation.getEvaluators()[0].getCount());
+      evaluation.flush();
+      assertEquals(1, evaluation.getEvaluators()[0].getCount());
+      assertEquals(ValueMetaInterface.TYPE_INTEGER, evaluation.getEvaluators()[0].getAdvice().getType());
+      assertTrue(evaluation.getEvaluators()[1].isSaturated());
+    }
+    finally {
+      evaluation.close();
+    }
+
+  }
+
+  private TypeEvaluator[] evaluate(String[][] records, int columns, int workers) {
+    TypeEvaluation evaluation = new TypeEvaluation(new TypeCandidates(Locale.US, DATE_FORMATS), columns, workers, 512, 16, 64);
+    try {
+      for (String[] record : records) {
+        evaluation.evaluate(record);
+      }
+      evaluation.flush();
+      return evaluation.getEvaluators();
+    }
+    finally {
+      evaluation.close();
+    }
+  }
+
+}
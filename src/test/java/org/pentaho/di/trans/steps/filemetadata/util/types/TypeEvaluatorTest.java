@@ -0,0 +1,276 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+import org.pentaho.di.core.Const;
+import org.pentaho.di.core.row.ValueMetaInterface;
+import org.pentaho.di.core.util.StringEvaluator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+public class TypeEvaluatorTest {
+
+  private static final String[] DATE_FORMATS = {"yyyy/MM/dd HH:mm:ss", "yyyy/MM/dd", "yyyy-MM-dd", "dd/MM/yyyy", "MM/dd/yyyy", "yyyyMMdd"};
+
+  private final TypeCandidates candidates = new TypeCandidates(Locale.US, DATE_FORMATS);
+
+  @Test
+  public void advisesIntegers() {
+
+    ValueMetaInterface meta = advice("1", "22", "-333", "");
+    assertEquals(ValueMetaInterface.TYPE_INTEGER, meta.getType());
+    assertEquals("#", meta.getConversionMask());
+
+  }
+
+  @Test
+  public void advisesNumbersWithTheirPrecision() {
+
+    ValueMetaInterface meta = advice("1.5", "22.25", "-3");
+    assertEquals(ValueMetaInterface.TYPE_NUMBER, meta.getType());
+    assertEquals(".", meta.getDecimalSymbol());
+    assertEquals(2, meta.getPrecision());
+    assertEquals(5, meta.getLength());
+
+  }
+
+  @Test
+  public void advisesEuropeanNumbers() {
+
+    ValueMetaInterface meta = advice("1,5", "22,25", "1.234,5");
+    assertEquals(ValueMetaInterface.TYPE_NUMBER, meta.getType());
+    assertEquals(",", meta.getDecimalSymbol());
+    assertEquals(".", meta.getGroupingSymbol());
+
+  }
+
+  @Test
+  public void prefersTheLongestDateMask() {
+
+    ValueMetaInterface meta = advice("2015/01/31 12:30:45", "2015/02/01 00:00:00");
+    assertEquals(ValueMetaInterface.TYPE_DATE, meta.getType());
+    assertEquals("yyyy/MM/dd HH:mm:ss", meta.getConversionMask());
+
+    // integers lose to dates
+    meta = advice("20150131", "20150201");
+    assertEquals(ValueMetaInterface.TYPE_DATE, meta.getType());
+    assertEquals("yyyyMMdd", meta.getConversionMask());
+
+  }
+
+  @Test
+  public void rulesOutInvalidDates() {
+
+    ValueMetaInterface meta = advice("2015/01/31", "2015/02/31");
+    assertNotEquals(ValueMetaInterface.TYPE_DATE, meta.getType());
+
+  }
+
+  @Test
+  public void advisesBooleans() {
+
+    assertEquals(ValueMetaInterface.TYPE_BOOLEAN, advice("Y", "n", "true", "FALSE").getType());
+    assertEquals(ValueMetaInterface.TYPE_STRING, advice("Y", "n", "maybe").getType());
+
+  }
+
+  @Test
+  public void trimsPaddedValues() {
+
+    ValueMetaInterface meta = advice(" 1.5 ", "2.25  ");
+    assertEquals(ValueMetaInterface.TYPE_NUMBER, meta.getType());
+    assertEquals(ValueMetaInterface.TRIM_TYPE_BOTH, meta.getTrimType());
+
+  }
+
+  @Test
+  public void fallsBackToStrings() {
+
+    ValueMetaInterface meta = advice("abc", "12", "defgh");
+    assertEquals(ValueMetaInterface.TYPE_STRING, meta.getType());
+    assertEquals(5, meta.getLength());
+
+  }
+
+  @Test
+  public void evaluatesCharRanges() {
+
+    TypeEvaluator evaluator = new TypeEvaluator(candidates);
+    char[] buf = "x12;345y".toCharArray();
+    evaluator.evaluate(buf, 1, 3);
+    evaluator.evaluate(buf, 4, 7);
+    assertEquals(ValueMetaInterface.TYPE_INTEGER, evaluator.getAdvice().getType());
+    assertEquals(2, evaluator.getCount());
+    assertEquals(3, evaluator.getMaxLength());
+
+  }
+
+  @Test
+  public void groupsValuesByShape() {
+
+    TypeEvaluator evaluator = new TypeEvaluator(candidates);
+    for (String value : new String[]{"2016-03-14", "2016-03-15", "2016-12-01", "16-3-1", "n/a", "n/a"}) {
+      evaluator.evaluate(value);
+    }
+    assertEquals(3, evaluator.getShapeCount());
+
+  }
+
+  @Test
+  public void givesTheSameAdviceWithAndWithoutShapesAndCache() {
+
+    String[][] columns = {{"2016-03-14", "2016-02-30"}, {"2016/03/14", "2016/03/15 "}, {" 12", "7", "-3.25"}, {"1,234.5", "12"}, {"", " ", "Y"},
+      {"12", "12", "1.5", "12", "x", "12"}};
+    for (String[] column : columns) {
+      TypeEvaluator shaped = new TypeEvaluator(candidates, 512, 2);
+      TypeEvaluator plain = new TypeEvaluator(candidates, 0, 0);
+      for (String value : column) {
+        shaped.evaluate(value);
+        plain.evaluate(value);
+      }
+      ValueMetaInterface expected = plain.getAdvice();
+      ValueMetaInterface actual = shaped.getAdvice();
+      assertEquals(expected.getType(), actual.getType());
+      assertEquals(expected.getConversionMask(), actual.getConversionMask());
+      assertEquals(expected.getLength(), actual.getLength());
+      assertEquals(expected.getPrecision(), actual.getPrecision());
+    }
+
+  }
+
+  @Test
+  public void saturatesOnceOnlyStringsAreLeft() {
+
+    TypeEvaluator evaluator = new TypeEvaluator(candidates);
+    evaluator.evaluate("12");
+    assertFalse(evaluator.isSaturated());
+    evaluator.evaluate("abc");
+    assertTrue(evaluator.isSaturated());
+
+    // lengths still count
+    evaluator.evaluate("1234567");
+    evaluator.evaluate("x1".toCharArray(), 0, 2);
+    assertEquals(ValueMetaInterface.TYPE_STRING, evaluator.getAdvice().getType());
+    assertEquals(7, evaluator.getAdvice().getLength());
+    assertEquals(4, evaluator.getCount());
+
+  }
+
+  @Test
+  public void skipsCachedValues() {
+
+    TypeEvaluator evaluator = new TypeEvaluator(candidates, 512, 16);
+    for (String value : new String[]{"200", "404", "200", "200", "500", "404"}) {
+      evaluator.evaluate(value);
+    }
+    assertEquals(6, evaluator.getCacheLookups());
+    assertEquals(3, evaluator.getCacheHits());
+    assertEquals(6, evaluator.getCount());
+
+  }
+
+  // columns the step has seen in files, each must get the same advice as from Kettle's StringEvaluator
+  private static final String[][] CORPUS = {
+    // dates, invalid dates and two-digit years
+    {"2015/01/31", "2016/02/29"},
+    {"2015/01/31 12:30:45", "2015/02/01 00:00:00"},
+    {"2016-02-28", "2016-02-29"},
+    {"2016-02-30"},
+    {"2016-02-28", "2016-02-30"},
+    {"31/01/2015", "12/31/2015"},
+    {"31/01/15", "01/02/16"},
+    {"1/2/15", "12/31/99"},
+    {"20150131", "20160229"},
+    // US and European numbers, with grouping and exponents
+    {"1.5", "22.25", "-3"},
+    {"1,234.5", "12,345,678.25", "-1,000.00"},
+    {"1,5", "22,25", "-3"},
+    {"1.234,5", "12.345.678,25", "-1.000,00"},
+    {"1.5E3", "-2.25E-4", "1E10"},
+    {"1.5e3", "2e-2"},
+    // currency values
+    {"$1,234.50", "$5.00", "-$3.25"},
+    {"€12,00", "€1.234,50"},
+    // integers, zero-padded and space-padded
+    {"1", "22", "-333"},
+    {"007", "0042", "0000"},
+    {"  42", "7  ", " 1 "},
+    {"  1.5", "2.25  "},
+    // booleans
+    {"Y", "N", "Y"},
+    {"true", "false"},
+    {"TRUE", "False"},
+    {"yes", "no"},
+    // empty and blank values
+    {""},
+    {"", "   "},
+    {"", "1", "  ", "22"},
+    {"", "2015/01/31"},
+    // mixed columns
+    {"1", "abc", "2016-01-01", "1.5"},
+    {"1", "Y", "2"},
+    {"2015/01/31", "1.5"},
+  };
+
+  @Test
+  public void givesTheAdviceOfStringEvaluator() {
+
+    TypeCandidates defaults = new TypeCandidates(Locale.getDefault(), Const.getDateFormats());
+    List<String> mismatches = new ArrayList<>();
+
+    for (String[] column : CORPUS) {
+      StringEvaluator expected = new StringEvaluator(true);
+      TypeEvaluator actual = new TypeEvaluator(defaults);
+      for (String value : column) {
+        expected.evaluateString(value);
+        actual.evaluate(value);
+      }
+      String expectedAdvice = describe(expected.getAdvicedResult().getConversionMeta());
+      String actualAdvice = describe(actual.getAdvice());
+      if (!expectedAdvice.equals(actualAdvice)) {
+        mismatches.add(Arrays.toString(column) + ": expected " + expectedAdvice + " but was " + actualAdvice);
+      }
+    }
+
+    assertTrue(mismatches.toString(), mismatches.isEmpty());
+
+  }
+
+  @Test
+  public void agreesWithStringEvaluatorOnMixedColumns() {
+
+    TypeCandidates defaults = new TypeCandidates(Locale.getDefault(), Const.getDateFormats());
+    String[] column = {"1", "abc", "2016-01-01", "1.5"};
+
+    StringEvaluator expected = new StringEvaluator(true);
+    TypeEvaluator actual = new TypeEvaluator(defaults);
+    for (String value : column) {
+      expected.evaluateString(value);
+      actual.evaluate(value);
+    }
+
+    assertEquals(ValueMetaInterface.TYPE_STRING, expected.getAdvicedResult().getConversionMeta().getType());
+    assertEquals(ValueMetaInterface.TYPE_STRING, actual.getAdvice().getType());
+
+  }
+
+  // the properties of an advice that tell how values are converted
+  private static String describe(ValueMetaInterface meta) {
+    return "type=" + meta.getType() + " mask=" + meta.getConversionMask() + " length=" + meta.getLength()
+      + " precision=" + meta.getPrecision() + " decimal=" + meta.getDecimalSymbol() + " grouping=" + meta.getGroupingSymbol()
+      + " trim=" + meta.getTrimType();
+  }
+
+  private ValueMetaInterface advice(String... values) {
+    TypeEvaluator evaluator = new TypeEvaluator(candidates);
+    for (String value : values) {
+      evaluator.evaluate(value);
+    }
+    return evaluator.getAdvice();
+  }
+
+}
@@ -0,0 +1,73 @@
+package org.pentaho.di.trans.steps.filemetadata.util.types;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ValueCacheTest {
+
+  @Test
+  public void countsHits() {
+
+    ValueCache cache = new ValueCache(4, 8);
+    assertFalse(seen(cache, "a"));
+    assertTrue(seen(cache, "a"));
+    assertFalse(seen(cache, "b"));
+    assertTrue(seen(cache, "a"));
+    assertEquals(4, cache.getLookups());
+    assertEquals(2, cache.getHits());
+
+  }
+
+  @Test
+  public void evictsValuesNotHitAgainFirst() {
+
+    ValueCache cache = new ValueCache(2, 8);
+    seen(cache, "a");
+    seen(cache, "a");
+    seen(cache, "b");
+    // a was hit again, so b makes room for c
+    seen(cache, "c");
+    assertTrue(seen(cache, "a"));
+    assertTrue(seen(cache, "c"));
+    assertFalse(seen(cache, "b"));
+
+  }
+
+  @Test
+  public void skipsLongValues() {
+
+    ValueCache cache = new ValueCache(2, 3);
+    assertFalse(seen(cache, "abcd"));
+    assertFalse(seen(cache, "abcd"));
+    assertTrue(seen(cache, "abc") || seen(cache, "abc"));
+
+  }
+
+  @Test
+  public void neverReportsValuesNotCached() {
+
+    // every hit must be a value looked up before, and a full cache must keep finding its values
+    ValueCache cache = new ValueCache(16, 4);
+    HashSet<String> looked = new HashSet<>();
+    Random random = new Random(1);
+    for (int i = 0; i < 100000; i++) {
+      String value = Integer.toString(random.nextInt(40));
+      boolean hit = seen(cache, value);
+      assertTrue(!hit || looked.contains(value));
+      looked.add(value);
+    }
+    assertTrue(cache.getHits() > 0);
+    assertFalse(seen(cache, "new"));
+    assertTrue(seen(cache, "new"));
+
+  }
+
+  private static boolean seen(ValueCache cache, String value) {
+    return cache.seen(value.toCharArray(), 0, value.length());
+  }
+
+}